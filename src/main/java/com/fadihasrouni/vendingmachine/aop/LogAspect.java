@@ -1,19 +1,39 @@
 package com.fadihasrouni.vendingmachine.aop;
 
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.aspectj.lang.JoinPoint;
-import org.aspectj.lang.annotation.AfterReturning;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
-import org.aspectj.lang.annotation.Before;
 import org.aspectj.lang.annotation.Pointcut;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+/**
+ * Traces controller and service calls at DEBUG, on loggers named
+ * "trace.<class name>" so levels can be set per package. Only a sample of the
+ * calls is traced and nothing is formatted or allocated unless the call is
+ * traced. Sensitive fields are kept out of the toString of the traced objects.
+ */
 @Aspect
 @Component
 public class LogAspect {
 
-	private Logger log = LogManager.getLogger(getClass().getName());
+	private static final String LOGGER_PREFIX = "trace.";
+
+	private static final ClassValue<Logger> LOGGERS = new ClassValue<Logger>() {
+		@Override
+		protected Logger computeValue(Class<?> type) {
+			return LogManager.getLogger(LOGGER_PREFIX + type.getName());
+		}
+	};
+
+	// Share of the calls traced, between 0 and 1
+	@Value("${vending.trace.sample-rate:0.01}")
+	private double sampleRate;
 
 	// Setup @Pointcut declaration for Controller
 	@Pointcut("execution(* com.fadihasrouni.vendingmachine.controller.*.*(..))")
@@ -32,20 +52,32 @@ public class LogAspect {
 
 	}
 
-	@Before("forAppFlow()")
-	public void before(JoinPoint joinPoint) {
-		String theMethod = joinPoint.getSignature().toShortString();
-		Object[] args = joinPoint.getArgs();
+	@Around("forAppFlow()")
+	public Object trace(ProceedingJoinPoint joinPoint) throws Throwable {
+		Logger log = LOGGERS.get(joinPoint.getSignature().getDeclaringType());
 
-		log.info("Enter method {}, Params:{}", theMethod, new Object[] { args });
-	}
+		if (!log.isDebugEnabled() || !sampled()) {
+			return joinPoint.proceed();
+		}
 
-	@AfterReturning(pointcut = "forAppFlow()", returning = "returnValue")
-	public void after(JoinPoint joinPoint, Object returnValue) {
-		String theMethod = joinPoint.getSignature().toShortString();
-		if (returnValue == null) {
-			returnValue = "";
+		long start = System.nanoTime();
+		try {
+			Object returnValue = joinPoint.proceed();
+			log.debug("Method {} took {} us, Params:{}, Result: {}", joinPoint.getSignature().toShortString(),
+					elapsedMicros(start), joinPoint.getArgs(), returnValue);
+			return returnValue;
+		} catch (Throwable ex) {
+			log.debug("Method {} failed after {} us, Params:{}, Error: {}", joinPoint.getSignature().toShortString(),
+					elapsedMicros(start), joinPoint.getArgs(), ex.toString());
+			throw ex;
 		}
-		log.info("Return method {}, Result: {}", theMethod, returnValue);
+	}
+
+	private boolean sampled() {
+		return sampleRate >= 1 || (sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate);
+	}
+
+	private static long elapsedMicros(long start) {
+		return TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
 	}
 }
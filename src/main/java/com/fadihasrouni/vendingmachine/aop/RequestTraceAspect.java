@@ -0,0 +1,74 @@
+package com.fadihasrouni.vendingmachine.aop;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.annotation.Pointcut;
+import org.springframework.aop.framework.AopProxyUtils;
+import org.springframework.stereotype.Component;
+
+import com.fadihasrouni.vendingmachine.config.trace.RequestTrace;
+
+/**
+ * Records a span for every controller, service and repository call of a
+ * sampled request. Unsampled requests only pay the thread local read.
+ */
+@Aspect
+@Component
+public class RequestTraceAspect {
+
+	// Span names by proxy class and method, repository proxies implement the
+	// repository interface while the methods are declared on the Spring Data ones
+	private final Map<Class<?>, Map<String, String>> spanNames = new ConcurrentHashMap<>();
+
+	@Pointcut("execution(* com.fadihasrouni.vendingmachine.controller.*.*(..))")
+	private void forControllerPackage() {
+
+	}
+
+	@Pointcut("execution(* com.fadihasrouni.vendingmachine.service..*.*(..))")
+	private void forServicePackage() {
+
+	}
+
+	@Pointcut("execution(public * org.springframework.data.repository.Repository+.*(..))")
+	private void forRepositories() {
+
+	}
+
+	@Around("forControllerPackage() || forServicePackage() || forRepositories()")
+	public Object span(ProceedingJoinPoint joinPoint) throws Throwable {
+		if (!RequestTrace.isActive()) {
+			return joinPoint.proceed();
+		}
+
+		int span = RequestTrace.begin(spanName(joinPoint));
+		try {
+			return joinPoint.proceed();
+		} finally {
+			RequestTrace.end(span);
+		}
+	}
+
+	private String spanName(ProceedingJoinPoint joinPoint) {
+		Object proxy = joinPoint.getThis();
+		String method = joinPoint.getSignature().getName();
+
+		return spanNames.computeIfAbsent(proxy.getClass(), type -> new ConcurrentHashMap<>())
+				.computeIfAbsent(method, name -> typeName(proxy) + "." + name);
+	}
+
+	private static String typeName(Object proxy) {
+		Class<?>[] interfaces = AopProxyUtils.proxiedUserInterfaces(proxy);
+		for (Class<?> type : interfaces) {
+			if (type.getName().startsWith("com.fadihasrouni.")) {
+				return type.getSimpleName();
+			}
+		}
+
+		return AopProxyUtils.ultimateTargetClass(proxy).getSimpleName();
+	}
+}
@@ -0,0 +1,80 @@
+package com.fadihasrouni.vendingmachine.config;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Sizes the connection pool from the number of cores and reports how much of
+ * it is in use. Boot already publishes the hikaricp.connections.* meters,
+ * among them the pending threads and the acquire time.
+ */
+@Configuration
+@ConditionalOnClass(HikariDataSource.class)
+public class DataSourcePoolConfig {
+
+	private static final Logger log = LogManager.getLogger(DataSourcePoolConfig.class);
+
+	static final String CONNECTIONS_PER_CORE = "vending.datasource.pool.connections-per-core";
+
+	static final String EXTRA_CONNECTIONS = "vending.datasource.pool.extra-connections";
+
+	static final String MAXIMUM_POOL_SIZE = "spring.datasource.hikari.maximum-pool-size";
+
+	/**
+	 * Cores * connections-per-core + extra-connections, when connections-per-core
+	 * is set and the maximum pool size is not
+	 */
+	@Bean
+	public static BeanPostProcessor dataSourcePoolSizer(Environment environment) {
+		return new BeanPostProcessor() {
+			@Override
+			public Object postProcessAfterInitialization(Object bean, String beanName) {
+				int connectionsPerCore = environment.getProperty(CONNECTIONS_PER_CORE, Integer.class, 0);
+
+				if (bean instanceof HikariDataSource && connectionsPerCore > 0
+						&& !environment.containsProperty(MAXIMUM_POOL_SIZE)) {
+					int size = poolSize(Runtime.getRuntime().availableProcessors(), connectionsPerCore,
+							environment.getProperty(EXTRA_CONNECTIONS, Integer.class, 0));
+					((HikariDataSource) bean).setMaximumPoolSize(size);
+
+					log.info("Sized the {} connection pool to {} connections", beanName, size);
+				}
+				return bean;
+			}
+		};
+	}
+
+	static int poolSize(int cores, int connectionsPerCore, int extraConnections) {
+		return Math.max(1, cores * connectionsPerCore + extraConnections);
+	}
+
+	@Bean
+	public MeterBinder dataSourcePoolSaturation(ObjectProvider<HikariDataSource> dataSources) {
+		return registry -> dataSources.forEach(dataSource -> Gauge
+				.builder("vending.datasource.pool.saturation", dataSource, DataSourcePoolConfig::saturation)
+				.description("Share of the pool connections in use, from 0 to 1")
+				.tag("pool", String.valueOf(dataSource.getPoolName()))
+				.register(registry));
+	}
+
+	static double saturation(HikariDataSource dataSource) {
+		// Started on the first connection
+		HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+		if (pool == null) {
+			return 0;
+		}
+		return (double) pool.getActiveConnections() / dataSource.getMaximumPoolSize();
+	}
+}
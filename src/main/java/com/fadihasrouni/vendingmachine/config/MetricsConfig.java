@@ -0,0 +1,21 @@
+package com.fadihasrouni.vendingmachine.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Times the service operations annotated with @Timed. Percentile histograms
+ * are turned on per operation with
+ * management.metrics.distribution.percentiles-histogram.<timer name>
+ */
+@Configuration
+public class MetricsConfig {
+
+	@Bean
+	public TimedAspect timedAspect(MeterRegistry registry) {
+		return new TimedAspect(registry);
+	}
+}
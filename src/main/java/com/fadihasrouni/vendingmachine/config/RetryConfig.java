@@ -0,0 +1,43 @@
+package com.fadihasrouni.vendingmachine.config;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.retry.annotation.EnableRetry;
+import org.springframework.retry.annotation.RetryConfiguration;
+import org.springframework.transaction.annotation.EnableTransactionManagement;
+
+/**
+ * Enables @Retryable, the retry interceptor runs outside the transaction so
+ * every attempt starts a fresh one. Both advisors default to the lowest
+ * precedence and @EnableRetry has no order in this version, so the orders are
+ * set explicitly instead of depending on the advisor registration order.
+ */
+@Configuration
+@EnableRetry
+@EnableTransactionManagement(order = RetryConfig.TRANSACTION_ORDER)
+public class RetryConfig {
+
+	static final int TRANSACTION_ORDER = Ordered.LOWEST_PRECEDENCE;
+
+	static final int RETRY_ORDER = TRANSACTION_ORDER - 1;
+
+	/**
+	 * Order the retry advisor before the transaction one, it is created before
+	 * any bean it advises
+	 */
+	@Bean
+	public static BeanPostProcessor retryAdvisorOrder() {
+		return new BeanPostProcessor() {
+
+			@Override
+			public Object postProcessBeforeInitialization(Object bean, String beanName) {
+				if (bean instanceof RetryConfiguration) {
+					((RetryConfiguration) bean).setOrder(RETRY_ORDER);
+				}
+				return bean;
+			}
+		};
+	}
+}
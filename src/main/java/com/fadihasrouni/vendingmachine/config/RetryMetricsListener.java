@@ -0,0 +1,117 @@
+package com.fadihasrouni.vendingmachine.config;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.retry.RetryCallback;
+import org.springframework.retry.RetryContext;
+import org.springframework.retry.listener.RetryListenerSupport;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Counts optimistic locking conflicts, retries and exhausted retries per
+ * retryable operation
+ */
+@Component
+public class RetryMetricsListener extends RetryListenerSupport implements MeterBinder {
+
+	private final Map<String, RetryCounters> counters = new ConcurrentHashMap<>();
+
+	private volatile MeterRegistry registry;
+
+	@Override
+	public <T, E extends Throwable> void onError(RetryContext context, RetryCallback<T, E> callback,
+			Throwable throwable) {
+		if (throwable instanceof OptimisticLockingFailureException) {
+			counters(context).conflicts.increment();
+		}
+	}
+
+	@Override
+	public <T, E extends Throwable> void close(RetryContext context, RetryCallback<T, E> callback,
+			Throwable throwable) {
+		int failedAttempts = context.getRetryCount();
+
+		if (failedAttempts == 0) {
+			return;
+		}
+
+		RetryCounters operationCounters = counters(context);
+		if (throwable != null) {
+			// The last failed attempt was not retried
+			operationCounters.retries.add(failedAttempts - 1);
+			operationCounters.exhausted.increment();
+		} else {
+			operationCounters.retries.add(failedAttempts);
+		}
+	}
+
+	/**
+	 * Counters of every operation that failed at least once, keyed by the
+	 * retryable label
+	 * 
+	 * @return
+	 */
+	public Map<String, RetryCounters> getCounters() {
+		return Collections.unmodifiableMap(counters);
+	}
+
+	/**
+	 * Publish the counters of every operation, operations seen later are
+	 * published as they appear
+	 */
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		this.registry = registry;
+		counters.forEach((operation, operationCounters) -> register(registry, operation, operationCounters));
+	}
+
+	private RetryCounters counters(RetryContext context) {
+		Object name = context.getAttribute(RetryContext.NAME);
+		return counters.computeIfAbsent(name != null ? name.toString() : "unknown", operation -> {
+			RetryCounters operationCounters = new RetryCounters();
+			MeterRegistry meterRegistry = registry;
+			if (meterRegistry != null) {
+				register(meterRegistry, operation, operationCounters);
+			}
+			return operationCounters;
+		});
+	}
+
+	private static void register(MeterRegistry registry, String operation, RetryCounters operationCounters) {
+		FunctionCounter.builder("vending.retry.conflicts", operationCounters, RetryCounters::getConflicts)
+				.tag("operation", operation)
+				.register(registry);
+		FunctionCounter.builder("vending.retry.retries", operationCounters, RetryCounters::getRetries)
+				.tag("operation", operation)
+				.register(registry);
+		FunctionCounter.builder("vending.retry.exhausted", operationCounters, RetryCounters::getExhausted)
+				.tag("operation", operation)
+				.register(registry);
+	}
+
+	public static class RetryCounters {
+		private final LongAdder conflicts = new LongAdder();
+		private final LongAdder retries = new LongAdder();
+		private final LongAdder exhausted = new LongAdder();
+
+		public long getConflicts() {
+			return conflicts.sum();
+		}
+
+		public long getRetries() {
+			return retries.sum();
+		}
+
+		public long getExhausted() {
+			return exhausted.sum();
+		}
+	}
+}
@@ -14,6 +14,7 @@ import org.springframework.security.web.authentication.WebAuthenticationDetailsS
 import org.springframework.util.StringUtils;
 import org.springframework.web.filter.OncePerRequestFilter;
 
+import com.fadihasrouni.vendingmachine.config.trace.RequestTrace;
 import com.fadihasrouni.vendingmachine.controller.response.UserResponse;
 import com.fadihasrouni.vendingmachine.service.CustomUserDetailsService;
 import com.fadihasrouni.vendingmachine.utils.Constants;
@@ -29,13 +30,19 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 	@Override
 	protected void doFilterInternal(HttpServletRequest httpServletRequest, HttpServletResponse httpServletResponse,
 			FilterChain filterChain) throws ServletException, IOException {
+		int span = RequestTrace.begin("auth");
 		try {
 			String jwt = getJWTFromRequest(httpServletRequest);
 
-			if (StringUtils.hasText(jwt) && tokenProvider.validateToken(jwt)) {
-				Long userId = tokenProvider.getUserIdFromJWT(jwt);
-				UserResponse userDetails = customUserDetailsService.loadUserById(userId);
-				
+			// The token is parsed and verified once, the principal comes from its claims
+			UserResponse userDetails = StringUtils.hasText(jwt) ? tokenProvider.getUserFromJWT(jwt) : null;
+
+			if (userDetails != null) {
+				// Tokens issued before the role claim was added still need the user record
+				if (userDetails.getUserRole() == null) {
+					userDetails = customUserDetailsService.loadUserById(userDetails.getId());
+				}
+
 				UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(
 						userDetails, null, userDetails.getAuthorities());
 
@@ -45,6 +52,8 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
 		} catch (Exception ex) {
 			logger.error("Could not set user authentication in security context", ex);
+		} finally {
+			RequestTrace.end(span);
 		}
 
 		filterChain.doFilter(httpServletRequest, httpServletResponse);
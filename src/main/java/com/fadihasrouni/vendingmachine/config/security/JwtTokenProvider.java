@@ -3,6 +3,7 @@ package com.fadihasrouni.vendingmachine.config.security;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -10,6 +11,7 @@ import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Component;
 
 import com.fadihasrouni.vendingmachine.controller.response.UserResponse;
+import com.fadihasrouni.vendingmachine.model.type.UserRole;
 import com.fadihasrouni.vendingmachine.utils.Constants;
 
 import io.jsonwebtoken.Claims;
@@ -19,12 +21,34 @@ import io.jsonwebtoken.MalformedJwtException;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.SignatureException;
 import io.jsonwebtoken.UnsupportedJwtException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 
 @Component
-public class JwtTokenProvider {
+public class JwtTokenProvider implements MeterBinder {
 	private Logger log = LogManager.getLogger(JwtTokenProvider.class);
 
+	private Timer generateTimer;
+
+	private Timer parseTimer;
+
+	public JwtTokenProvider() {
+		// Recorded locally until bound to the application registry
+		bindTimers(new SimpleMeterRegistry());
+	}
+
 	public String generateToken(Authentication authentication) {
+		long start = System.nanoTime();
+		try {
+			return buildToken(authentication);
+		} finally {
+			generateTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	private String buildToken(Authentication authentication) {
 		UserResponse user = (UserResponse) authentication.getPrincipal();
 		Date now = new Date(System.currentTimeMillis());
 
@@ -33,17 +57,70 @@ public class JwtTokenProvider {
 		String userId = Long.toString(user.getId());
 
 		Map<String, Object> claims = new HashMap<>();
-		claims.put("id", (Long.toString(user.getId())));
-		claims.put("username", user.getUsername());
+		claims.put(Constants.CLAIM_ID, (Long.toString(user.getId())));
+		claims.put(Constants.CLAIM_USERNAME, user.getUsername());
+		claims.put(Constants.CLAIM_ROLE, user.getUserRole().getName());
 
 		return Jwts.builder().setSubject(userId).setClaims(claims).setIssuedAt(now).setExpiration(expiryDate)
 				.signWith(SignatureAlgorithm.HS512, Constants.SECRET).compact();
 	}
 
 	public boolean validateToken(String token) {
+		return parseClaims(token) != null;
+	}
+
+	public Long getUserIdFromJWT(String token) {
+		long start = System.nanoTime();
+		Claims claims;
+		try {
+			claims = Jwts.parser().setSigningKey(Constants.SECRET).parseClaimsJws(token).getBody();
+		} finally {
+			parseTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+		}
+		String id = (String) claims.get(Constants.CLAIM_ID);
+
+		return Long.parseLong(id);
+	}
+
+	/**
+	 * Verify the token signature once and build the principal straight from the
+	 * signed claims. Returns null if the token is not valid.
+	 * 
+	 * Tokens issued before the role claim existed come back without a role, the
+	 * caller has to load the user record for those.
+	 * 
+	 * @param token
+	 * @return
+	 */
+	public UserResponse getUserFromJWT(String token) {
+		Claims claims = parseClaims(token);
+
+		if (claims == null) {
+			return null;
+		}
+
+		UserResponse user = new UserResponse();
+		user.setId(Long.parseLong((String) claims.get(Constants.CLAIM_ID)));
+		user.setUsername((String) claims.get(Constants.CLAIM_USERNAME));
+
+		String role = (String) claims.get(Constants.CLAIM_ROLE);
+		if (role != null) {
+			user.setUserRole(UserRole.valueOf(role));
+		}
+
+		return user;
+	}
+
+	/**
+	 * Parse and verify the token, returns null if the token is not valid
+	 * 
+	 * @param token
+	 * @return
+	 */
+	private Claims parseClaims(String token) {
+		long start = System.nanoTime();
 		try {
-			Jwts.parser().setSigningKey(Constants.SECRET).parseClaimsJws(token);
-			return true;
+			return Jwts.parser().setSigningKey(Constants.SECRET).parseClaimsJws(token).getBody();
 		} catch (SignatureException ex) {
 			log.error("Invalid JWT Signature");
 		} catch (MalformedJwtException ex) {
@@ -54,14 +131,22 @@ public class JwtTokenProvider {
 			log.error("Unsupported JWT token");
 		} catch (IllegalArgumentException ex) {
 			log.error("JWT claims string is empty");
+		} finally {
+			parseTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
 		}
-		return false;
+		return null;
 	}
 
-	public Long getUserIdFromJWT(String token) {
-		Claims claims = Jwts.parser().setSigningKey(Constants.SECRET).parseClaimsJws(token).getBody();
-		String id = (String) claims.get("id");
+	/**
+	 * Publish the token generation and parsing times
+	 */
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		bindTimers(registry);
+	}
 
-		return Long.parseLong(id);
+	private void bindTimers(MeterRegistry registry) {
+		generateTimer = Timer.builder("vending.jwt.generate").register(registry);
+		parseTimer = Timer.builder("vending.jwt.parse").register(registry);
 	}
-}
\ No newline at end of file
+}
@@ -2,7 +2,10 @@ package com.fadihasrouni.vendingmachine.config.security;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Configurable;
+import org.springframework.boot.actuate.autoconfigure.security.servlet.EndpointRequest;
+import org.springframework.boot.actuate.autoconfigure.web.server.ManagementPortType;
 import org.springframework.context.annotation.Bean;
+import org.springframework.core.env.Environment;
 import org.springframework.http.HttpMethod;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.config.BeanIds;
@@ -12,13 +15,13 @@ import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
 import org.springframework.security.config.http.SessionCreationPolicy;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 import com.fadihasrouni.vendingmachine.model.type.UserRole;
 import com.fadihasrouni.vendingmachine.service.CustomUserDetailsService;
+import com.fadihasrouni.vendingmachine.service.password.PasswordHasher;
 import com.fadihasrouni.vendingmachine.utils.Constants;
 
 @Configurable
@@ -33,7 +36,10 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
 	private CustomUserDetailsService customUserDetailsService;
 
 	@Autowired
-	private BCryptPasswordEncoder bCryptPasswordEncoder;
+	private PasswordHasher passwordHasher;
+
+	@Autowired
+	private Environment environment;
 
 	@Bean
 	public JwtAuthenticationFilter jwtAuthenticationFilter() {
@@ -43,7 +49,7 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
 	@Override
 	protected void configure(AuthenticationManagerBuilder authenticationManagerBuilder) throws Exception {
 		authenticationManagerBuilder.userDetailsService(customUserDetailsService)
-				.passwordEncoder(bCryptPasswordEncoder);
+				.passwordEncoder(passwordHasher);
 	}
 
 	@Override
@@ -54,6 +60,12 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
 
 	@Override
 	protected void configure(HttpSecurity http) throws Exception {
+		if (ManagementPortType.get(environment) == ManagementPortType.DIFFERENT) {
+			// Scrapes are only anonymous on a separate management port, kept off the public network.
+			// The endpoint matcher only matches requests served by the management server there.
+			http.authorizeRequests().requestMatchers(EndpointRequest.toAnyEndpoint()).permitAll();
+		}
+
 		http.cors().and().csrf().disable()
 	        .exceptionHandling().authenticationEntryPoint(unauthorizedHandler)
 	        .and()
@@ -82,10 +94,16 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
 	                "/v2/api-docs",
 	                "/webjars/**"
 	        ).permitAll()
+	        // The whole catalog is only exported to signed in users
+	        .antMatchers(HttpMethod.GET, "/products/export").authenticated()
 	        .antMatchers(HttpMethod.GET, "/products/*", "/products").permitAll()
+	        .antMatchers(HttpMethod.GET, "/actuator/health").permitAll()
 	        .antMatchers(HttpMethod.POST, "/products/*", "/products").hasAuthority(UserRole.SELLER.getName())
 	        .antMatchers(HttpMethod.PUT, "/products/*", "/products").hasAuthority(UserRole.SELLER.getName())
 	        .antMatchers(HttpMethod.DELETE, "/products/*", "/products").hasAuthority(UserRole.SELLER.getName())
+	        .antMatchers(HttpMethod.GET, "/machines/*/products").permitAll()
+	        .antMatchers(HttpMethod.POST, "/machines").hasAuthority(UserRole.SELLER.getName())
+	        .antMatchers(HttpMethod.PUT, "/machines/*/products/*").hasAuthority(UserRole.SELLER.getName())
 	        .antMatchers(Constants.SWAGGER_UI).permitAll()
 	        .anyRequest()
 	        .authenticated();
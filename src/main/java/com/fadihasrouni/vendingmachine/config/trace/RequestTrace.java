@@ -0,0 +1,183 @@
+package com.fadihasrouni.vendingmachine.config.trace;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the spans of one sampled request on the thread serving it. The
+ * static methods are no-ops when the current request is not sampled, so the
+ * instrumented code pays a thread local read and nothing else.
+ */
+public final class RequestTrace {
+
+	private static final ThreadLocal<RequestTrace> CURRENT = new ThreadLocal<>();
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	private final String traceId;
+
+	private final long startNanos;
+
+	private String[] names = new String[INITIAL_CAPACITY];
+
+	private long[] starts = new long[INITIAL_CAPACITY];
+
+	private long[] ends = new long[INITIAL_CAPACITY];
+
+	private int[] depths = new int[INITIAL_CAPACITY];
+
+	private int size;
+
+	private int depth;
+
+	private long serializationStart = -1;
+
+	RequestTrace(String traceId, long startNanos) {
+		this.traceId = traceId;
+		this.startNanos = startNanos;
+	}
+
+	/**
+	 * Start a span on the current request
+	 *
+	 * @param name
+	 * @return the span to pass to {@link #end(int)}, -1 if the request is not
+	 *         sampled
+	 */
+	public static int begin(String name) {
+		RequestTrace trace = CURRENT.get();
+		return trace == null ? -1 : trace.beginSpan(name);
+	}
+
+	/**
+	 * End a span started with {@link #begin(String)}
+	 *
+	 * @param span
+	 */
+	public static void end(int span) {
+		if (span < 0) {
+			return;
+		}
+
+		RequestTrace trace = CURRENT.get();
+		if (trace != null) {
+			trace.endSpan(span);
+		}
+	}
+
+	/**
+	 * @return whether the current request is sampled
+	 */
+	public static boolean isActive() {
+		return CURRENT.get() != null;
+	}
+
+	/**
+	 * Mark the start of the response serialization, the span is closed when the
+	 * request completes
+	 */
+	public static void serializationStarted() {
+		RequestTrace trace = CURRENT.get();
+		if (trace != null && trace.serializationStart < 0) {
+			trace.serializationStart = System.nanoTime();
+		}
+	}
+
+	static RequestTrace start(String traceId) {
+		RequestTrace trace = new RequestTrace(traceId, System.nanoTime());
+		CURRENT.set(trace);
+		return trace;
+	}
+
+	static void clear() {
+		CURRENT.remove();
+	}
+
+	int beginSpan(String name) {
+		if (size == names.length) {
+			int capacity = size * 2;
+			names = Arrays.copyOf(names, capacity);
+			starts = Arrays.copyOf(starts, capacity);
+			ends = Arrays.copyOf(ends, capacity);
+			depths = Arrays.copyOf(depths, capacity);
+		}
+
+		names[size] = name;
+		starts[size] = System.nanoTime();
+		ends[size] = -1;
+		depths[size] = depth++;
+		return size++;
+	}
+
+	void endSpan(int span) {
+		if (span < size && ends[span] < 0) {
+			ends[span] = System.nanoTime();
+			depth = depths[span];
+		}
+	}
+
+	/**
+	 * Close the open serialization span, called once the response is written
+	 *
+	 * @param endNanos
+	 */
+	void finish(long endNanos) {
+		if (serializationStart >= 0) {
+			int span = beginSpan("serialization");
+			starts[span] = serializationStart;
+			ends[span] = endNanos;
+			depth = depths[span];
+			serializationStart = -1;
+		}
+	}
+
+	String getTraceId() {
+		return traceId;
+	}
+
+	long getStartNanos() {
+		return startNanos;
+	}
+
+	int size() {
+		return size;
+	}
+
+	String getName(int span) {
+		return names[span];
+	}
+
+	long getDurationNanos(int span) {
+		return ends[span] < 0 ? -1 : ends[span] - starts[span];
+	}
+
+	/**
+	 * Format the spans in start order, indented by nesting, with their offset
+	 * from the start of the request and their duration in milliseconds
+	 *
+	 * @return
+	 */
+	String breakdown() {
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < size; i++) {
+			builder.append("\n  ");
+			for (int d = 0; d < depths[i]; d++) {
+				builder.append("  ");
+			}
+
+			builder.append(names[i]).append(" +").append(millis(starts[i] - startNanos)).append(" ms ");
+			if (ends[i] < 0) {
+				builder.append("(unfinished)");
+			} else {
+				builder.append(millis(ends[i] - starts[i])).append(" ms");
+			}
+		}
+
+		return builder.toString();
+	}
+
+	static String millis(long nanos) {
+		return String.format(Locale.ROOT, "%.3f", nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+	}
+}
@@ -0,0 +1,98 @@
+package com.fadihasrouni.vendingmachine.config.trace;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.ThreadContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import com.fadihasrouni.vendingmachine.utils.Constants;
+
+/**
+ * Runs ahead of the security filters. Every request gets a trace id, taken from
+ * the incoming header when it is well formed, which is put in the MDC and
+ * echoed in the response. A sample of the requests also records the spans of
+ * the layers below, and requests slower than the threshold are logged with
+ * their breakdown.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class RequestTraceFilter extends OncePerRequestFilter {
+
+	private static final Logger log = LogManager.getLogger(RequestTraceFilter.class);
+
+	private static final Pattern TRACE_ID = Pattern.compile("[A-Za-z0-9-]{1,64}");
+
+	// Share of the requests with a span breakdown, between 0 and 1
+	@Value("${vending.trace.span-sample-rate:0}")
+	private double spanSampleRate;
+
+	@Value("${vending.trace.slow-request-ms:500}")
+	private long slowRequestMs;
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+			throws ServletException, IOException {
+		String traceId = resolveTraceId(request.getHeader(Constants.TRACE_ID_HEADER));
+		RequestTrace trace = sampled() ? RequestTrace.start(traceId) : null;
+		long start = System.nanoTime();
+
+		ThreadContext.put(Constants.TRACE_ID_MDC_KEY, traceId);
+		response.setHeader(Constants.TRACE_ID_HEADER, traceId);
+		try {
+			filterChain.doFilter(request, response);
+		} finally {
+			long end = System.nanoTime();
+			if (trace != null) {
+				trace.finish(end);
+			}
+
+			long elapsedNanos = end - start;
+			if (elapsedNanos >= TimeUnit.MILLISECONDS.toNanos(slowRequestMs)) {
+				logSlowRequest(request, response, elapsedNanos, trace);
+			}
+
+			RequestTrace.clear();
+			ThreadContext.remove(Constants.TRACE_ID_MDC_KEY);
+		}
+	}
+
+	private void logSlowRequest(HttpServletRequest request, HttpServletResponse response, long elapsedNanos,
+			RequestTrace trace) {
+		log.warn("Slow request {} {} returned {} in {} ms{}", request.getMethod(), request.getRequestURI(),
+				response.getStatus(), RequestTrace.millis(elapsedNanos),
+				trace == null ? " (not sampled)" : trace.breakdown());
+	}
+
+	private boolean sampled() {
+		return spanSampleRate >= 1 || (spanSampleRate > 0 && ThreadLocalRandom.current().nextDouble() < spanSampleRate);
+	}
+
+	/**
+	 * Keep the caller's trace id unless it could corrupt the logs or the headers
+	 *
+	 * @param header
+	 * @return
+	 */
+	static String resolveTraceId(String header) {
+		if (header != null && TRACE_ID.matcher(header).matches()) {
+			return header;
+		}
+
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		return Long.toHexString(random.nextLong() | Long.MIN_VALUE) + Long.toHexString(random.nextLong() | Long.MIN_VALUE);
+	}
+}
@@ -1,8 +1,12 @@
 package com.fadihasrouni.vendingmachine.controller;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -11,12 +15,18 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import com.fadihasrouni.vendingmachine.controller.request.ProductRequest;
 import com.fadihasrouni.vendingmachine.controller.response.GenericResponse;
+import com.fadihasrouni.vendingmachine.controller.response.ProductImportResponse;
+import com.fadihasrouni.vendingmachine.controller.response.ProductPageResponse;
 import com.fadihasrouni.vendingmachine.controller.response.ProductResponse;
+import com.fadihasrouni.vendingmachine.service.ProductImportService;
 import com.fadihasrouni.vendingmachine.service.ProductService;
+import com.fadihasrouni.vendingmachine.utils.Constants;
 
 @RestController
 @CrossOrigin
@@ -26,6 +36,9 @@ public class ProductController {
 	@Autowired
 	private ProductService productService;
 
+	@Autowired
+	private ProductImportService productImportService;
+
 	@GetMapping("/{id}")
 	public ProductResponse findProductById(@PathVariable Long id) {
 		return productService.findProductById(id);
@@ -36,11 +49,34 @@ public class ProductController {
 		return productService.findAllProductsList();
 	}
 
+	@GetMapping("/page")
+	public ProductPageResponse findProductsPage(@RequestParam(required = false) Long after,
+			@RequestParam(required = false) Integer limit, @RequestParam(required = false) Long sellerId,
+			@RequestParam(defaultValue = "false") boolean inStock) {
+		return productService.findProductsPage(after, limit, sellerId, inStock);
+	}
+
+	@GetMapping(value = "/export", produces = Constants.NDJSON_MEDIA_TYPE)
+	public ResponseEntity<StreamingResponseBody> exportProducts() {
+		StreamingResponseBody body = outputStream -> productService.exportProducts(outputStream);
+		return ResponseEntity.ok().contentType(MediaType.parseMediaType(Constants.NDJSON_MEDIA_TYPE)).body(body);
+	}
+
 	@PostMapping
 	public ProductResponse addNewProduct(@RequestBody ProductRequest productRequest) {
 		return productService.addNewProduct(productRequest);
 	}
 
+	@PostMapping(value = "/import", consumes = MediaType.APPLICATION_JSON_VALUE)
+	public ProductImportResponse importProductsJson(InputStream body) throws IOException {
+		return productImportService.importJson(body);
+	}
+
+	@PostMapping(value = "/import", consumes = Constants.CSV_MEDIA_TYPE)
+	public ProductImportResponse importProductsCsv(InputStream body) throws IOException {
+		return productImportService.importCsv(body);
+	}
+
 	@PutMapping("/{id}")
 	public ProductResponse updateProduct(@PathVariable Long id, @RequestBody ProductRequest productRequest) {
 		return productService.updateProduct(id, productRequest);
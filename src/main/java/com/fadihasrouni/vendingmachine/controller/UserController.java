@@ -14,19 +14,26 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.fadihasrouni.vendingmachine.config.security.JwtTokenProvider;
+import com.fadihasrouni.vendingmachine.controller.request.BuyBatchRequest;
 import com.fadihasrouni.vendingmachine.controller.request.BuyRequest;
+import com.fadihasrouni.vendingmachine.controller.request.HoldRequest;
 import com.fadihasrouni.vendingmachine.controller.request.LoginRequest;
 import com.fadihasrouni.vendingmachine.controller.request.UserPasswordRequest;
 import com.fadihasrouni.vendingmachine.controller.request.UserRequest;
+import com.fadihasrouni.vendingmachine.controller.response.BuyBatchResponse;
 import com.fadihasrouni.vendingmachine.controller.response.BuyResponse;
 import com.fadihasrouni.vendingmachine.controller.response.GenericResponse;
+import com.fadihasrouni.vendingmachine.controller.response.HoldResponse;
 import com.fadihasrouni.vendingmachine.controller.response.JWTLoginSuccessResponse;
 import com.fadihasrouni.vendingmachine.controller.response.UserResponse;
+import com.fadihasrouni.vendingmachine.service.StockHoldService;
 import com.fadihasrouni.vendingmachine.service.UserService;
+import com.fadihasrouni.vendingmachine.service.idempotency.IdempotencyStore;
 import com.fadihasrouni.vendingmachine.utils.Constants;
 
 
@@ -43,6 +50,12 @@ public class UserController {
 
 	@Autowired
 	private JwtTokenProvider tokenProvider;
+
+	@Autowired
+	private IdempotencyStore idempotencyStore;
+	
+	@Autowired
+	private StockHoldService stockHoldService;
 		
 	@PostMapping(path = "/register")
 	public UserResponse registerUser(@RequestBody @Valid UserRequest userRequest) {
@@ -83,18 +96,48 @@ public class UserController {
 	}
 	
 	@PostMapping("/{id}/deposit/{coin}")
-	public GenericResponse deposit(@PathVariable Long id, @PathVariable Integer coin) {
-		return userService.deposit(id, coin);
+	public GenericResponse deposit(@PathVariable Long id, @PathVariable Integer coin,
+			@RequestHeader(name = Constants.IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) {
+		return idempotencyStore.execute(idempotencyKey, "deposit " + id + " " + coin, GenericResponse.class,
+				() -> userService.deposit(id, coin));
 	}
 	
 	@PostMapping("/{id}/buy")
-	public BuyResponse buy(@PathVariable Long id, @RequestBody BuyRequest request) {
-		return userService.buy(id, request);
+	public BuyResponse buy(@PathVariable Long id, @RequestBody BuyRequest request,
+			@RequestHeader(name = Constants.IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) {
+		return idempotencyStore.execute(idempotencyKey, "buy " + id + " " + request, BuyResponse.class,
+				() -> userService.buy(id, request));
+	}
+	
+	@PostMapping("/{id}/buy/batch")
+	public BuyBatchResponse buyBatch(@PathVariable Long id, @RequestBody BuyBatchRequest request,
+			@RequestHeader(name = Constants.IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) {
+		return idempotencyStore.execute(idempotencyKey, "buy batch " + id + " " + request, BuyBatchResponse.class,
+				() -> userService.buyBatch(id, request));
+	}
+	
+	@PostMapping("/{id}/holds")
+	public HoldResponse hold(@PathVariable Long id, @RequestBody HoldRequest request) {
+		return stockHoldService.reserve(id, request);
+	}
+	
+	@PostMapping("/{id}/holds/{holdId}/confirm")
+	public BuyResponse confirmHold(@PathVariable Long id, @PathVariable Long holdId,
+			@RequestHeader(name = Constants.IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) {
+		return idempotencyStore.execute(idempotencyKey, "confirm hold " + id + " " + holdId, BuyResponse.class,
+				() -> stockHoldService.confirm(id, holdId));
+	}
+	
+	@DeleteMapping("/{id}/holds/{holdId}")
+	public GenericResponse cancelHold(@PathVariable Long id, @PathVariable Long holdId) {
+		return stockHoldService.cancel(id, holdId);
 	}
 	
 	@PostMapping("/{id}/reset")
-	public GenericResponse resetBalance(@PathVariable Long id) {
-		return userService.resetDeposit(id);
+	public GenericResponse resetBalance(@PathVariable Long id,
+			@RequestHeader(name = Constants.IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) {
+		return idempotencyStore.execute(idempotencyKey, "reset " + id, GenericResponse.class,
+				() -> userService.resetDeposit(id));
 	}
 	
 }
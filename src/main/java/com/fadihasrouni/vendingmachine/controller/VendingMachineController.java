@@ -0,0 +1,80 @@
+package com.fadihasrouni.vendingmachine.controller;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.fadihasrouni.vendingmachine.controller.request.BuyRequest;
+import com.fadihasrouni.vendingmachine.controller.request.MachineSlotRequest;
+import com.fadihasrouni.vendingmachine.controller.request.VendingMachineRequest;
+import com.fadihasrouni.vendingmachine.controller.response.BuyResponse;
+import com.fadihasrouni.vendingmachine.controller.response.GenericResponse;
+import com.fadihasrouni.vendingmachine.controller.response.ProductPageResponse;
+import com.fadihasrouni.vendingmachine.controller.response.ProductResponse;
+import com.fadihasrouni.vendingmachine.controller.response.VendingMachineResponse;
+import com.fadihasrouni.vendingmachine.service.VendingMachineService;
+import com.fadihasrouni.vendingmachine.service.idempotency.IdempotencyStore;
+import com.fadihasrouni.vendingmachine.utils.Constants;
+
+@RestController
+@CrossOrigin
+@RequestMapping("/machines")
+public class VendingMachineController {
+
+	@Autowired
+	private VendingMachineService vendingMachineService;
+
+	@Autowired
+	private IdempotencyStore idempotencyStore;
+
+	@PostMapping
+	public VendingMachineResponse addMachine(@RequestBody VendingMachineRequest request) {
+		return vendingMachineService.addMachine(request);
+	}
+
+	@GetMapping("/{id}")
+	public VendingMachineResponse findMachineById(@PathVariable Long id) {
+		return vendingMachineService.findMachineById(id);
+	}
+
+	@GetMapping("/{machineId}/products")
+	public ProductPageResponse findProductsPage(@PathVariable Long machineId, @RequestParam(required = false) Long after,
+			@RequestParam(required = false) Integer limit, @RequestParam(defaultValue = "false") boolean inStock) {
+		return vendingMachineService.findProductsPage(machineId, after, limit, inStock);
+	}
+
+	@PutMapping("/{machineId}/products/{productId}")
+	public ProductResponse updateSlot(@PathVariable Long machineId, @PathVariable Long productId,
+			@RequestBody MachineSlotRequest request) {
+		return vendingMachineService.updateSlot(machineId, productId, request);
+	}
+
+	@PostMapping("/{machineId}/users/{id}/deposit/{coin}")
+	public GenericResponse deposit(@PathVariable Long machineId, @PathVariable Long id, @PathVariable Integer coin,
+			@RequestHeader(name = Constants.IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) {
+		return idempotencyStore.execute(idempotencyKey, "machine " + machineId + " deposit " + id + " " + coin, GenericResponse.class,
+				() -> vendingMachineService.deposit(machineId, id, coin));
+	}
+
+	@PostMapping("/{machineId}/users/{id}/buy")
+	public BuyResponse buy(@PathVariable Long machineId, @PathVariable Long id, @RequestBody BuyRequest request,
+			@RequestHeader(name = Constants.IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) {
+		return idempotencyStore.execute(idempotencyKey, "machine " + machineId + " buy " + id + " " + request, BuyResponse.class,
+				() -> vendingMachineService.buy(machineId, id, request));
+	}
+
+	@PostMapping("/{machineId}/users/{id}/reset")
+	public GenericResponse resetBalance(@PathVariable Long machineId, @PathVariable Long id,
+			@RequestHeader(name = Constants.IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) {
+		return idempotencyStore.execute(idempotencyKey, "machine " + machineId + " reset " + id, GenericResponse.class,
+				() -> vendingMachineService.resetDeposit(machineId, id));
+	}
+}
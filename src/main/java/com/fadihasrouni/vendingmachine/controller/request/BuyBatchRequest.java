@@ -0,0 +1,10 @@
+package com.fadihasrouni.vendingmachine.controller.request;
+
+import java.util.List;
+
+import lombok.Data;
+
+@Data
+public class BuyBatchRequest {
+	private List<BuyRequest> items;
+}
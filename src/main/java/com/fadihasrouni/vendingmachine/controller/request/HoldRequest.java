@@ -0,0 +1,11 @@
+package com.fadihasrouni.vendingmachine.controller.request;
+
+import lombok.Data;
+
+@Data
+public class HoldRequest {
+	private Long productId;
+	private Integer amount;
+	// The default hold time when null
+	private Integer ttlSeconds;
+}
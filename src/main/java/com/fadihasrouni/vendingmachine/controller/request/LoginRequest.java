@@ -3,11 +3,13 @@ package com.fadihasrouni.vendingmachine.controller.request;
 import javax.validation.constraints.NotBlank;
 
 import lombok.Data;
+import lombok.ToString;
 
 @Data
 public class LoginRequest {
 	@NotBlank(message = "username is required")
 	private String username;
 	@NotBlank(message = "Password field is required")
+	@ToString.Exclude
 	private String password;
 }
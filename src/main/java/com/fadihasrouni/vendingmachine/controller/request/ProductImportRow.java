@@ -0,0 +1,21 @@
+package com.fadihasrouni.vendingmachine.controller.request;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One row of a bulk import. Rows without an id create a product, rows with an
+ * id update it and either set its stock with amountAvailable or add restock
+ * to it.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ProductImportRow {
+	private Long id;
+	private String productName;
+	private Integer cost;
+	private Integer amountAvailable;
+	private Integer restock;
+}
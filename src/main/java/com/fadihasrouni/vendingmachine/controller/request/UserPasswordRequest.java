@@ -3,6 +3,7 @@ package com.fadihasrouni.vendingmachine.controller.request;
 import javax.validation.constraints.NotBlank;
 
 import lombok.Data;
+import lombok.ToString;
 
 @Data
 public class UserPasswordRequest {
@@ -10,9 +11,11 @@ public class UserPasswordRequest {
 	private Long id;
 
 	@NotBlank(message = "Password field is required")
+	@ToString.Exclude
 	private String password;
 
 	@NotBlank(message = "Password field is required")
+	@ToString.Exclude
 	private String confirmPassword;
 
 }
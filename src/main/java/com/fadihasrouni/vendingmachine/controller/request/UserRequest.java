@@ -4,6 +4,7 @@ import javax.persistence.Transient;
 import javax.validation.constraints.NotBlank;
 
 import lombok.Data;
+import lombok.ToString;
 
 @Data
 public class UserRequest {
@@ -12,9 +13,11 @@ public class UserRequest {
 	private String username;
 	
 	@NotBlank(message = "Password field is required")
+	@ToString.Exclude
 	private String password;
 	
 	@Transient
+	@ToString.Exclude
 	private String confirmPassword;
 	
 	private String userRole;
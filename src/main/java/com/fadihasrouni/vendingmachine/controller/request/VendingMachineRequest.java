@@ -0,0 +1,8 @@
+package com.fadihasrouni.vendingmachine.controller.request;
+
+import lombok.Data;
+
+@Data
+public class VendingMachineRequest {
+	private String name;
+}
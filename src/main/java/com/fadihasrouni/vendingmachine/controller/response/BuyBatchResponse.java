@@ -0,0 +1,12 @@
+package com.fadihasrouni.vendingmachine.controller.response;
+
+import java.util.List;
+
+import lombok.Data;
+
+@Data
+public class BuyBatchResponse {
+	private int moneySpent;
+	private List<ProductResponse> productsBought;
+	private List<Integer> change;
+}
@@ -2,9 +2,11 @@ package com.fadihasrouni.vendingmachine.controller.response;
 
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 
 @Data
 @AllArgsConstructor
+@NoArgsConstructor
 public class GenericResponse {
 	private boolean success;
 	private String message;
@@ -0,0 +1,16 @@
+package com.fadihasrouni.vendingmachine.controller.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class HoldResponse {
+	private Long id;
+	private Long productId;
+	private Integer amount;
+	// Epoch millis
+	private long expiresAt;
+}
@@ -2,10 +2,12 @@ package com.fadihasrouni.vendingmachine.controller.response;
 
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.ToString;
 
 @Data
 @AllArgsConstructor
 public class JWTLoginSuccessResponse {
 	private boolean success;
+	@ToString.Exclude
 	private String token;
 }
@@ -0,0 +1,13 @@
+package com.fadihasrouni.vendingmachine.controller.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ProductImportError {
+	private int row;
+	private String message;
+}
@@ -0,0 +1,13 @@
+package com.fadihasrouni.vendingmachine.controller.response;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.Data;
+
+@Data
+public class ProductImportResponse {
+	private int created;
+	private int updated;
+	private List<ProductImportError> errors = new ArrayList<>();
+}
@@ -0,0 +1,12 @@
+package com.fadihasrouni.vendingmachine.controller.response;
+
+import java.util.List;
+
+import lombok.Data;
+
+@Data
+public class ProductPageResponse {
+	private List<ProductResponse> products;
+	// Pass as "after" to get the next page, null on the last page
+	private Long nextCursor;
+}
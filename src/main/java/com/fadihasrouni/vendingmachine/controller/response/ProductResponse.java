@@ -1,8 +1,12 @@
 package com.fadihasrouni.vendingmachine.controller.response;
 
+import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 
 @Data
+@NoArgsConstructor
+@AllArgsConstructor
 public class ProductResponse {
 	private Long id;
 	private String productName;
@@ -66,6 +66,6 @@ public class UserResponse implements UserDetails {
 
 	@Override
 	public String toString() {
-		return ReflectionToStringBuilder.toString(this, SHORT_PREFIX_STYLE);
+		return new ReflectionToStringBuilder(this, SHORT_PREFIX_STYLE).setExcludeFieldNames("password").toString();
 	}
 }
\ No newline at end of file
@@ -2,6 +2,7 @@ package com.fadihasrouni.vendingmachine.exception.handler;
 
 import java.util.Date;
 
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
@@ -13,9 +14,12 @@ import org.springframework.web.servlet.mvc.method.annotation.ResponseEntityExcep
 import com.fadihasrouni.vendingmachine.exception.BadRequestException;
 import com.fadihasrouni.vendingmachine.exception.ForbiddenException;
 import com.fadihasrouni.vendingmachine.exception.ResourceNotFoundException;
+import com.fadihasrouni.vendingmachine.exception.ServiceUnavailableException;
 import com.fadihasrouni.vendingmachine.exception.UniqueConstraintException;
 import com.fadihasrouni.vendingmachine.exception.error.ErrorDetails;
 
+import io.micrometer.core.instrument.Metrics;
+
 
 @ControllerAdvice
 @RestController
@@ -24,12 +28,14 @@ public class CustomizedExceptionHandler extends ResponseEntityExceptionHandler {
 	@ExceptionHandler(ResourceNotFoundException.class)
 	public final ResponseEntity<ErrorDetails> handleResourceNotFoundException(ResourceNotFoundException ex,
 			WebRequest request) {
+		count(ex);
 		ErrorDetails errorDetails = new ErrorDetails(new Date(), ex.getMessage(), request.getDescription(false));
 		return new ResponseEntity<>(errorDetails, HttpStatus.NOT_FOUND);
 	}
 
 	@ExceptionHandler(BadRequestException.class)
 	public final ResponseEntity<ErrorDetails> handleBadRequestException(BadRequestException ex, WebRequest request) {
+		count(ex);
 		ErrorDetails errorDetails = new ErrorDetails(new Date(), ex.getMessage(), request.getDescription(false),
 				ex.getErrorMap());
 		return new ResponseEntity<>(errorDetails, HttpStatus.BAD_REQUEST);
@@ -38,6 +44,7 @@ public class CustomizedExceptionHandler extends ResponseEntityExceptionHandler {
 	@ExceptionHandler(UniqueConstraintException.class)
 	public final ResponseEntity<ErrorDetails> handleNotUniqueException(UniqueConstraintException ex,
 			WebRequest request) {
+		count(ex);
 		ErrorDetails errorDetails = new ErrorDetails(new Date(), ex.getMessage(), request.getDescription(false));
 		return new ResponseEntity<>(errorDetails, HttpStatus.CONFLICT);
 	}
@@ -45,15 +52,43 @@ public class CustomizedExceptionHandler extends ResponseEntityExceptionHandler {
 	@ExceptionHandler(ForbiddenException.class)
 	public final ResponseEntity<ErrorDetails> handleForbiddenException(ForbiddenException ex,
 			WebRequest request) {
+		count(ex);
 		ErrorDetails errorDetails = new ErrorDetails(new Date(), ex.getMessage(), request.getDescription(false));
 		return new ResponseEntity<>(errorDetails, HttpStatus.FORBIDDEN);
 	}
 
+	@ExceptionHandler(ServiceUnavailableException.class)
+	public final ResponseEntity<ErrorDetails> handleServiceUnavailableException(ServiceUnavailableException ex,
+			WebRequest request) {
+		count(ex);
+		ErrorDetails errorDetails = new ErrorDetails(new Date(), ex.getMessage(), request.getDescription(false));
+		return new ResponseEntity<>(errorDetails, HttpStatus.SERVICE_UNAVAILABLE);
+	}
+
+	@ExceptionHandler(OptimisticLockingFailureException.class)
+	public final ResponseEntity<ErrorDetails> handleOptimisticLockingFailureException(OptimisticLockingFailureException ex,
+			WebRequest request) {
+		count(ex);
+		ErrorDetails errorDetails = new ErrorDetails(new Date(),
+				"The resource was updated concurrently! Please try again.", request.getDescription(false));
+		return new ResponseEntity<>(errorDetails, HttpStatus.CONFLICT);
+	}
+
 	@ExceptionHandler(Exception.class)
 	public final ResponseEntity<ErrorDetails> handleAllExceptions(Exception ex, WebRequest request) {
+		count(ex);
 		ErrorDetails errorDetails = new ErrorDetails(new Date(),
 				"Internal error occured! Please contact system administrator!", request.getDescription(false));
 		return new ResponseEntity<>(errorDetails, HttpStatus.INTERNAL_SERVER_ERROR);
 	}
 
-}
\ No newline at end of file
+	/**
+	 * Count the handled exceptions per type
+	 * 
+	 * @param ex
+	 */
+	private void count(Exception ex) {
+		Metrics.counter("vending.exceptions", "type", ex.getClass().getSimpleName()).increment();
+	}
+
+}
@@ -0,0 +1,50 @@
+package com.fadihasrouni.vendingmachine.model;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Lob;
+import javax.persistence.Table;
+
+import org.springframework.data.domain.Persistable;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Response given to a request sent with an idempotency key, replayed to the
+ * retries of that request until it expires
+ */
+@Entity
+@Table
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class IdempotencyRecord implements Persistable<String> {
+
+	// The authenticated user id and the key sent by the client
+	@Id
+	private String idempotencyKey;
+
+	// Hash of the request, a key cannot be reused for another request
+	private String fingerprint;
+
+	// The response as JSON
+	@Lob
+	private String response;
+
+	// Epoch millis
+	private long expiresAt;
+
+	@Override
+	public String getId() {
+		return idempotencyKey;
+	}
+
+	// Records are only inserted, saving one never reads it first
+	@Override
+	public boolean isNew() {
+		return true;
+	}
+
+}
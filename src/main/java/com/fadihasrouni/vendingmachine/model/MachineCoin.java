@@ -0,0 +1,38 @@
+package com.fadihasrouni.vendingmachine.model;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.IdClass;
+import javax.persistence.Table;
+import javax.persistence.Version;
+
+import com.fadihasrouni.vendingmachine.model.id.MachineCoinId;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Coins of one denomination held by a machine
+ */
+@Entity
+@Table
+@IdClass(MachineCoinId.class)
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class MachineCoin {
+
+	@Id
+	private Long machineId;
+
+	@Id
+	private Integer coin;
+
+	private Integer quantity;
+
+	// Null until stored, so a new row is inserted rather than merged
+	@Version
+	private Long version;
+
+}
@@ -0,0 +1,41 @@
+package com.fadihasrouni.vendingmachine.model;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.IdClass;
+import javax.persistence.Table;
+import javax.persistence.Version;
+
+import org.hibernate.annotations.DynamicUpdate;
+
+import com.fadihasrouni.vendingmachine.model.id.MachineSessionId;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Deposit of a buyer in one machine, created by the first coin inserted
+ */
+@Entity
+@Table
+@IdClass(MachineSessionId.class)
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@DynamicUpdate
+public class MachineSession {
+
+	@Id
+	private Long machineId;
+
+	@Id
+	private Long userId;
+
+	private Integer deposit;
+
+	// Null until stored, so a new session is inserted rather than merged
+	@Version
+	private Long version;
+
+}
@@ -0,0 +1,41 @@
+package com.fadihasrouni.vendingmachine.model;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.IdClass;
+import javax.persistence.Table;
+import javax.persistence.Version;
+
+import org.hibernate.annotations.DynamicUpdate;
+
+import com.fadihasrouni.vendingmachine.model.id.MachineSlotId;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Stock of a product in one machine
+ */
+@Entity
+@Table
+@IdClass(MachineSlotId.class)
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@DynamicUpdate
+public class MachineSlot {
+
+	@Id
+	private Long machineId;
+
+	@Id
+	private Long productId;
+
+	private Integer amountAvailable;
+
+	// Null until stored, so a new slot is inserted rather than merged
+	@Version
+	private Long version;
+
+}
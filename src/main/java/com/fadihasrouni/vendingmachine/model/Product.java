@@ -1,20 +1,34 @@
 package com.fadihasrouni.vendingmachine.model;
 
 import javax.persistence.Entity;
+import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
+import javax.persistence.Version;
+
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+
+import com.fadihasrouni.vendingmachine.model.id.BlockIdGenerator;
 
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
 
 @Entity
-@Table
+@Table(indexes = @Index(name = "idx_product_seller_stock", columnList = "seller_id, id, amountAvailable"))
 @Data
+@DynamicUpdate
 public class Product {
 	
 	@Id
-	@GeneratedValue
+	@GeneratedValue(generator = "product_id")
+	@GenericGenerator(name = "product_id", strategy = BlockIdGenerator.STRATEGY, parameters = @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "product_seq"))
 	private Long id;
 
 	private String productName;
@@ -23,7 +37,12 @@ public class Product {
 	
 	private Integer cost;
 	
-	@ManyToOne(optional = true)
+	@ManyToOne(fetch = FetchType.LAZY, optional = true)
+	@ToString.Exclude
+	@EqualsAndHashCode.Exclude
 	private User seller;
 
+	@Version
+	private long version;
+
 }
@@ -0,0 +1,43 @@
+package com.fadihasrouni.vendingmachine.model;
+
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+
+import com.fadihasrouni.vendingmachine.model.id.BlockIdGenerator;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Stock taken out of a product for a buyer until the hold is confirmed as a
+ * purchase or expires
+ */
+@Entity
+@Table
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class StockHold {
+
+	@Id
+	@GeneratedValue(generator = "stock_hold_id")
+	@GenericGenerator(name = "stock_hold_id", strategy = BlockIdGenerator.STRATEGY, parameters = @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "stock_hold_seq"))
+	private Long id;
+
+	private Long productId;
+
+	private Long userId;
+
+	private Integer amount;
+
+	// Epoch millis
+	private long expiresAt;
+
+}
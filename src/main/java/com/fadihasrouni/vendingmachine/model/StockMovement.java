@@ -0,0 +1,38 @@
+package com.fadihasrouni.vendingmachine.model;
+
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+
+import com.fadihasrouni.vendingmachine.model.id.BlockIdGenerator;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Stock change taken by the inventory ledger and not yet applied to the
+ * product row
+ */
+@Entity
+@Table
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class StockMovement {
+
+	@Id
+	@GeneratedValue(generator = "stock_movement_id")
+	@GenericGenerator(name = "stock_movement_id", strategy = BlockIdGenerator.STRATEGY, parameters = @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "stock_movement_seq"))
+	private Long id;
+
+	private Long productId;
+
+	private Integer quantity;
+
+}
@@ -7,26 +7,37 @@ import javax.persistence.Enumerated;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
 import javax.persistence.Table;
+import javax.persistence.Version;
 
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+
+import com.fadihasrouni.vendingmachine.model.id.BlockIdGenerator;
 import com.fadihasrouni.vendingmachine.model.type.UserRole;
 
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 
 @Entity
 @Table
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
+@DynamicUpdate
 public class User {
 	@Id
-	@GeneratedValue
+	@GeneratedValue(generator = "user_id")
+	@GenericGenerator(name = "user_id", strategy = BlockIdGenerator.STRATEGY, parameters = @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "user_seq"))
 	private Long id;
 
 	@Column(unique = true)
 	private String username;
 
+	@ToString.Exclude
 	private String password;
 
 	private Integer deposit;
@@ -34,4 +45,7 @@ public class User {
 	@Enumerated(EnumType.STRING)
 	private UserRole userRole;
 
+	@Version
+	private long version;
+
 }
@@ -0,0 +1,41 @@
+package com.fadihasrouni.vendingmachine.model;
+
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.persistence.Version;
+
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+
+import com.fadihasrouni.vendingmachine.model.id.BlockIdGenerator;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A physical machine. Its stock is held in {@link MachineSlot} rows and the
+ * balances of its buyers in {@link MachineSession} rows, the default machine
+ * keeps using the product stock and user deposit.
+ */
+@Entity
+@Table
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class VendingMachine {
+
+	@Id
+	@GeneratedValue(generator = "vending_machine_id")
+	@GenericGenerator(name = "vending_machine_id", strategy = BlockIdGenerator.STRATEGY, parameters = @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "vending_machine_seq"))
+	private Long id;
+
+	private String name;
+
+	@Version
+	private long version;
+
+}
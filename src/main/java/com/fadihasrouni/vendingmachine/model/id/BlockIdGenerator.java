@@ -0,0 +1,41 @@
+package com.fadihasrouni.vendingmachine.model.id;
+
+import java.util.Properties;
+
+import org.hibernate.MappingException;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.id.enhanced.StandardOptimizerDescriptor;
+import org.hibernate.internal.util.config.ConfigurationHelper;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+/**
+ * Hands out ids in blocks from a one row table per entity, so an insert only
+ * reads the table once per block and inserts can be sent as JDBC batches. The
+ * block size is the {@value #BLOCK_SIZE_SETTING} Hibernate setting.
+ * 
+ * The table holds the first id of the next block (pooled-lo), so the block
+ * size can be changed between restarts. A table is used on every database,
+ * the V2 schema migration creates the tables past the existing ids.
+ */
+public class BlockIdGenerator extends SequenceStyleGenerator {
+
+	public static final String STRATEGY = "com.fadihasrouni.vendingmachine.model.id.BlockIdGenerator";
+
+	public static final String BLOCK_SIZE_SETTING = "vending.id.block-size";
+
+	public static final int DEFAULT_BLOCK_SIZE = 50;
+
+	@Override
+	public void configure(Type type, Properties params, ServiceRegistry serviceRegistry) throws MappingException {
+		int blockSize = ConfigurationHelper.getInt(BLOCK_SIZE_SETTING,
+				serviceRegistry.getService(ConfigurationService.class).getSettings(), DEFAULT_BLOCK_SIZE);
+
+		params.setProperty(INCREMENT_PARAM, String.valueOf(blockSize));
+		params.setProperty(OPT_PARAM, StandardOptimizerDescriptor.POOLED_LO.getExternalName());
+		params.setProperty(FORCE_TBL_PARAM, "true");
+
+		super.configure(type, params, serviceRegistry);
+	}
+}
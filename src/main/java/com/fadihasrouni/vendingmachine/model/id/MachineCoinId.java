@@ -0,0 +1,24 @@
+package com.fadihasrouni.vendingmachine.model.id;
+
+import java.io.Serializable;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Key of the coins of one denomination held by a machine, the machine id
+ * comes first so the coins of one machine are stored together
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class MachineCoinId implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private Long machineId;
+
+	private Integer coin;
+
+}
@@ -0,0 +1,24 @@
+package com.fadihasrouni.vendingmachine.model.id;
+
+import java.io.Serializable;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Key of a buyer session, the machine id comes first so the sessions of one
+ * machine are stored together
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class MachineSessionId implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private Long machineId;
+
+	private Long userId;
+
+}
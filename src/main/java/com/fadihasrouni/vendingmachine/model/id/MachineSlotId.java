@@ -0,0 +1,24 @@
+package com.fadihasrouni.vendingmachine.model.id;
+
+import java.io.Serializable;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Key of a machine slot, the machine id comes first so the slots of one
+ * machine are stored together
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class MachineSlotId implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private Long machineId;
+
+	private Long productId;
+
+}
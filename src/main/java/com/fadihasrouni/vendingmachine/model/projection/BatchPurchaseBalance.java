@@ -0,0 +1,16 @@
+package com.fadihasrouni.vendingmachine.model.projection;
+
+import java.util.Map;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Buyer deposit and stock of every product bought right after a batch purchase
+ */
+@Data
+@AllArgsConstructor
+public class BatchPurchaseBalance {
+	private Integer deposit;
+	private Map<Long, Integer> amountsAvailable;
+}
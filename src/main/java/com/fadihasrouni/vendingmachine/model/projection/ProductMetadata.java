@@ -0,0 +1,22 @@
+package com.fadihasrouni.vendingmachine.model.projection;
+
+import com.fadihasrouni.vendingmachine.controller.response.ProductResponse;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Product fields that rarely change, the stock is always read separately
+ */
+@Data
+@AllArgsConstructor
+public class ProductMetadata {
+	private Long id;
+	private String productName;
+	private Integer cost;
+	private String sellerUsername;
+
+	public ProductResponse toResponse(Integer amountAvailable) {
+		return new ProductResponse(id, productName, amountAvailable, cost, sellerUsername);
+	}
+}
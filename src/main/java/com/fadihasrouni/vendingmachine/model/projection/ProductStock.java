@@ -0,0 +1,14 @@
+package com.fadihasrouni.vendingmachine.model.projection;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Stock of a product, without the rest of the row
+ */
+@Data
+@AllArgsConstructor
+public class ProductStock {
+	private Long id;
+	private Integer amountAvailable;
+}
@@ -0,0 +1,14 @@
+package com.fadihasrouni.vendingmachine.model.projection;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Buyer deposit and product stock right after a purchase
+ */
+@Data
+@AllArgsConstructor
+public class PurchaseBalance {
+	private Integer deposit;
+	private Integer amountAvailable;
+}
@@ -0,0 +1,27 @@
+package com.fadihasrouni.vendingmachine.repository;
+
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import com.fadihasrouni.vendingmachine.model.IdempotencyRecord;
+
+/**
+ * IdempotencyRecordRepository to handle the idempotency key db operations.
+ */
+public interface IdempotencyRecordRepository extends JpaRepository<IdempotencyRecord, String> {
+
+	/**
+	 * Records still valid, latest expiry first
+	 */
+	@Query("select r from IdempotencyRecord r where r.expiresAt > :now order by r.expiresAt desc")
+	List<IdempotencyRecord> findUnexpired(@Param("now") long now, Pageable pageable);
+
+	@Modifying
+	@Query("delete from IdempotencyRecord r where r.expiresAt <= :now")
+	int deleteExpired(@Param("now") long now);
+}
@@ -0,0 +1,30 @@
+package com.fadihasrouni.vendingmachine.repository;
+
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import com.fadihasrouni.vendingmachine.model.MachineCoin;
+import com.fadihasrouni.vendingmachine.model.id.MachineCoinId;
+
+/**
+ * MachineCoinRepository to handle the stored coin floats db operations
+ */
+public interface MachineCoinRepository extends JpaRepository<MachineCoin, MachineCoinId> {
+
+	/**
+	 * Add to the coins of one denomination without reading them first, a
+	 * negative quantity takes coins out
+	 * 
+	 * @return number of updated rows, 0 when the machine never held the coin
+	 */
+	@Modifying
+	@Query("update MachineCoin c set c.quantity = c.quantity + :quantity, c.version = c.version + 1 "
+			+ "where c.machineId = :machineId and c.coin = :coin")
+	int addQuantity(@Param("machineId") Long machineId, @Param("coin") Integer coin, @Param("quantity") Integer quantity);
+
+	List<MachineCoin> findByMachineId(Long machineId);
+}
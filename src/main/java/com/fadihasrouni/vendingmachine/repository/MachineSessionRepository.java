@@ -0,0 +1,53 @@
+package com.fadihasrouni.vendingmachine.repository;
+
+import java.util.Optional;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import com.fadihasrouni.vendingmachine.model.MachineSession;
+import com.fadihasrouni.vendingmachine.model.id.MachineSessionId;
+import com.fadihasrouni.vendingmachine.model.projection.PurchaseBalance;
+
+/**
+ * MachineSessionRepository to handle the per machine deposit db operations.
+ * Every query starts with the machine id, the leading column of the primary
+ * key.
+ */
+public interface MachineSessionRepository extends JpaRepository<MachineSession, MachineSessionId> {
+
+	/**
+	 * Add a coin to an existing session without reading it first
+	 * 
+	 * @return number of updated rows, 0 when the buyer has no session yet
+	 */
+	@Modifying
+	@Query("update MachineSession s set s.deposit = s.deposit + :coin, s.version = s.version + 1 "
+			+ "where s.machineId = :machineId and s.userId = :userId")
+	int addDeposit(@Param("machineId") Long machineId, @Param("userId") Long userId, @Param("coin") Integer coin);
+
+	/**
+	 * Take the given amount out of the session deposit only if it is large enough
+	 * 
+	 * @return number of updated rows, 0 when the balance is too low
+	 */
+	@Modifying
+	@Query("update MachineSession s set s.deposit = s.deposit - :amount, s.version = s.version + 1 "
+			+ "where s.machineId = :machineId and s.userId = :userId and s.deposit >= :amount")
+	int withdrawDeposit(@Param("machineId") Long machineId, @Param("userId") Long userId, @Param("amount") Integer amount);
+
+	@Query("select s.deposit from MachineSession s where s.machineId = :machineId and s.userId = :userId")
+	Optional<Integer> findDeposit(@Param("machineId") Long machineId, @Param("userId") Long userId);
+
+	@Query("select new com.fadihasrouni.vendingmachine.model.projection.PurchaseBalance(s.deposit, t.amountAvailable) "
+			+ "from MachineSession s, MachineSlot t where s.machineId = :machineId and s.userId = :userId "
+			+ "and t.machineId = :machineId and t.productId = :productId")
+	PurchaseBalance findPurchaseBalance(@Param("machineId") Long machineId, @Param("userId") Long userId,
+			@Param("productId") Long productId);
+
+	@Modifying
+	@Query("delete from MachineSession s where s.userId = :userId")
+	int deleteByUserId(@Param("userId") Long userId);
+}
@@ -0,0 +1,53 @@
+package com.fadihasrouni.vendingmachine.repository;
+
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import com.fadihasrouni.vendingmachine.controller.response.ProductResponse;
+import com.fadihasrouni.vendingmachine.model.MachineSlot;
+import com.fadihasrouni.vendingmachine.model.id.MachineSlotId;
+
+/**
+ * MachineSlotRepository to handle the per machine stock db operations. Every
+ * query starts with the machine id, the leading column of the primary key.
+ */
+public interface MachineSlotRepository extends JpaRepository<MachineSlot, MachineSlotId> {
+
+	/**
+	 * Take the given amount out of the machine stock only if enough is available
+	 * 
+	 * @return number of updated rows, 0 when the stock is too low or the product
+	 *         is not in the machine
+	 */
+	@Modifying
+	@Query("update MachineSlot s set s.amountAvailable = s.amountAvailable - :amount, s.version = s.version + 1 "
+			+ "where s.machineId = :machineId and s.productId = :productId and s.amountAvailable >= :amount")
+	int decrementAmountAvailable(@Param("machineId") Long machineId, @Param("productId") Long productId, @Param("amount") Integer amount);
+
+	@Query("select s.amountAvailable from MachineSlot s where s.machineId = :machineId and s.productId = :productId")
+	Optional<Integer> findAmountAvailable(@Param("machineId") Long machineId, @Param("productId") Long productId);
+
+	/**
+	 * Keyset page of the products in a machine ordered by id, a range of the
+	 * primary key
+	 * 
+	 * @param after     the last product id of the previous page
+	 * @param minAmount 1 to keep only products in stock, 0 otherwise
+	 */
+	@Query("select new com.fadihasrouni.vendingmachine.controller.response.ProductResponse("
+			+ "p.id, p.productName, s.amountAvailable, p.cost, u.username) from MachineSlot s, Product p left join p.seller u "
+			+ "where s.machineId = :machineId and s.productId > :after and s.amountAvailable >= :minAmount and p.id = s.productId "
+			+ "order by s.productId")
+	List<ProductResponse> findPage(@Param("machineId") Long machineId, @Param("after") Long after,
+			@Param("minAmount") Integer minAmount, Pageable pageable);
+
+	@Modifying
+	@Query("delete from MachineSlot s where s.productId = :productId")
+	int deleteByProductId(@Param("productId") Long productId);
+}
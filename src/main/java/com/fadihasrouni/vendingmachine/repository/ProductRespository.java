@@ -1,14 +1,77 @@
 package com.fadihasrouni.vendingmachine.repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import com.fadihasrouni.vendingmachine.controller.response.ProductResponse;
 import com.fadihasrouni.vendingmachine.model.Product;
+import com.fadihasrouni.vendingmachine.model.projection.ProductMetadata;
+import com.fadihasrouni.vendingmachine.model.projection.ProductStock;
 
 /**
  * ProductRespository to handle user data db operations.
  */
-public interface ProductRespository extends JpaRepository<Product, Long> {
+public interface ProductRespository extends JpaRepository<Product, Long>, ProductStockRepository {
+
+	/**
+	 * Reads only the response columns and the seller username, never the seller
+	 * entity
+	 */
+	String PRODUCT_RESPONSE_SELECT = "select new com.fadihasrouni.vendingmachine.controller.response.ProductResponse("
+			+ "p.id, p.productName, p.amountAvailable, p.cost, s.username) from Product p left join p.seller s ";
+
 	Optional<Product> findById(Long id);
+
+	@Query(PRODUCT_RESPONSE_SELECT + "where p.id = :id")
+	Optional<ProductResponse> findResponseById(@Param("id") Long id);
+
+	@Query("select new com.fadihasrouni.vendingmachine.model.projection.ProductMetadata(p.id, p.productName, p.cost, s.username) "
+			+ "from Product p left join p.seller s where p.id = :id")
+	Optional<ProductMetadata> findMetadataById(@Param("id") Long id);
+
+	/**
+	 * Take the given amount out of stock only if enough is available
+	 * 
+	 * @return number of updated rows, 0 when the stock is too low
+	 */
+	@Modifying
+	@Query("update Product p set p.amountAvailable = p.amountAvailable - :amount, p.version = p.version + 1 where p.id = :id and p.amountAvailable >= :amount")
+	int decrementAmountAvailable(@Param("id") Long id, @Param("amount") Integer amount);
+
+	/**
+	 * Apply a stock delta without reading the row first
+	 */
+	@Modifying
+	@Query("update Product p set p.amountAvailable = p.amountAvailable + :quantity, p.version = p.version + 1 where p.id = :id")
+	int addAmountAvailable(@Param("id") Long id, @Param("quantity") Integer quantity);
+
+	@Query("select p.amountAvailable from Product p where p.id = :id")
+	Optional<Integer> findAmountAvailableById(@Param("id") Long id);
+
+	@Query("select new com.fadihasrouni.vendingmachine.model.projection.ProductStock(p.id, p.amountAvailable) from Product p where p.id in :ids")
+	List<ProductStock> findStockByIdIn(@Param("ids") Collection<Long> ids);
+
+	/**
+	 * Keyset page of products ordered by id, reads only the response columns
+	 * 
+	 * @param after    the last id of the previous page
+	 * @param minAmount 1 to keep only products in stock, 0 otherwise
+	 */
+	@Query(PRODUCT_RESPONSE_SELECT + "where p.id > :after and p.amountAvailable >= :minAmount order by p.id")
+	List<ProductResponse> findPage(@Param("after") Long after, @Param("minAmount") Integer minAmount, Pageable pageable);
+
+	/**
+	 * Keyset page of the products of one seller, served by the (seller_id, id)
+	 * index
+	 */
+	@Query(PRODUCT_RESPONSE_SELECT + "where p.seller.id = :sellerId and p.id > :after and p.amountAvailable >= :minAmount order by p.id")
+	List<ProductResponse> findPageBySeller(@Param("sellerId") Long sellerId, @Param("after") Long after,
+			@Param("minAmount") Integer minAmount, Pageable pageable);
 }
@@ -0,0 +1,19 @@
+package com.fadihasrouni.vendingmachine.repository;
+
+import java.util.SortedMap;
+
+/**
+ * Stock updates that are sent to the database as one JDBC batch
+ */
+public interface ProductStockRepository {
+
+	/**
+	 * Take the given amounts out of the stock of the products, each row only if
+	 * it has enough stock. The rows are updated in product id order so that
+	 * concurrent batches lock them in the same order.
+	 * 
+	 * @param amounts amount to take by product id
+	 * @return number of updated rows for each product, in product id order
+	 */
+	int[] decrementAmountsAvailable(SortedMap<Long, Integer> amounts);
+}
@@ -0,0 +1,30 @@
+package com.fadihasrouni.vendingmachine.repository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Runs on the connection of the surrounding JPA transaction
+ */
+public class ProductStockRepositoryImpl implements ProductStockRepository {
+
+	private static final String DECREMENT_AMOUNT_AVAILABLE = "update product set amount_available = amount_available - ?, version = version + 1 where id = ? and amount_available >= ?";
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Override
+	public int[] decrementAmountsAvailable(SortedMap<Long, Integer> amounts) {
+		List<Object[]> arguments = new ArrayList<>(amounts.size());
+		for (Map.Entry<Long, Integer> amount : amounts.entrySet()) {
+			arguments.add(new Object[] { amount.getValue(), amount.getKey(), amount.getValue() });
+		}
+
+		return jdbcTemplate.batchUpdate(DECREMENT_AMOUNT_AVAILABLE, arguments);
+	}
+}
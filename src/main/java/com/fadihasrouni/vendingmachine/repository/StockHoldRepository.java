@@ -0,0 +1,28 @@
+package com.fadihasrouni.vendingmachine.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import com.fadihasrouni.vendingmachine.model.StockHold;
+
+/**
+ * StockHoldRepository to handle the stock hold db operations.
+ */
+public interface StockHoldRepository extends JpaRepository<StockHold, Long> {
+
+	/**
+	 * Drop one hold
+	 * 
+	 * @return number of deleted rows, 0 when the hold was already confirmed or
+	 *         released
+	 */
+	@Modifying
+	@Query("delete from StockHold h where h.id = :id")
+	int deleteHold(@Param("id") Long id);
+
+	@Modifying
+	@Query("delete from StockHold h where h.productId = :productId")
+	int deleteByProductId(@Param("productId") Long productId);
+}
@@ -0,0 +1,33 @@
+package com.fadihasrouni.vendingmachine.repository;
+
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import com.fadihasrouni.vendingmachine.model.StockMovement;
+
+/**
+ * StockMovementRepository to handle the inventory journal db operations.
+ */
+public interface StockMovementRepository extends JpaRepository<StockMovement, Long> {
+
+	List<StockMovement> findByOrderByIdAsc(Pageable pageable);
+
+	/**
+	 * The stored stock of a product with its movements not flushed yet, read in
+	 * one statement so a flush committing meanwhile is seen either fully or not
+	 * at all
+	 */
+	@Query("select p.amountAvailable + (select coalesce(sum(m.quantity), 0) from StockMovement m where m.productId = p.id) "
+			+ "from Product p where p.id = :productId")
+	Optional<Long> findStockWithPendingByProductId(@Param("productId") Long productId);
+
+	@Modifying
+	@Query("delete from StockMovement m where m.productId = :productId")
+	int deleteByProductId(@Param("productId") Long productId);
+}
@@ -3,12 +3,50 @@ package com.fadihasrouni.vendingmachine.repository;
 import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import com.fadihasrouni.vendingmachine.model.User;
+import com.fadihasrouni.vendingmachine.model.projection.PurchaseBalance;
+import com.fadihasrouni.vendingmachine.model.type.UserRole;
 
 /**
  * UserRepository to handle user data db operations. 
  */
 public interface UserRepository extends JpaRepository<User, Long> {
 	Optional<User> findByUsername(String username);
+
+	/**
+	 * Take the given amount out of the deposit only if the user still has the
+	 * given role and enough balance
+	 * 
+	 * @return number of updated rows, 0 when the user is missing, has another role
+	 *         or not enough balance
+	 */
+	@Modifying
+	@Query("update User u set u.deposit = u.deposit - :amount, u.version = u.version + 1 where u.id = :id and u.userRole = :userRole and u.deposit >= :amount")
+	int withdrawDeposit(@Param("id") Long id, @Param("amount") Integer amount, @Param("userRole") UserRole userRole);
+
+	/**
+	 * Read the buyer deposit and the product stock in a single statement
+	 */
+	@Query("select new com.fadihasrouni.vendingmachine.model.projection.PurchaseBalance(u.deposit, p.amountAvailable) from User u, Product p where u.id = :userId and p.id = :productId")
+	PurchaseBalance findPurchaseBalance(@Param("userId") Long userId, @Param("productId") Long productId);
+
+	@Query("select u.deposit from User u where u.id = :id")
+	Integer findDepositById(@Param("id") Long id);
+
+	/**
+	 * Replace the password hash only if it was not changed meanwhile
+	 * 
+	 * @return number of updated rows, 0 when the user is missing or the hash changed
+	 */
+	@Modifying
+	@Query("update User u set u.password = :newPassword, u.version = u.version + 1 where u.id = :id and u.password = :oldPassword")
+	int updatePassword(@Param("id") Long id, @Param("oldPassword") String oldPassword, @Param("newPassword") String newPassword);
+
+	@Modifying
+	@Query("update User u set u.deposit = :deposit, u.version = u.version + 1 where u.id = :id")
+	int updateDeposit(@Param("id") Long id, @Param("deposit") Integer deposit);
 }
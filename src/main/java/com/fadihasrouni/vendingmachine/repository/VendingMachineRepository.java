@@ -0,0 +1,12 @@
+package com.fadihasrouni.vendingmachine.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import com.fadihasrouni.vendingmachine.model.VendingMachine;
+
+/**
+ * VendingMachineRepository to handle the machine db operations.
+ */
+public interface VendingMachineRepository extends JpaRepository<VendingMachine, Long> {
+
+}
@@ -2,20 +2,26 @@ package com.fadihasrouni.vendingmachine.service;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.fadihasrouni.vendingmachine.controller.response.UserResponse;
 import com.fadihasrouni.vendingmachine.exception.ResourceNotFoundException;
 import com.fadihasrouni.vendingmachine.model.User;
 import com.fadihasrouni.vendingmachine.repository.UserRepository;
+import com.fadihasrouni.vendingmachine.service.cache.UserPrincipalCache;
 
 @Service
-public class CustomUserDetailsService implements UserDetailsService {
+public class CustomUserDetailsService implements UserDetailsService, UserDetailsPasswordService {
 
 	@Autowired
 	private UserRepository userRepository;
 
+	@Autowired
+	private UserPrincipalCache userPrincipalCache;
+
 	@Override
 	public UserDetails loadUserByUsername(String username) {
 		User user = userRepository.findByUsername(username)
@@ -24,15 +30,35 @@ public class CustomUserDetailsService implements UserDetailsService {
 	}
 
 	/**
-	 * load the user by id
+	 * Store the password rehashed on login with the current cost, a password
+	 * changed meanwhile is kept
+	 * 
+	 * @param user
+	 * @param newPassword
+	 * @return
+	 */
+	@Override
+	@Transactional
+	public UserDetails updatePassword(UserDetails user, String newPassword) {
+		UserResponse userResponse = (UserResponse) user;
+		if (userRepository.updatePassword(userResponse.getId(), userResponse.getPassword(), newPassword) > 0) {
+			userPrincipalCache.invalidate(userResponse.getId());
+			userResponse.setPassword(newPassword);
+		}
+		return userResponse;
+	}
+
+	/**
+	 * load the user by id, served from the principal cache when possible
 	 * 
 	 * @param id
 	 * @return
 	 */
 	public UserResponse loadUserById(Long id) {
-		User user = userRepository.findById(id).orElseThrow(() -> new ResourceNotFoundException("User not found"));
-		;
-		return populateUserResponse(user);
+		return userPrincipalCache.get(id, key -> {
+			User user = userRepository.findById(key).orElseThrow(() -> new ResourceNotFoundException("User not found"));
+			return populateUserResponse(user);
+		});
 	}
 
 	/**
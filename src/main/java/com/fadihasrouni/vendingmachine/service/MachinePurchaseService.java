@@ -0,0 +1,76 @@
+package com.fadihasrouni.vendingmachine.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.fadihasrouni.vendingmachine.exception.BadRequestException;
+import com.fadihasrouni.vendingmachine.exception.ResourceNotFoundException;
+import com.fadihasrouni.vendingmachine.model.MachineSession;
+import com.fadihasrouni.vendingmachine.model.projection.PurchaseBalance;
+import com.fadihasrouni.vendingmachine.repository.MachineSessionRepository;
+import com.fadihasrouni.vendingmachine.repository.MachineSlotRepository;
+import com.fadihasrouni.vendingmachine.service.change.MachineCoinFloats;
+
+@Service
+public class MachinePurchaseService {
+
+	@Autowired
+	private MachineSlotRepository machineSlotRepository;
+
+	@Autowired
+	private MachineSessionRepository machineSessionRepository;
+
+	@Autowired
+	private MachineCoinFloats machineCoinFloats;
+
+	/**
+	 * Take the product out of the machine slot and the cost out of the buyer
+	 * session in one transaction. Only rows of this machine are updated, the
+	 * slot first then the session like a default machine purchase, so buyers of
+	 * other machines never wait on these locks.
+	 * 
+	 * @param machineId
+	 * @param userId
+	 * @param productId
+	 * @param amount
+	 * @param cost
+	 * @return session deposit and slot stock after the purchase
+	 */
+	@Transactional
+	public PurchaseBalance purchase(Long machineId, Long userId, Long productId, Integer amount, Integer cost) {
+
+		if (machineSlotRepository.decrementAmountAvailable(machineId, productId, amount) == 0) {
+			if (machineSlotRepository.findAmountAvailable(machineId, productId).isEmpty()) {
+				throw new ResourceNotFoundException("Product " + productId + " is not stocked in machine " + machineId);
+			}
+			throw new BadRequestException("The amount of product requested in not available", null);
+		}
+
+		if (machineSessionRepository.withdrawDeposit(machineId, userId, cost) == 0) {
+			throw new BadRequestException("You don't have enough balance in order to buy the product(s)", null);
+		}
+
+		// The updated rows are locked by this transaction until commit, so this is the state we wrote
+		return machineSessionRepository.findPurchaseBalance(machineId, userId, productId);
+	}
+
+	/**
+	 * Add a coin to the buyer session and the machine coins, the first coin
+	 * creates them. Two first coins at once make one insert fail on the primary
+	 * key, the caller then adds the coin again.
+	 * 
+	 * @param machineId
+	 * @param userId
+	 * @param coin
+	 */
+	@Transactional
+	public void deposit(Long machineId, Long userId, Integer coin) {
+		if (machineSessionRepository.addDeposit(machineId, userId, coin) == 0) {
+			machineSessionRepository.saveAndFlush(new MachineSession(machineId, userId, coin, null));
+		}
+
+		// The coin can be given back as change once the deposit is stored
+		machineCoinFloats.get(machineId).deposit(coin);
+	}
+}
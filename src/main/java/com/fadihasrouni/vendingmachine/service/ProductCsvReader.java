@@ -0,0 +1,168 @@
+package com.fadihasrouni.vendingmachine.service;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import com.fadihasrouni.vendingmachine.controller.request.ProductImportRow;
+import com.fadihasrouni.vendingmachine.exception.BadRequestException;
+
+/**
+ * Reads import rows from a CSV stream one line at a time. The first line names
+ * the columns, in any order, out of id, productName, cost, amountAvailable and
+ * restock. Fields may be quoted, a quote inside a quoted field is doubled.
+ * A malformed line fails only its own row.
+ */
+class ProductCsvReader implements Iterator<ProductImportRow>, Closeable {
+
+	private static final List<String> COLUMNS = Arrays.asList("id", "productName", "cost", "amountAvailable",
+			"restock");
+
+	private final BufferedReader reader;
+
+	// Position of each known column in a line, -1 when absent
+	private final int[] positions = new int[COLUMNS.size()];
+
+	private String nextLine;
+
+	ProductCsvReader(Reader reader) {
+		this.reader = new BufferedReader(reader);
+
+		String header = readLine();
+		if (header == null) {
+			throw new BadRequestException("The CSV header is missing", null);
+		}
+
+		Arrays.fill(positions, -1);
+		List<String> names = split(header);
+		for (int i = 0; i < names.size(); i++) {
+			int column = indexOfColumn(names.get(i).trim());
+			if (column < 0) {
+				throw new BadRequestException("Unknown CSV column: " + names.get(i) + ", expected " + COLUMNS, null);
+			}
+			positions[column] = i;
+		}
+	}
+
+	@Override
+	public boolean hasNext() {
+		while (nextLine == null) {
+			String line = readLine();
+			if (line == null) {
+				return false;
+			}
+			if (!line.trim().isEmpty()) {
+				nextLine = line;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public ProductImportRow next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+
+		String line = nextLine;
+		nextLine = null;
+
+		List<String> fields = split(line);
+		ProductImportRow row = new ProductImportRow();
+		row.setId(toLong(field(fields, 0), "id"));
+		row.setProductName(field(fields, 1));
+		row.setCost(toInteger(field(fields, 2), "cost"));
+		row.setAmountAvailable(toInteger(field(fields, 3), "amountAvailable"));
+		row.setRestock(toInteger(field(fields, 4), "restock"));
+		return row;
+	}
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+
+	private String readLine() {
+		try {
+			return reader.readLine();
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+
+	private String field(List<String> fields, int column) {
+		int position = positions[column];
+		if (position < 0 || position >= fields.size()) {
+			return null;
+		}
+
+		String value = fields.get(position);
+		return value.isEmpty() ? null : value;
+	}
+
+	private static int indexOfColumn(String name) {
+		for (int i = 0; i < COLUMNS.size(); i++) {
+			if (COLUMNS.get(i).equalsIgnoreCase(name)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static Long toLong(String value, String column) {
+		try {
+			return value == null ? null : Long.valueOf(value.trim());
+		} catch (NumberFormatException ex) {
+			throw new BadRequestException("The " + column + " should be a number", null);
+		}
+	}
+
+	private static Integer toInteger(String value, String column) {
+		try {
+			return value == null ? null : Integer.valueOf(value.trim());
+		} catch (NumberFormatException ex) {
+			throw new BadRequestException("The " + column + " should be a number", null);
+		}
+	}
+
+	static List<String> split(String line) {
+		List<String> fields = new ArrayList<>();
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (quoted) {
+				if (c != '"') {
+					field.append(c);
+				} else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+					field.append('"');
+					i++;
+				} else {
+					quoted = false;
+				}
+			} else if (c == '"') {
+				quoted = true;
+			} else if (c == ',') {
+				fields.add(field.toString());
+				field.setLength(0);
+			} else {
+				field.append(c);
+			}
+		}
+
+		if (quoted) {
+			throw new BadRequestException("Unterminated quoted field", null);
+		}
+
+		fields.add(field.toString());
+		return fields;
+	}
+}
@@ -0,0 +1,389 @@
+package com.fadihasrouni.vendingmachine.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.annotation.PostConstruct;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
+
+import com.fadihasrouni.vendingmachine.controller.request.ProductImportRow;
+import com.fadihasrouni.vendingmachine.controller.response.ProductImportError;
+import com.fadihasrouni.vendingmachine.controller.response.ProductImportResponse;
+import com.fadihasrouni.vendingmachine.controller.response.UserResponse;
+import com.fadihasrouni.vendingmachine.exception.BadRequestException;
+import com.fadihasrouni.vendingmachine.exception.ResourceNotFoundException;
+import com.fadihasrouni.vendingmachine.model.Product;
+import com.fadihasrouni.vendingmachine.model.User;
+import com.fadihasrouni.vendingmachine.repository.ProductRespository;
+import com.fadihasrouni.vendingmachine.repository.UserRepository;
+import com.fadihasrouni.vendingmachine.service.cache.ProductMetadataCache;
+import com.fadihasrouni.vendingmachine.service.inventory.InventoryLedger;
+import com.fadihasrouni.vendingmachine.utils.Constants;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.annotation.Timed;
+
+/**
+ * Creates and updates products in bulk for the authenticated seller.
+ *
+ * The rows are streamed from the request and written in chunks, each chunk in
+ * its own transaction so the inserts and updates go out as JDBC batches. A row
+ * that fails validation is reported and skipped. When the database rejects a
+ * chunk, its rows are written one by one so only the bad rows are reported.
+ * Chunks written before a failure stay committed.
+ */
+@Service
+public class ProductImportService {
+
+	private Logger log = LogManager.getLogger(ProductImportService.class);
+
+	@Autowired
+	private ProductRespository productRepository;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private InventoryLedger inventoryLedger;
+
+	@Autowired
+	private ProductMetadataCache productMetadataCache;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@Value("${vending.product.import.chunk-size:500}")
+	private int chunkSize;
+
+	@Value(Constants.RETRY_MAX_ATTEMPTS)
+	private int maxAttempts;
+
+	private TransactionTemplate transactionTemplate;
+
+	@PostConstruct
+	void init() {
+		transactionTemplate = new TransactionTemplate(transactionManager);
+	}
+
+	/**
+	 * Import the rows of a JSON array
+	 *
+	 * @param input
+	 * @return
+	 * @throws IOException
+	 */
+	@Timed("vending.product.import")
+	public ProductImportResponse importJson(InputStream input) throws IOException {
+		User seller = findSeller();
+
+		try (MappingIterator<ProductImportRow> rows = objectMapper.readerFor(ProductImportRow.class).readValues(input)) {
+			return importRows(seller, rows);
+		}
+	}
+
+	/**
+	 * Import the rows of a CSV document with a header line
+	 *
+	 * @param input
+	 * @return
+	 * @throws IOException
+	 */
+	@Timed("vending.product.import")
+	public ProductImportResponse importCsv(InputStream input) throws IOException {
+		User seller = findSeller();
+
+		try (ProductCsvReader rows = new ProductCsvReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+			return importRows(seller, rows);
+		}
+	}
+
+	private User findSeller() {
+		UserResponse seller = ProductService.getSellerInformation();
+
+		return userRepository.findById(seller.getId()).orElseThrow(() -> new ResourceNotFoundException("Could not find user"));
+	}
+
+	private ProductImportResponse importRows(User seller, Iterator<ProductImportRow> rows) {
+		ProductImportResponse response = new ProductImportResponse();
+		List<ImportLine> chunk = new ArrayList<>(chunkSize);
+
+		int row = 0;
+		while (hasNext(rows, row + 1, response)) {
+			row++;
+
+			ImportLine line;
+			try {
+				line = new ImportLine(row, rows.next());
+			} catch (RuntimeException ex) {
+				response.getErrors().add(new ProductImportError(row, readError(ex)));
+				continue;
+			}
+
+			if (isValid(line, response)) {
+				chunk.add(line);
+			}
+
+			if (chunk.size() == chunkSize) {
+				writeChunk(seller, chunk, response);
+				chunk.clear();
+			}
+		}
+
+		if (!chunk.isEmpty()) {
+			writeChunk(seller, chunk, response);
+		}
+
+		// Rows rejected by the database are reported after the ones rejected while reading
+		response.getErrors().sort(Comparator.comparingInt(ProductImportError::getRow));
+
+		log.info("Imported products for seller {}: {} created, {} updated, {} rejected", seller.getId(),
+				response.getCreated(), response.getUpdated(), response.getErrors().size());
+
+		return response;
+	}
+
+	/**
+	 * A stream that cannot be read any further ends the import, the rows read so
+	 * far are still written
+	 */
+	private boolean hasNext(Iterator<ProductImportRow> rows, int row, ProductImportResponse response) {
+		try {
+			return rows.hasNext();
+		} catch (RuntimeException ex) {
+			response.getErrors().add(new ProductImportError(row, readError(ex)));
+			return false;
+		}
+	}
+
+	private static String readError(RuntimeException ex) {
+		if (ex.getCause() instanceof JsonProcessingException) {
+			return "Malformed row: " + ((JsonProcessingException) ex.getCause()).getOriginalMessage();
+		}
+		if (ex instanceof BadRequestException) {
+			return ex.getMessage();
+		}
+		return "Malformed row: " + ex.getMessage();
+	}
+
+	/**
+	 * Validate a row on its own, with the same rules as the single product
+	 * endpoints
+	 */
+	private boolean isValid(ImportLine line, ProductImportResponse response) {
+		ProductImportRow row = line.row;
+
+		try {
+			if (row.getId() == null) {
+				if (!StringUtils.hasText(row.getProductName())) {
+					throw new BadRequestException("Product name is required", null);
+				}
+				if (row.getRestock() != null) {
+					throw new BadRequestException("Restock only applies to existing products", null);
+				}
+				ProductService.validateCost(row.getCost());
+				ProductService.validateAmount(row.getAmountAvailable());
+			} else {
+				if (row.getAmountAvailable() != null && row.getRestock() != null) {
+					throw new BadRequestException("Either amountAvailable or restock can be set, not both", null);
+				}
+				if (row.getCost() != null) {
+					ProductService.validateCost(row.getCost());
+				}
+				if (row.getAmountAvailable() != null) {
+					ProductService.validateAmount(row.getAmountAvailable());
+				}
+			}
+		} catch (BadRequestException ex) {
+			response.getErrors().add(new ProductImportError(line.number, ex.getMessage()));
+			return false;
+		}
+
+		return true;
+	}
+
+	private void writeChunk(User seller, List<ImportLine> chunk, ProductImportResponse response) {
+		try {
+			apply(writeWithRetry(seller, chunk), response);
+		} catch (DataAccessException ex) {
+			log.warn("Import chunk of {} rows was rejected, writing its rows one by one: {}", chunk.size(),
+					ex.getMessage());
+
+			for (ImportLine line : chunk) {
+				try {
+					apply(writeWithRetry(seller, Collections.singletonList(line)), response);
+				} catch (DataAccessException rowEx) {
+					response.getErrors().add(new ProductImportError(line.number,
+							"Could not save the row: " + NestedExceptionUtils.getMostSpecificCause(rowEx).getMessage()));
+				}
+			}
+		}
+	}
+
+	private void apply(ChunkResult result, ProductImportResponse response) {
+		response.setCreated(response.getCreated() + result.created);
+		response.setUpdated(response.getUpdated() + result.updated);
+		response.getErrors().addAll(result.errors);
+	}
+
+	/**
+	 * Concurrent purchases bump the version of the updated products, the chunk is
+	 * then read and written again
+	 */
+	private ChunkResult writeWithRetry(User seller, List<ImportLine> lines) {
+		for (int attempt = 1;; attempt++) {
+			try {
+				return transactionTemplate.execute(status -> write(seller, lines));
+			} catch (OptimisticLockingFailureException ex) {
+				if (attempt >= maxAttempts) {
+					throw ex;
+				}
+			}
+		}
+	}
+
+	private ChunkResult write(User seller, List<ImportLine> lines) {
+		ChunkResult result = new ChunkResult();
+
+		Set<Long> ids = new TreeSet<>();
+		for (ImportLine line : lines) {
+			if (line.row.getId() != null) {
+				ids.add(line.row.getId());
+			}
+		}
+
+		Map<Long, Product> existing = new HashMap<>();
+		for (Product product : productRepository.findAllById(ids)) {
+			existing.put(product.getId(), product);
+		}
+
+		List<Product> created = new ArrayList<>();
+		List<ImportLine> restocked = new ArrayList<>();
+		List<Long> changed = new ArrayList<>();
+
+		for (ImportLine line : lines) {
+			ProductImportRow row = line.row;
+
+			if (row.getId() == null) {
+				Product product = new Product();
+				product.setProductName(row.getProductName());
+				product.setAmountAvailable(row.getAmountAvailable());
+				product.setCost(row.getCost());
+				product.setSeller(seller);
+				created.add(product);
+				continue;
+			}
+
+			Product product = existing.get(row.getId());
+			if (product == null) {
+				result.errors.add(new ProductImportError(line.number, "Couldn't find product with id: " + row.getId()));
+				continue;
+			}
+
+			if (!product.getSeller().getId().equals(seller.getId())) {
+				result.errors.add(new ProductImportError(line.number, "Couldn't update another seller product"));
+				continue;
+			}
+
+			// Hot products go through the inventory ledger once the other changes are written
+			if (inventoryLedger.isTracked(product.getId())) {
+				Integer available = inventoryLedger.available(product.getId());
+				if (row.getRestock() != null && available != null && available + (long) row.getRestock() < 0) {
+					result.errors.add(new ProductImportError(line.number, "Amount available should be larger than 0"));
+					continue;
+				}
+				if (row.getAmountAvailable() != null || row.getRestock() != null) {
+					restocked.add(line);
+				}
+			} else if (row.getAmountAvailable() != null) {
+				product.setAmountAvailable(row.getAmountAvailable());
+			} else if (row.getRestock() != null) {
+				long amount = (long) product.getAmountAvailable() + row.getRestock();
+				if (amount < 0 || amount > Integer.MAX_VALUE) {
+					result.errors.add(new ProductImportError(line.number, "Amount available should be larger than 0"));
+					continue;
+				}
+				product.setAmountAvailable((int) amount);
+			}
+
+			if (row.getProductName() != null || row.getCost() != null) {
+				if (row.getProductName() != null) {
+					product.setProductName(row.getProductName());
+				}
+				if (row.getCost() != null) {
+					product.setCost(row.getCost());
+				}
+				changed.add(product.getId());
+			}
+
+			result.updated++;
+		}
+
+		productRepository.saveAll(created);
+		result.created = created.size();
+
+		if (!restocked.isEmpty()) {
+			// Write the pending product changes first, the ledger restock bumps the row version
+			productRepository.flush();
+
+			for (ImportLine line : restocked) {
+				ProductImportRow row = line.row;
+				if (row.getAmountAvailable() != null) {
+					inventoryLedger.restock(row.getId(), row.getAmountAvailable());
+				} else if (inventoryLedger.restockBy(row.getId(), row.getRestock()) < 0) {
+					// Purchases took the stock after the check above, the other fields are already written
+					result.errors.add(new ProductImportError(line.number,
+							"Amount available should be larger than 0, the other fields were updated"));
+				}
+			}
+		}
+
+		for (Long id : changed) {
+			productMetadataCache.invalidate(id);
+		}
+
+		return result;
+	}
+
+	private static class ImportLine {
+		private final int number;
+		private final ProductImportRow row;
+
+		ImportLine(int number, ProductImportRow row) {
+			this.number = number;
+			this.row = row;
+		}
+	}
+
+	private static class ChunkResult {
+		private int created;
+		private int updated;
+		private final List<ProductImportError> errors = new ArrayList<>();
+	}
+}
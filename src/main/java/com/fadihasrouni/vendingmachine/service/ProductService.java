@@ -1,15 +1,24 @@
 package com.fadihasrouni.vendingmachine.service;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.retry.annotation.Backoff;
+import org.springframework.retry.annotation.Retryable;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import com.fadihasrouni.vendingmachine.config.trace.RequestTrace;
 import com.fadihasrouni.vendingmachine.controller.request.ProductRequest;
 import com.fadihasrouni.vendingmachine.controller.response.GenericResponse;
+import com.fadihasrouni.vendingmachine.controller.response.ProductPageResponse;
 import com.fadihasrouni.vendingmachine.controller.response.ProductResponse;
 import com.fadihasrouni.vendingmachine.controller.response.UserResponse;
 import com.fadihasrouni.vendingmachine.exception.BadRequestException;
@@ -17,9 +26,19 @@ import com.fadihasrouni.vendingmachine.exception.ForbiddenException;
 import com.fadihasrouni.vendingmachine.exception.ResourceNotFoundException;
 import com.fadihasrouni.vendingmachine.model.Product;
 import com.fadihasrouni.vendingmachine.model.User;
+import com.fadihasrouni.vendingmachine.model.projection.ProductMetadata;
 import com.fadihasrouni.vendingmachine.model.type.UserRole;
+import com.fadihasrouni.vendingmachine.repository.MachineSlotRepository;
 import com.fadihasrouni.vendingmachine.repository.ProductRespository;
+import com.fadihasrouni.vendingmachine.repository.StockHoldRepository;
 import com.fadihasrouni.vendingmachine.repository.UserRepository;
+import com.fadihasrouni.vendingmachine.service.cache.ProductMetadataCache;
+import com.fadihasrouni.vendingmachine.service.inventory.InventoryLedger;
+import com.fadihasrouni.vendingmachine.utils.Constants;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.annotation.Timed;
 
 @Service
 public class ProductService {
@@ -30,6 +49,23 @@ public class ProductService {
 	@Autowired
 	private UserRepository userRepository;
 	
+	@Autowired
+	private InventoryLedger inventoryLedger;
+	
+	@Autowired
+	private ObjectMapper objectMapper;
+	
+	@Autowired
+	private ProductMetadataCache productMetadataCache;
+	
+	@Autowired
+	private MachineSlotRepository machineSlotRepository;
+	
+	@Autowired
+	private StockHoldRepository stockHoldRepository;
+	
+	private int exportPageSize = Constants.PRODUCT_EXPORT_PAGE_SIZE;
+	
 	
 	/**
 	 * Find the product by a specific product id
@@ -37,21 +73,150 @@ public class ProductService {
 	 * @param id
 	 * @return
 	 */
+	@Timed("vending.product.find")
 	public ProductResponse findProductById(Long id) {
 		
-		Product product = productRepository.findById(id).orElseThrow(() -> new ResourceNotFoundException("Could not find product with id: " + id));
-		return populateProductResponse(product);
+		ProductMetadata metadata = productMetadataCache.getIfPresent(id);
+		
+		if (metadata != null) {
+			// Only the stock has to be read
+			Integer trackedAmount = inventoryLedger.isTracked(id) ? inventoryLedger.available(id) : null;
+			Integer amount = trackedAmount != null ? trackedAmount
+					: productRepository.findAmountAvailableById(id).orElseThrow(() -> new ResourceNotFoundException("Could not find product with id: " + id));
+			return metadata.toResponse(amount);
+		}
+		
+		long stamp = productMetadataCache.stamp();
+		ProductResponse response = productRepository.findResponseById(id).orElseThrow(() -> new ResourceNotFoundException("Could not find product with id: " + id));
+		productMetadataCache.put(new ProductMetadata(response.getId(), response.getProductName(), response.getCost(), response.getSellerUsername()), stamp);
+		
+		applyTrackedStock(response);
+		return response;
 	}
 	
 	/**
-	 * Find all products available
+	 * Find the product name, cost and seller without its stock, served from the
+	 * cache when possible
 	 * 
 	 * @param id
 	 * @return
 	 */
+	public ProductMetadata findProductMetadata(Long id) {
+		ProductMetadata metadata = productMetadataCache.getIfPresent(id);
+		
+		if (metadata == null) {
+			long stamp = productMetadataCache.stamp();
+			metadata = productRepository.findMetadataById(id).orElseThrow(() -> new ResourceNotFoundException("Could not find product with id: " + id));
+			productMetadataCache.put(metadata, stamp);
+		}
+		
+		return metadata;
+	}
+	
+	/**
+	 * Find all products available ordered by id, in one statement. Large
+	 * catalogs are better read page by page with {@link #findProductsPage}.
+	 * 
+	 * @return
+	 */
+	@Timed("vending.product.list")
 	public List<ProductResponse> findAllProductsList() {
-		List<Product> products = productRepository.findAll();
-		return populateProductListResponse(products);
+		List<ProductResponse> products = productRepository.findPage(0L, 0, Pageable.unpaged());
+		
+		for (ProductResponse product : products) {
+			applyTrackedStock(product);
+		}
+		
+		return products;
+	}
+	
+	/**
+	 * Find a page of products ordered by id, starting after the given cursor
+	 * 
+	 * @param after    last product id of the previous page, null for the first page
+	 * @param limit    page size, capped to the maximum page size
+	 * @param sellerId only products of this seller when not null
+	 * @param inStock  only products with an available amount
+	 * @return
+	 */
+	@Timed("vending.product.page")
+	public ProductPageResponse findProductsPage(Long after, Integer limit, Long sellerId, boolean inStock) {
+		int pageSize = pageSize(limit);
+		
+		long cursor = after == null ? 0L : after;
+		int minAmount = inStock ? 1 : 0;
+		// One extra row tells whether there is a next page without a count query
+		Pageable pageable = PageRequest.of(0, pageSize + 1);
+		
+		List<ProductResponse> products = sellerId == null
+				? productRepository.findPage(cursor, minAmount, pageable)
+				: productRepository.findPageBySeller(sellerId, cursor, minAmount, pageable);
+		
+		ProductPageResponse response = new ProductPageResponse();
+		
+		if (products.size() > pageSize) {
+			products = products.subList(0, pageSize);
+			response.setNextCursor(products.get(pageSize - 1).getId());
+		}
+		
+		for (ProductResponse product : products) {
+			applyTrackedStock(product);
+		}
+		
+		response.setProducts(products);
+		return response;
+	}
+	
+	/**
+	 * Validate the requested page size and cap it to the maximum page size
+	 * 
+	 * @param limit
+	 * @return
+	 */
+	// Package-private for the machine catalog
+	static int pageSize(Integer limit) {
+		int pageSize = limit == null ? Constants.PRODUCT_PAGE_DEFAULT_LIMIT : limit;
+		
+		if (pageSize <= 0) {
+			throw new BadRequestException("Limit should be larger than 0", null);
+		}
+		return Math.min(pageSize, Constants.PRODUCT_PAGE_MAX_LIMIT);
+	}
+	
+	/**
+	 * Write the whole catalog as newline delimited JSON, one product per line.
+	 * The catalog is read in keyset pages, each page in its own short read and
+	 * written once read, so no connection is held while the client reads and
+	 * memory stays within a page whatever the catalog size.
+	 * 
+	 * @param outputStream
+	 * @throws IOException
+	 */
+	@Timed("vending.product.export")
+	public void exportProducts(OutputStream outputStream) throws IOException {
+		JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream);
+		generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+		generator.setRootValueSeparator(null);
+		
+		Pageable pageable = PageRequest.of(0, exportPageSize);
+		
+		try {
+			List<ProductResponse> products = productRepository.findPage(0L, 0, pageable);
+			while (!products.isEmpty()) {
+				for (ProductResponse product : products) {
+					applyTrackedStock(product);
+					objectMapper.writeValue(generator, product);
+					generator.writeRaw('\n');
+				}
+				
+				if (products.size() < exportPageSize) {
+					break;
+				}
+				products = productRepository.findPage(products.get(products.size() - 1).getId(), 0, pageable);
+			}
+		} finally {
+			generator.close();
+		}
 	}
 	
 	/**
@@ -60,6 +225,7 @@ public class ProductService {
 	 * @param productRequest
 	 * @return
 	 */
+	@Timed("vending.product.add")
 	public ProductResponse addNewProduct(ProductRequest productRequest) {
 		
 		UserResponse seller = getSellerInformation();
@@ -83,6 +249,11 @@ public class ProductService {
 	 * @param productRequest
 	 * @return
 	 */
+	@Retryable(label = "updateProduct", value = OptimisticLockingFailureException.class, maxAttemptsExpression = Constants.RETRY_MAX_ATTEMPTS,
+			backoff = @Backoff(delayExpression = Constants.RETRY_DELAY_MS, maxDelayExpression = Constants.RETRY_MAX_DELAY_MS,
+			multiplierExpression = Constants.RETRY_MULTIPLIER, random = true))
+	@Transactional
+	@Timed("vending.product.update")
 	public ProductResponse updateProduct(Long id, ProductRequest productRequest) {
 				
 		UserResponse seller = getSellerInformation();
@@ -98,29 +269,37 @@ public class ProductService {
 		
 		User user = userRepository.findById(seller.getId()).orElseThrow(() -> new ResourceNotFoundException("Could not find user"));
 
-		Product updatedProduct = populateProductModel(productRequest, user);
-		
-		updatedProduct.setId(id);
+		product.setProductName(productRequest.getProductName());
+		product.setCost(productRequest.getCost());
+		product.setSeller(user);
+		updateStock(product, productRequest.getAmountAvailable());
 		
-		updatedProduct = productRepository.save(updatedProduct);
+		product = productRepository.save(product);
+		productMetadataCache.invalidate(id);
 		
-		return populateProductResponse(updatedProduct);
+		return populateProductResponse(product);
 	}
 	
 	/**
-	 * Update a given product available stock amount
+	 * Update a given product available stock amount, the cached metadata stays
+	 * valid as stock is never cached
 	 * 
 	 * @param id
 	 * @param productRequest
 	 * @return
 	 */
+	@Retryable(label = "updateProductAmount", value = OptimisticLockingFailureException.class, maxAttemptsExpression = Constants.RETRY_MAX_ATTEMPTS,
+			backoff = @Backoff(delayExpression = Constants.RETRY_DELAY_MS, maxDelayExpression = Constants.RETRY_MAX_DELAY_MS,
+			multiplierExpression = Constants.RETRY_MULTIPLIER, random = true))
+	@Transactional
+	@Timed("vending.product.update-amount")
 	public ProductResponse updateProductAmount(Long id, Integer amount) {
 						
 		Product product = productRepository.findById(id).orElseThrow(() -> new ResourceNotFoundException("Couldn't find product with id: " + id));
 		
 		validateAmount(amount);
 
-		product.setAmountAvailable(amount);
+		updateStock(product, amount);
 
 		product = productRepository.save(product);
 		
@@ -133,6 +312,8 @@ public class ProductService {
 	 * @param id
 	 * @return
 	 */
+	@Transactional
+	@Timed("vending.product.delete")
 	public GenericResponse deleteProduct(Long id) {
 		UserResponse seller = getSellerInformation();
 
@@ -142,7 +323,15 @@ public class ProductService {
 			throw new ForbiddenException("Couldn't delete another seller product");
 		}
 		
+		// Held units go with the product, expiring holds find nothing to put back
+		machineSlotRepository.deleteByProductId(id);
+		stockHoldRepository.deleteByProductId(id);
 		productRepository.delete(product);
+		productMetadataCache.invalidate(id);
+		
+		if(inventoryLedger.isTracked(id)) {
+			inventoryLedger.forget(id);
+		}
 				
 		return new GenericResponse(true, "Product was deleted successfully");
 	}
@@ -152,7 +341,8 @@ public class ProductService {
 	 * 
 	 * @param cost
 	 */
-	private void validateCost(Integer cost) {
+	// Package-private for the bulk import
+	static void validateCost(Integer cost) {
 		if(cost == null) {
 			throw new BadRequestException("Cost cannot be null", null);
 		}
@@ -167,7 +357,8 @@ public class ProductService {
 	 * 
 	 * @param cost
 	 */
-	private void validateAmount(Integer amount) {
+	// Package-private for the bulk import and the machine slots
+	static void validateAmount(Integer amount) {
 		if(amount == null) {
 			throw new BadRequestException("Amount available cannot be null", null);
 		}
@@ -178,44 +369,50 @@ public class ProductService {
 	}
 	
 	/**
-	 * Get the authenticated seller information from spring context 
+	 * Set the product stock, hot products go through the inventory ledger so
+	 * restocks never race with purchases
 	 * 
-	 * @return
+	 * @param product
+	 * @param amount
 	 */
-	private UserResponse getSellerInformation() {
-		Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-
-		UserResponse userResponse = (UserResponse) authentication.getPrincipal();
-		
-		if (userResponse == null) {
-			throw new ForbiddenException("Operation not permitted! Couldn't find relevant user.");
+	private void updateStock(Product product, Integer amount) {
+		if(inventoryLedger.isTracked(product.getId())) {
+			// Write the pending product changes first, the ledger restock bumps the row version
+			productRepository.flush();
+			inventoryLedger.restock(product.getId(), amount);
+		} else {
+			product.setAmountAvailable(amount);
 		}
-		
-		// Checking if the user is a seller (2nd layer of security)
-		if (!userResponse.getUserRole().equals(UserRole.SELLER)) {
-			throw new ForbiddenException("Operation not permitted! You are not allowed to access data.");
-		}
-
-		return userResponse;
 	}
 	
 	/**
-	 * Prepare product response from product model
+	 * Get the authenticated seller information from spring context 
 	 * 
-	 * @param products
+	 * @return
 	 */
-	private List<ProductResponse> populateProductListResponse(List<Product> products) {
-		List<ProductResponse> productResponseList = new ArrayList<>();
+	// Package-private for the bulk import and the machines
+	static UserResponse getSellerInformation() {
+		int span = RequestTrace.begin("authorization");
+		try {
+			Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+
+			UserResponse userResponse = (UserResponse) authentication.getPrincipal();
 		
+			if (userResponse == null) {
+				throw new ForbiddenException("Operation not permitted! Couldn't find relevant user.");
+			}
 		
-		for (Product product : products) {
-			productResponseList.add(populateProductResponse(product));
+			// Checking if the user is a seller (2nd layer of security)
+			if (!userResponse.getUserRole().equals(UserRole.SELLER)) {
+				throw new ForbiddenException("Operation not permitted! You are not allowed to access data.");
+			}
+
+			return userResponse;
+		} finally {
+			RequestTrace.end(span);
 		}
-		
-		return productResponseList;
 	}
 	
-	
 	/**
 	 * Prepare product response from product model
 	 * 
@@ -229,10 +426,25 @@ public class ProductService {
 		response.setAmountAvailable(product.getAmountAvailable());
 		response.setCost(product.getCost());
 		response.setSellerUsername(product.getSeller().getUsername());
+		applyTrackedStock(response);
 		
 		return response;
 	}
 	
+	/**
+	 * Stock held by the inventory ledger is newer than the stored one
+	 * 
+	 * @param response
+	 */
+	private void applyTrackedStock(ProductResponse response) {
+		if (inventoryLedger.isTracked(response.getId())) {
+			Integer trackedAmount = inventoryLedger.available(response.getId());
+			if (trackedAmount != null) {
+				response.setAmountAvailable(trackedAmount);
+			}
+		}
+	}
+	
 	/**
 	 * Prepare product model from product request
 	 * 
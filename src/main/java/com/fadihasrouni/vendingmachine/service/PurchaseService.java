@@ -0,0 +1,290 @@
+package com.fadihasrouni.vendingmachine.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.fadihasrouni.vendingmachine.exception.BadRequestException;
+import com.fadihasrouni.vendingmachine.exception.ForbiddenException;
+import com.fadihasrouni.vendingmachine.exception.ResourceNotFoundException;
+import com.fadihasrouni.vendingmachine.model.StockHold;
+import com.fadihasrouni.vendingmachine.model.User;
+import com.fadihasrouni.vendingmachine.model.projection.BatchPurchaseBalance;
+import com.fadihasrouni.vendingmachine.model.projection.ProductStock;
+import com.fadihasrouni.vendingmachine.model.projection.PurchaseBalance;
+import com.fadihasrouni.vendingmachine.model.type.UserRole;
+import com.fadihasrouni.vendingmachine.repository.ProductRespository;
+import com.fadihasrouni.vendingmachine.repository.StockHoldRepository;
+import com.fadihasrouni.vendingmachine.repository.UserRepository;
+import com.fadihasrouni.vendingmachine.service.inventory.InventoryLedger;
+import com.fadihasrouni.vendingmachine.service.wallet.DepositWallet;
+
+@Service
+public class PurchaseService {
+
+	@Autowired
+	private ProductRespository productRepository;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private InventoryLedger inventoryLedger;
+
+	@Autowired
+	private DepositWallet depositWallet;
+
+	@Autowired
+	private StockHoldRepository stockHoldRepository;
+
+	/**
+	 * Take the product out of stock and the cost out of the buyer deposit in one
+	 * transaction. Both updates are guarded in the database, so concurrent buyers
+	 * can neither oversell the product nor overdraw the deposit.
+	 * 
+	 * @param userId
+	 * @param productId
+	 * @param amount
+	 * @param cost
+	 * @return deposit and stock after the purchase
+	 */
+	@Transactional
+	public PurchaseBalance purchase(Long userId, Long productId, Integer amount, Integer cost) {
+
+		Integer deposit = null;
+
+		// Balances held by the wallet are taken in memory and saved with its next group commit
+		if (depositWallet.isEnabled()) {
+			deposit = depositWallet.withdraw(userId, cost);
+			if (deposit < 0) {
+				throw new BadRequestException("You don't have enough balance in order to buy the product(s)", null);
+			}
+		}
+
+		Integer amountAvailable = null;
+
+		// Hot products are reserved in memory, the others straight on the product row
+		if (inventoryLedger.isTracked(productId)) {
+			int left = inventoryLedger.take(productId, amount);
+			if (left < 0) {
+				throw new BadRequestException("The amount of product requested in not available", null);
+			}
+			amountAvailable = left;
+		} else if (productRepository.decrementAmountAvailable(productId, amount) == 0) {
+			throw new BadRequestException("The amount of product requested in not available", null);
+		}
+
+		if (deposit == null && userRepository.withdrawDeposit(userId, cost, UserRole.BUYER) == 0) {
+			throw withdrawFailure(userId);
+		}
+
+		// The updated rows are locked by this transaction until commit, so this is the state we wrote
+		if (deposit == null && amountAvailable == null) {
+			return userRepository.findPurchaseBalance(userId, productId);
+		}
+		if (deposit == null) {
+			deposit = userRepository.findDepositById(userId);
+		}
+		if (amountAvailable == null) {
+			amountAvailable = productRepository.findAmountAvailableById(productId).orElse(0);
+		}
+		return new PurchaseBalance(deposit, amountAvailable);
+	}
+
+	/**
+	 * Take several products out of stock and their total cost out of the buyer
+	 * deposit in one transaction. The product rows are updated in id order, in a
+	 * single batch, then the user row, the same order as a single purchase, so
+	 * concurrent purchases cannot deadlock.
+	 *
+	 * @param userId
+	 * @param amounts amount to buy by product id
+	 * @param cost    total cost of the products
+	 * @return deposit and stock of every product after the purchase
+	 */
+	@Transactional
+	public BatchPurchaseBalance purchaseBatch(Long userId, SortedMap<Long, Integer> amounts, Integer cost) {
+
+		Integer deposit = null;
+
+		if (depositWallet.isEnabled()) {
+			deposit = depositWallet.withdraw(userId, cost);
+			if (deposit < 0) {
+				throw new BadRequestException("You don't have enough balance in order to buy the product(s)", null);
+			}
+		}
+
+		Map<Long, Integer> amountsAvailable = new TreeMap<>();
+		SortedMap<Long, Integer> untracked = new TreeMap<>();
+
+		for (Map.Entry<Long, Integer> amount : amounts.entrySet()) {
+			Long productId = amount.getKey();
+			if (!inventoryLedger.isTracked(productId)) {
+				untracked.put(productId, amount.getValue());
+				continue;
+			}
+
+			int left = inventoryLedger.take(productId, amount.getValue());
+			if (left < 0) {
+				throw notAvailable(productId);
+			}
+			amountsAvailable.put(productId, left);
+		}
+
+		if (!untracked.isEmpty()) {
+			int[] updated = productRepository.decrementAmountsAvailable(untracked);
+
+			int i = 0;
+			for (Long productId : untracked.keySet()) {
+				if (updated[i++] == 0) {
+					throw notAvailable(productId);
+				}
+			}
+		}
+
+		if (deposit == null && userRepository.withdrawDeposit(userId, cost, UserRole.BUYER) == 0) {
+			throw withdrawFailure(userId);
+		}
+
+		if (deposit == null) {
+			deposit = userRepository.findDepositById(userId);
+		}
+		if (!untracked.isEmpty()) {
+			for (ProductStock stock : productRepository.findStockByIdIn(untracked.keySet())) {
+				amountsAvailable.put(stock.getId(), stock.getAmountAvailable());
+			}
+		}
+		return new BatchPurchaseBalance(deposit, amountsAvailable);
+	}
+
+	/**
+	 * Take the held amount out of stock and store the hold in one transaction,
+	 * the deposit is only charged when the hold is confirmed
+	 *
+	 * @param userId
+	 * @param productId
+	 * @param amount
+	 * @param expiresAt epoch millis
+	 * @return the stored hold
+	 */
+	@Transactional
+	public StockHold reserve(Long userId, Long productId, Integer amount, long expiresAt) {
+
+		if (inventoryLedger.isTracked(productId)) {
+			if (inventoryLedger.take(productId, amount) < 0) {
+				throw new BadRequestException("The amount of product requested in not available", null);
+			}
+		} else if (productRepository.decrementAmountAvailable(productId, amount) == 0) {
+			throw new BadRequestException("The amount of product requested in not available", null);
+		}
+
+		return stockHoldRepository.save(new StockHold(null, productId, userId, amount, expiresAt));
+	}
+
+	/**
+	 * Take the cost of a hold out of the buyer deposit and drop the hold in one
+	 * transaction, its stock was taken when it was reserved
+	 *
+	 * @param hold
+	 * @param cost
+	 * @return deposit and stock after the purchase
+	 */
+	@Transactional
+	public PurchaseBalance confirmHold(StockHold hold, Integer cost) {
+
+		Long userId = hold.getUserId();
+		Integer deposit = null;
+
+		if (depositWallet.isEnabled()) {
+			deposit = depositWallet.withdraw(userId, cost);
+			if (deposit < 0) {
+				throw new BadRequestException("You don't have enough balance in order to buy the product(s)", null);
+			}
+		}
+
+		if (deposit == null && userRepository.withdrawDeposit(userId, cost, UserRole.BUYER) == 0) {
+			throw withdrawFailure(userId);
+		}
+
+		if (stockHoldRepository.deleteHold(hold.getId()) == 0) {
+			throw new ResourceNotFoundException("No active hold exists with id: " + hold.getId());
+		}
+
+		if (deposit == null) {
+			deposit = userRepository.findDepositById(userId);
+		}
+		Integer amountAvailable = inventoryLedger.isTracked(hold.getProductId()) ? inventoryLedger.available(hold.getProductId()) : null;
+		if (amountAvailable == null) {
+			amountAvailable = productRepository.findAmountAvailableById(hold.getProductId()).orElse(0);
+		}
+		return new PurchaseBalance(deposit, amountAvailable);
+	}
+
+	/**
+	 * Put the stock of expired or cancelled holds back and drop them in one
+	 * transaction. The products are updated in id order, like a batch purchase.
+	 * Only the holds still stored are put back, so a hold confirmed or released
+	 * meanwhile never returns its units twice. Holds on deleted products are
+	 * just dropped.
+	 *
+	 * @param holds
+	 */
+	@Transactional
+	public void releaseHolds(List<StockHold> holds) {
+		List<StockHold> sorted = new ArrayList<>(holds);
+		sorted.sort(Comparator.comparing(StockHold::getProductId));
+
+		Set<Long> productIds = new HashSet<>();
+		for (StockHold hold : sorted) {
+			productIds.add(hold.getProductId());
+		}
+		Set<Long> existingIds = new HashSet<>();
+		for (ProductStock stock : productRepository.findStockByIdIn(productIds)) {
+			existingIds.add(stock.getId());
+		}
+
+		for (StockHold hold : sorted) {
+			if (stockHoldRepository.deleteHold(hold.getId()) == 0 || !existingIds.contains(hold.getProductId())) {
+				continue;
+			}
+			if (inventoryLedger.isTracked(hold.getProductId())) {
+				inventoryLedger.restockBy(hold.getProductId(), hold.getAmount());
+			} else {
+				productRepository.addAmountAvailable(hold.getProductId(), hold.getAmount());
+			}
+		}
+	}
+
+	private BadRequestException notAvailable(Long productId) {
+		return new BadRequestException("The amount of product " + productId + " requested in not available", null);
+	}
+
+	/**
+	 * Find out why the deposit could not be withdrawn, only runs on the failure path
+	 * 
+	 * @param userId
+	 * @return
+	 */
+	private RuntimeException withdrawFailure(Long userId) {
+		User user = userRepository.findById(userId).orElse(null);
+
+		if (user == null) {
+			return new ResourceNotFoundException("No user exists with id: " + userId);
+		}
+
+		if (!UserRole.BUYER.equals(user.getUserRole())) {
+			return new ForbiddenException("Operation not permitted! Only buyers can perform operation");
+		}
+
+		return new BadRequestException("You don't have enough balance in order to buy the product(s)", null);
+	}
+}
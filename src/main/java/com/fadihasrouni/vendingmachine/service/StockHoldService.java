@@ -0,0 +1,294 @@
+package com.fadihasrouni.vendingmachine.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.fadihasrouni.vendingmachine.controller.request.HoldRequest;
+import com.fadihasrouni.vendingmachine.controller.response.BuyResponse;
+import com.fadihasrouni.vendingmachine.controller.response.GenericResponse;
+import com.fadihasrouni.vendingmachine.controller.response.HoldResponse;
+import com.fadihasrouni.vendingmachine.exception.BadRequestException;
+import com.fadihasrouni.vendingmachine.exception.ResourceNotFoundException;
+import com.fadihasrouni.vendingmachine.model.StockHold;
+import com.fadihasrouni.vendingmachine.model.projection.ProductMetadata;
+import com.fadihasrouni.vendingmachine.model.projection.PurchaseBalance;
+import com.fadihasrouni.vendingmachine.repository.StockHoldRepository;
+import com.fadihasrouni.vendingmachine.service.change.CoinFloat;
+import com.fadihasrouni.vendingmachine.service.hold.TimingWheel;
+
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Holds on product stock while the buyer is still inserting coins. The held
+ * units are taken out of the product stock when the hold is reserved, so
+ * every stock read already leaves them out and no other buyer can take them.
+ * A confirmed hold charges the deposit, an expired or cancelled one puts the
+ * stock back.
+ *
+ * Expiry runs on a timing wheel advanced every tick, a hold costs one slot
+ * entry and no scheduled task or database query until it expires. Confirm,
+ * cancel and expiry race on the hold state, only one of them wins.
+ */
+@Service
+public class StockHoldService implements MeterBinder {
+
+	private static final int ACTIVE = 0;
+	private static final int SETTLING = 1;
+	private static final int SETTLED = 2;
+
+	private Logger log = LogManager.getLogger(StockHoldService.class);
+
+	@Autowired
+	private PurchaseService purchaseService;
+
+	@Autowired
+	private ProductService productService;
+
+	@Autowired
+	private StockHoldRepository stockHoldRepository;
+
+	@Autowired
+	private CoinFloat coinFloat;
+
+	@Value("${vending.hold.tick-ms:100}")
+	private long tickMs;
+
+	@Value("${vending.hold.default-ttl-seconds:60}")
+	private int defaultTtlSeconds;
+
+	@Value("${vending.hold.max-ttl-seconds:600}")
+	private int maxTtlSeconds;
+
+	@Value("${vending.hold.release-batch-size:500}")
+	private int releaseBatchSize;
+
+	private final Map<Long, Hold> holds = new ConcurrentHashMap<>();
+
+	private TimingWheel<Hold> timingWheel;
+
+	@PostConstruct
+	void start() {
+		timingWheel = new TimingWheel<>(tickMs, System.currentTimeMillis());
+
+		// Holds stored before a restart expire as planned, the overdue ones on the first tick
+		for (StockHold stored : stockHoldRepository.findAll()) {
+			schedule(new Hold(stored));
+		}
+	}
+
+	/**
+	 * Hold an amount of a product for the buyer
+	 *
+	 * @param userId
+	 * @param request
+	 * @return
+	 */
+	@Timed("vending.hold.reserve")
+	public HoldResponse reserve(Long userId, HoldRequest request) {
+
+		UserService.validateRequester(userId, true);
+
+		if (request.getAmount() == null || request.getAmount() <= 0) {
+			throw new BadRequestException("The amount of product requested should be larger than 0", null);
+		}
+
+		int ttlSeconds = request.getTtlSeconds() == null ? defaultTtlSeconds : request.getTtlSeconds();
+
+		if (ttlSeconds <= 0 || ttlSeconds > maxTtlSeconds) {
+			throw new BadRequestException("The hold time should be between 1 and " + maxTtlSeconds + " seconds", null);
+		}
+
+		ProductMetadata product = productService.findProductMetadata(request.getProductId());
+
+		long expiresAt = System.currentTimeMillis() + ttlSeconds * 1000L;
+		StockHold stored = purchaseService.reserve(userId, product.getId(), request.getAmount(), expiresAt);
+
+		schedule(new Hold(stored));
+
+		return new HoldResponse(stored.getId(), stored.getProductId(), stored.getAmount(), stored.getExpiresAt());
+	}
+
+	/**
+	 * Buy the held amount with the buyer deposit
+	 *
+	 * @param userId
+	 * @param holdId
+	 * @return
+	 */
+	@Timed("vending.hold.confirm")
+	public BuyResponse confirm(Long userId, Long holdId) {
+
+		UserService.validateRequester(userId, true);
+
+		Hold hold = settle(userId, holdId);
+
+		ProductMetadata product;
+		long productCost;
+		PurchaseBalance balance;
+		try {
+			product = productService.findProductMetadata(hold.stored.getProductId());
+
+			productCost = (long) product.getCost() * hold.stored.getAmount();
+
+			if (productCost > Integer.MAX_VALUE) {
+				throw new BadRequestException("You don't have enough balance in order to buy the product(s)", null);
+			}
+
+			balance = purchaseService.confirmHold(hold.stored, (int) productCost);
+		} catch (RuntimeException ex) {
+			unsettle(hold);
+			throw ex;
+		}
+
+		// The purchase is committed, the hold never becomes active again
+		settled(hold);
+
+		BuyResponse result = new BuyResponse();
+
+		result.setMoneySpent((int) productCost);
+		result.setProductBought(product.toResponse(balance.getAmountAvailable()));
+		result.setChange(coinFloat.previewChange(balance.getDeposit()));
+
+		return result;
+	}
+
+	/**
+	 * Put the held amount back in stock before the hold expires
+	 *
+	 * @param userId
+	 * @param holdId
+	 * @return
+	 */
+	@Timed("vending.hold.cancel")
+	public GenericResponse cancel(Long userId, Long holdId) {
+
+		UserService.validateRequester(userId, true);
+
+		Hold hold = settle(userId, holdId);
+
+		try {
+			purchaseService.releaseHolds(List.of(hold.stored));
+			settled(hold);
+		} catch (RuntimeException ex) {
+			unsettle(hold);
+			throw ex;
+		}
+
+		return new GenericResponse(true, "The hold was cancelled.");
+	}
+
+	/**
+	 * Put the stock of the holds expired since the last tick back, in batches
+	 */
+	@Scheduled(fixedDelayString = "${vending.hold.tick-ms:100}")
+	public void expire() {
+		List<Hold> expired = new ArrayList<>();
+
+		synchronized (timingWheel) {
+			timingWheel.advance(System.currentTimeMillis(), hold -> {
+				// Confirmed and cancelled holds are skipped, a hold being confirmed is scheduled again if that fails
+				if (hold.state.compareAndSet(ACTIVE, SETTLING)) {
+					expired.add(hold);
+				}
+			});
+		}
+
+		for (int from = 0; from < expired.size(); from += releaseBatchSize) {
+			List<Hold> batch = expired.subList(from, Math.min(from + releaseBatchSize, expired.size()));
+			List<StockHold> stored = new ArrayList<>(batch.size());
+			for (Hold hold : batch) {
+				stored.add(hold.stored);
+			}
+
+			try {
+				purchaseService.releaseHolds(stored);
+				for (Hold hold : batch) {
+					settled(hold);
+				}
+			} catch (RuntimeException ex) {
+				log.warn("Could not release {} expired holds, retrying on the next tick", batch.size(), ex);
+				for (Hold hold : batch) {
+					unsettle(hold);
+				}
+			}
+		}
+
+		if (!expired.isEmpty()) {
+			log.debug("Released {} expired holds", expired.size());
+		}
+	}
+
+	/**
+	 * Publish the number of active holds
+	 */
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		Gauge.builder("vending.hold.active", holds, Map::size)
+				.description("Stock holds not confirmed, cancelled or expired yet")
+				.register(registry);
+	}
+
+	private void schedule(Hold hold) {
+		holds.put(hold.stored.getId(), hold);
+		synchronized (timingWheel) {
+			timingWheel.add(hold, hold.stored.getExpiresAt());
+		}
+	}
+
+	/**
+	 * Take an active hold of the buyer away from expiry
+	 */
+	private Hold settle(Long userId, Long holdId) {
+		Hold hold = holds.get(holdId);
+
+		if (hold == null || !hold.stored.getUserId().equals(userId) || !hold.state.compareAndSet(ACTIVE, SETTLING)) {
+			throw new ResourceNotFoundException("No active hold exists with id: " + holdId);
+		}
+
+		return hold;
+	}
+
+	private void settled(Hold hold) {
+		hold.state.set(SETTLED);
+		holds.remove(hold.stored.getId());
+	}
+
+	/**
+	 * Make the hold active again, it expires on the next tick if its time has
+	 * passed meanwhile
+	 */
+	private void unsettle(Hold hold) {
+		hold.state.set(ACTIVE);
+		if (hold.stored.getExpiresAt() <= System.currentTimeMillis()) {
+			synchronized (timingWheel) {
+				timingWheel.add(hold, hold.stored.getExpiresAt());
+			}
+		}
+	}
+
+	private static final class Hold {
+
+		private final StockHold stored;
+
+		private final AtomicInteger state = new AtomicInteger(ACTIVE);
+
+		private Hold(StockHold stored) {
+			this.stored = stored;
+		}
+	}
+}
@@ -5,16 +5,24 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.retry.annotation.Backoff;
+import org.springframework.retry.annotation.Retryable;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import com.fadihasrouni.vendingmachine.config.trace.RequestTrace;
+import com.fadihasrouni.vendingmachine.controller.request.BuyBatchRequest;
 import com.fadihasrouni.vendingmachine.controller.request.BuyRequest;
 import com.fadihasrouni.vendingmachine.controller.request.UserPasswordRequest;
 import com.fadihasrouni.vendingmachine.controller.request.UserRequest;
+import com.fadihasrouni.vendingmachine.controller.response.BuyBatchResponse;
 import com.fadihasrouni.vendingmachine.controller.response.BuyResponse;
 import com.fadihasrouni.vendingmachine.controller.response.GenericResponse;
 import com.fadihasrouni.vendingmachine.controller.response.ProductResponse;
@@ -24,8 +32,19 @@ import com.fadihasrouni.vendingmachine.exception.ForbiddenException;
 import com.fadihasrouni.vendingmachine.exception.ResourceNotFoundException;
 import com.fadihasrouni.vendingmachine.exception.UniqueConstraintException;
 import com.fadihasrouni.vendingmachine.model.User;
+import com.fadihasrouni.vendingmachine.model.projection.BatchPurchaseBalance;
+import com.fadihasrouni.vendingmachine.model.projection.ProductMetadata;
+import com.fadihasrouni.vendingmachine.model.projection.PurchaseBalance;
 import com.fadihasrouni.vendingmachine.model.type.UserRole;
+import com.fadihasrouni.vendingmachine.repository.MachineSessionRepository;
 import com.fadihasrouni.vendingmachine.repository.UserRepository;
+import com.fadihasrouni.vendingmachine.service.cache.UserPrincipalCache;
+import com.fadihasrouni.vendingmachine.service.change.CoinFloat;
+import com.fadihasrouni.vendingmachine.service.password.PasswordHasher;
+import com.fadihasrouni.vendingmachine.service.wallet.DepositWallet;
+import com.fadihasrouni.vendingmachine.utils.Constants;
+
+import io.micrometer.core.annotation.Timed;
 
 @Service
 public class UserService {
@@ -35,11 +54,24 @@ public class UserService {
 	
 	@Autowired
 	private ProductService productService;
+	
+	@Autowired
+	private PurchaseService purchaseService;
+
+	@Autowired
+	private PasswordHasher passwordHasher;
+
+	@Autowired
+	private UserPrincipalCache userPrincipalCache;
 
 	@Autowired
-	private BCryptPasswordEncoder bCryptPasswordEncoder;
+	private DepositWallet depositWallet;
+	
+	@Autowired
+	private CoinFloat coinFloat;
 	
-	private Integer[] availableCoins = { 100, 50, 20, 10, 5 };
+	@Autowired
+	private MachineSessionRepository machineSessionRepository;
 
 	/**
 	 * Process and save user information
@@ -47,6 +79,7 @@ public class UserService {
 	 * @param userRequest
 	 * @return
 	 */
+	@Timed("vending.user.register")
 	public UserResponse register(UserRequest userRequest) {
 		// Make sure that password and confirmPassword match
 		checkPasswordsMatch(userRequest.getPassword(), userRequest.getConfirmPassword());
@@ -102,6 +135,10 @@ public class UserService {
 	 * @param id
 	 * @return
 	 */
+	@Retryable(label = "updateUserPassword", value = OptimisticLockingFailureException.class, maxAttemptsExpression = Constants.RETRY_MAX_ATTEMPTS,
+			backoff = @Backoff(delayExpression = Constants.RETRY_DELAY_MS, maxDelayExpression = Constants.RETRY_MAX_DELAY_MS,
+			multiplierExpression = Constants.RETRY_MULTIPLIER, random = true))
+	@Timed("vending.user.update-password")
 	public UserResponse updateUserPassword(UserPasswordRequest userPasswordRequest) {
 		
 		// Validate if the user is allowed
@@ -110,10 +147,12 @@ public class UserService {
 		// Make sure that password and confirmPassword match
 		checkPasswordsMatch(userPasswordRequest.getPassword(), userPasswordRequest.getConfirmPassword());
 
-		existingUser.setPassword(bCryptPasswordEncoder.encode(userPasswordRequest.getPassword()));
+		existingUser.setPassword(passwordHasher.encode(userPasswordRequest.getPassword()));
 		
 		userRepository.save(existingUser);
 		
+		userPrincipalCache.invalidate(existingUser.getId());
+		
 		return populateUserResponse(existingUser);
 
 	}
@@ -124,35 +163,60 @@ public class UserService {
 	 * @param id
 	 * @return
 	 */
+	@Transactional
+	@Timed("vending.user.delete")
 	public GenericResponse deleteUser(Long id) {
 		
 		validateAndReturnUser(id, false);
 		
+		machineSessionRepository.deleteByUserId(id);
 		userRepository.deleteById(id);
 		
+		userPrincipalCache.invalidate(id);
+		depositWallet.evict(id);
+		
 		return  new GenericResponse(true, "User deleted successfully");
 	}
 	
 	/**
-	 * Deposit coin in the use deposit balance
+	 * Deposit coin in the use deposit balance, the coin is stored in the same
+	 * transaction as the deposit unless the wallet commits it
 	 * 
 	 * @param id
 	 * @param coin
 	 * @return
 	 */
+	@Retryable(label = "deposit", value = OptimisticLockingFailureException.class, maxAttemptsExpression = Constants.RETRY_MAX_ATTEMPTS,
+			backoff = @Backoff(delayExpression = Constants.RETRY_DELAY_MS, maxDelayExpression = Constants.RETRY_MAX_DELAY_MS,
+			multiplierExpression = Constants.RETRY_MULTIPLIER, random = true))
+	@Transactional
+	@Timed("vending.user.deposit")
 	public GenericResponse deposit(Long id, Integer coin) {
 
-		// Validate if the user is allowed
-		User user = validateAndReturnUser(id, true);
+		User user = null;
+		
+		if(depositWallet.isEnabled()) {
+			// Validate if the user is allowed, the wallet checks the stored user
+			validateRequester(id, true);
+		} else {
+			user = validateAndReturnUser(id, true);
+		}
 		
 		// Validate if the coin is supported
-		if(!Arrays.stream(availableCoins).anyMatch(coin::equals)) {
-			throw new BadRequestException("The coins must be in: " + availableCoins, null);
+		if(!CoinFloat.isAccepted(coin)) {
+			throw new BadRequestException("The coins must be in: " + Arrays.toString(CoinFloat.COINS), null);
 		}
 		
-		user.setDeposit(user.getDeposit() + coin);
+		if(user == null) {
+			depositWallet.deposit(id, coin);
+		} else {
+			user.setDeposit(user.getDeposit() + coin);
+			
+			userRepository.save(user);
+		}
 		
-		userRepository.save(user);
+		// Last, the machine coins are shared by every deposit and stay locked until commit
+		coinFloat.deposit(coin);
 
 		return new GenericResponse(true, coin + " cent coin deposited successfully");
 	}
@@ -164,82 +228,164 @@ public class UserService {
 	 * @param productId
 	 * @return
 	 */
+	@Retryable(label = "buy", value = OptimisticLockingFailureException.class, maxAttemptsExpression = Constants.RETRY_MAX_ATTEMPTS,
+			backoff = @Backoff(delayExpression = Constants.RETRY_DELAY_MS, maxDelayExpression = Constants.RETRY_MAX_DELAY_MS,
+			multiplierExpression = Constants.RETRY_MULTIPLIER, random = true))
+	@Timed("vending.user.buy")
 	public BuyResponse buy(Long userId, BuyRequest request) {
 		
-		// Validate if the user is allowed
-		User user = validateAndReturnUser(userId, true);
+		// Validate if the user is allowed, the stored user is re-checked by the purchase itself
+		validateRequester(userId, true);
 		
-		// Get the product by id
-		ProductResponse product = productService.findProductById(request.getProductId());
+		if(request.getAmount() == null || request.getAmount() <= 0) {
+			throw new BadRequestException("The amount of product requested should be larger than 0", null);
+		}
 		
-		Integer productCost = product.getCost() * request.getAmount();
+		// Get the product name and cost, the stock comes back from the purchase
+		ProductMetadata product = productService.findProductMetadata(request.getProductId());
 		
-		if(product.getAmountAvailable() < request.getAmount()) {
-			throw new BadRequestException("The amount of product requested in not available", null);
-		}
+		long productCost = (long) product.getCost() * request.getAmount();
 		
-		if(user.getDeposit() < productCost) {
+		if(productCost > Integer.MAX_VALUE) {
 			throw new BadRequestException("You don't have enough balance in order to buy the product(s)", null);
 		}
 		
-		Integer depositAfterBuying = user.getDeposit() - productCost;
-				
-		user.setDeposit(depositAfterBuying);
-		
-		// Save the new deposited amount
-		userRepository.save(user);
+		// Update stock and deposit atomically
+		PurchaseBalance balance = purchaseService.purchase(userId, product.getId(), request.getAmount(), (int) productCost);
 		
-		// Update product amount available
-		product.setAmountAvailable(product.getAmountAvailable() - request.getAmount());
-		productService.updateProductAmount(request.getProductId(),  product.getAmountAvailable());
-
 		BuyResponse result = new BuyResponse();
 		
-		result.setMoneySpent(productCost);
-		result.setProductBought(product);	
-		result.setChange(getChange(depositAfterBuying));
+		result.setMoneySpent((int) productCost);
+		result.setProductBought(product.toResponse(balance.getAmountAvailable()));	
+		result.setChange(coinFloat.previewChange(balance.getDeposit()));
 		
 		return result;
 	}
 	
-	
 	/**
-	 * Reset the user deposit to 0
+	 * Buy several products at once, the stock of all of them and the deposit are
+	 * updated in one transaction
 	 * 
 	 * @param userId
+	 * @param request
 	 * @return
 	 */
-	public GenericResponse resetDeposit(Long userId) {
-		// Validate if the user is allowed
-		User user = validateAndReturnUser(userId, true);
+	@Retryable(label = "buyBatch", value = OptimisticLockingFailureException.class, maxAttemptsExpression = Constants.RETRY_MAX_ATTEMPTS,
+			backoff = @Backoff(delayExpression = Constants.RETRY_DELAY_MS, maxDelayExpression = Constants.RETRY_MAX_DELAY_MS,
+			multiplierExpression = Constants.RETRY_MULTIPLIER, random = true))
+	@Timed("vending.user.buy-batch")
+	public BuyBatchResponse buyBatch(Long userId, BuyBatchRequest request) {
 		
-		user.setDeposit(0);
+		// Validate if the user is allowed, the stored user is re-checked by the purchase itself
+		validateRequester(userId, true);
 		
-		userRepository.save(user);
+		List<BuyRequest> items = request.getItems();
 		
-		return new GenericResponse(true, "The deposit is now reset to 0.");
+		if(items == null || items.isEmpty()) {
+			throw new BadRequestException("At least one product should be requested", null);
+		}
+		
+		if(items.size() > Constants.BUY_BATCH_MAX_ITEMS) {
+			throw new BadRequestException("At most " + Constants.BUY_BATCH_MAX_ITEMS + " products can be requested at once", null);
+		}
+		
+		// Lines for the same product are merged, the products are then bought in id order
+		SortedMap<Long, Integer> amounts = new TreeMap<>();
+		for(BuyRequest item : items) {
+			if(item.getProductId() == null) {
+				throw new BadRequestException("The product id should be provided", null);
+			}
+			if(item.getAmount() == null || item.getAmount() <= 0) {
+				throw new BadRequestException("The amount of product requested should be larger than 0", null);
+			}
+			amounts.merge(item.getProductId(), item.getAmount(), (a, b) -> (int) Math.min((long) a + b, Integer.MAX_VALUE));
+		}
+		
+		List<ProductMetadata> products = new ArrayList<>(amounts.size());
+		long totalCost = 0;
+		for(Map.Entry<Long, Integer> amount : amounts.entrySet()) {
+			ProductMetadata product = productService.findProductMetadata(amount.getKey());
+			products.add(product);
+			totalCost += (long) product.getCost() * amount.getValue();
+		}
+		
+		if(totalCost > Integer.MAX_VALUE) {
+			throw new BadRequestException("You don't have enough balance in order to buy the product(s)", null);
+		}
+		
+		// Update the stock of every product and the deposit atomically
+		BatchPurchaseBalance balance = purchaseService.purchaseBatch(userId, amounts, (int) totalCost);
+		
+		List<ProductResponse> productsBought = new ArrayList<>(products.size());
+		for(ProductMetadata product : products) {
+			productsBought.add(product.toResponse(balance.getAmountsAvailable().get(product.getId())));
+		}
+		
+		BuyBatchResponse result = new BuyBatchResponse();
+		
+		result.setMoneySpent((int) totalCost);
+		result.setProductsBought(productsBought);
+		result.setChange(coinFloat.previewChange(balance.getDeposit()));
+		
+		return result;
 	}
 	
+	
 	/**
-	 * Returns the coins that are left in the user balance
+	 * Reset the user deposit to 0
 	 * 
-	 * @param depositAfterBuying
+	 * @param userId
 	 * @return
 	 */
-	private List<Integer> getChange(Integer depositAfterBuying){
-		List<Integer> change = new ArrayList<>();
-
-		for(int i = 0; i < availableCoins.length; i ++) {
-			if (depositAfterBuying - availableCoins[i] >= 0) {
-				depositAfterBuying = depositAfterBuying - availableCoins[i];
-				change.add(availableCoins[i]);
+	@Retryable(label = "resetDeposit", value = OptimisticLockingFailureException.class, maxAttemptsExpression = Constants.RETRY_MAX_ATTEMPTS,
+			backoff = @Backoff(delayExpression = Constants.RETRY_DELAY_MS, maxDelayExpression = Constants.RETRY_MAX_DELAY_MS,
+			multiplierExpression = Constants.RETRY_MULTIPLIER, random = true))
+	@Transactional
+	@Timed("vending.user.reset-deposit")
+	public GenericResponse resetDeposit(Long userId) {
+		int kept;
+		
+		if(depositWallet.isEnabled()) {
+			// Validate if the user is allowed, the wallet checks the stored user
+			validateRequester(userId, true);
+			int balance = depositWallet.reset(userId);
+			
+			try {
+				kept = balance - sum(coinFloat.payout(balance));
+			} catch (RuntimeException ex) {
+				// The reset is already committed, the coins were not given back
+				depositWallet.deposit(userId, balance);
+				throw ex;
+			}
+			if(kept > 0) {
+				depositWallet.deposit(userId, kept);
 			}
+		} else {
+			// Validate if the user is allowed
+			User user = validateAndReturnUser(userId, true);
 			
-			if(depositAfterBuying == 0)
-				break;
-
+			List<Integer> coins = coinFloat.payout(user.getDeposit());
+			kept = user.getDeposit() - sum(coins);
+			
+			user.setDeposit(kept);
+			
+			// The coins go back to the float if this fails
+			userRepository.save(user);
+		}
+		
+		if(kept > 0) {
+			return new GenericResponse(true, "The machine is short of coins, " + kept + " cents stay in the deposit.");
+		}
+		return new GenericResponse(true, "The deposit is now reset to 0.");
+	}
+	
+	// Package-private for the machine sessions
+	static int sum(List<Integer> coins) {
+		int amount = 0;
+		for(Integer coin : coins) {
+			amount += coin;
 		}
-		return change;
+		return amount;
 	}
 	
 	/**
@@ -261,32 +407,54 @@ public class UserService {
 	 * @param id
 	 */
 	private User validateAndReturnUser(Long id, boolean onlyBuyer) {
-		Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-
-		UserResponse userResponse = (UserResponse) authentication.getPrincipal();
-		
-		if (userResponse == null) {
-			throw new ForbiddenException("Operation not permitted! Couldn't find relevant user.");
-		}
+		validateRequester(id, onlyBuyer);
 		
 		User user = userRepository.findById(id)
 				.orElseThrow(() -> new ResourceNotFoundException("No user exists with id: " + id));
 		
-		if(onlyBuyer && !userResponse.getUserRole().equals(UserRole.BUYER)) {
+		// The role in the token may be stale, buyer operations re-check it on the stored record
+		if(onlyBuyer && !UserRole.BUYER.equals(user.getUserRole())) {
 			throw new ForbiddenException("Operation not permitted! Only buyers can perform operation");
 		}
+		
+		return user;
+	}
+	
+	/**
+	 * Validate if the authenticated user is allowed to perform operations on the
+	 * given user id, only the token principal is checked
+	 * 
+	 * @param id
+	 * @param onlyBuyer
+	 */
+	// Package-private for the machine sessions
+	static void validateRequester(Long id, boolean onlyBuyer) {
+		int span = RequestTrace.begin("authorization");
+		try {
+			Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
 
-		// Sellers are permitted to access/update all users information
-		if (userResponse.getUserRole().equals(UserRole.SELLER)) {
-			return user;
-		}
+			UserResponse userResponse = (UserResponse) authentication.getPrincipal();
+		
+			if (userResponse == null) {
+				throw new ForbiddenException("Operation not permitted! Couldn't find relevant user.");
+			}
+		
+			if(onlyBuyer && !userResponse.getUserRole().equals(UserRole.BUYER)) {
+				throw new ForbiddenException("Operation not permitted! Only buyers can perform operation");
+			}
 
-		// User is not permitted to see other users information
-		if (!userResponse.getId().equals(id)) {
-			throw new ForbiddenException("Operation not permitted! You are not allowed to perform operations on other user data.");
+			// Sellers are permitted to access/update all users information
+			if (userResponse.getUserRole().equals(UserRole.SELLER)) {
+				return;
+			}
+
+			// User is not permitted to see other users information
+			if (!userResponse.getId().equals(id)) {
+				throw new ForbiddenException("Operation not permitted! You are not allowed to perform operations on other user data.");
+			}
+		} finally {
+			RequestTrace.end(span);
 		}
-		
-		return user;
 	}
 	
 	
@@ -348,7 +516,7 @@ public class UserService {
 	private User populateUserModel(UserRequest userRequest) {
 		User user = new User();
 		user.setUsername(userRequest.getUsername());
-		user.setPassword(bCryptPasswordEncoder.encode(userRequest.getPassword()));
+		user.setPassword(passwordHasher.encode(userRequest.getPassword()));
 		user.setDeposit(0);
 		user.setUserRole(UserRole.valueOf(userRequest.getUserRole().toUpperCase()));
 
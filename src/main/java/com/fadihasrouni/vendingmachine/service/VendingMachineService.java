@@ -0,0 +1,327 @@
+package com.fadihasrouni.vendingmachine.service;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.retry.annotation.Backoff;
+import org.springframework.retry.annotation.Retryable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.fadihasrouni.vendingmachine.controller.request.BuyRequest;
+import com.fadihasrouni.vendingmachine.controller.request.MachineSlotRequest;
+import com.fadihasrouni.vendingmachine.controller.request.VendingMachineRequest;
+import com.fadihasrouni.vendingmachine.controller.response.BuyResponse;
+import com.fadihasrouni.vendingmachine.controller.response.GenericResponse;
+import com.fadihasrouni.vendingmachine.controller.response.ProductPageResponse;
+import com.fadihasrouni.vendingmachine.controller.response.ProductResponse;
+import com.fadihasrouni.vendingmachine.controller.response.UserResponse;
+import com.fadihasrouni.vendingmachine.controller.response.VendingMachineResponse;
+import com.fadihasrouni.vendingmachine.exception.BadRequestException;
+import com.fadihasrouni.vendingmachine.exception.ForbiddenException;
+import com.fadihasrouni.vendingmachine.exception.ResourceNotFoundException;
+import com.fadihasrouni.vendingmachine.model.MachineSession;
+import com.fadihasrouni.vendingmachine.model.MachineSlot;
+import com.fadihasrouni.vendingmachine.model.VendingMachine;
+import com.fadihasrouni.vendingmachine.model.id.MachineSessionId;
+import com.fadihasrouni.vendingmachine.model.id.MachineSlotId;
+import com.fadihasrouni.vendingmachine.model.projection.ProductMetadata;
+import com.fadihasrouni.vendingmachine.model.projection.PurchaseBalance;
+import com.fadihasrouni.vendingmachine.repository.MachineSessionRepository;
+import com.fadihasrouni.vendingmachine.repository.MachineSlotRepository;
+import com.fadihasrouni.vendingmachine.repository.UserRepository;
+import com.fadihasrouni.vendingmachine.repository.VendingMachineRepository;
+import com.fadihasrouni.vendingmachine.service.change.CoinFloat;
+import com.fadihasrouni.vendingmachine.service.change.MachineCoinFloats;
+import com.fadihasrouni.vendingmachine.utils.Constants;
+
+import io.micrometer.core.annotation.Timed;
+
+/**
+ * Stock, deposits and change of each machine. Every operation only touches
+ * the rows and the coin float of its machine. The default machine is served
+ * by the product and user services, on the product stock and user deposit.
+ */
+@Service
+public class VendingMachineService {
+
+	@Autowired
+	private VendingMachineRepository vendingMachineRepository;
+
+	@Autowired
+	private MachineSlotRepository machineSlotRepository;
+
+	@Autowired
+	private MachineSessionRepository machineSessionRepository;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private MachinePurchaseService machinePurchaseService;
+
+	@Autowired
+	private MachineCoinFloats machineCoinFloats;
+
+	@Autowired
+	private ProductService productService;
+
+	@Autowired
+	private UserService userService;
+
+	// Machines are never deleted, a machine found once is not looked up again
+	private final Set<Long> knownMachines = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Add a new machine
+	 *
+	 * @param request
+	 * @return
+	 */
+	@Timed("vending.machine.add")
+	public VendingMachineResponse addMachine(VendingMachineRequest request) {
+		ProductService.getSellerInformation();
+
+		if (request.getName() == null || request.getName().isBlank()) {
+			throw new BadRequestException("Machine name cannot be empty", null);
+		}
+
+		VendingMachine machine = vendingMachineRepository.save(new VendingMachine(null, request.getName(), 0L));
+		knownMachines.add(machine.getId());
+
+		return new VendingMachineResponse(machine.getId(), machine.getName());
+	}
+
+	/**
+	 * Find a machine by id
+	 *
+	 * @param id
+	 * @return
+	 */
+	public VendingMachineResponse findMachineById(Long id) {
+		VendingMachine machine = vendingMachineRepository.findById(id)
+				.orElseThrow(() -> new ResourceNotFoundException("Could not find machine with id: " + id));
+
+		return new VendingMachineResponse(machine.getId(), machine.getName());
+	}
+
+	/**
+	 * Find a page of the products stocked in a machine ordered by id, starting
+	 * after the given cursor
+	 *
+	 * @param machineId
+	 * @param after     last product id of the previous page, null for the first page
+	 * @param limit     page size, capped to the maximum page size
+	 * @param inStock   only products with an available amount
+	 * @return
+	 */
+	@Timed("vending.machine.product-page")
+	public ProductPageResponse findProductsPage(Long machineId, Long after, Integer limit, boolean inStock) {
+		if (machineId == Constants.DEFAULT_MACHINE_ID) {
+			return productService.findProductsPage(after, limit, null, inStock);
+		}
+
+		int pageSize = ProductService.pageSize(limit);
+		requireMachine(machineId);
+
+		// One extra row tells whether there is a next page without a count query
+		List<ProductResponse> products = machineSlotRepository.findPage(machineId, after == null ? 0L : after,
+				inStock ? 1 : 0, PageRequest.of(0, pageSize + 1));
+
+		ProductPageResponse response = new ProductPageResponse();
+
+		if (products.size() > pageSize) {
+			products = products.subList(0, pageSize);
+			response.setNextCursor(products.get(pageSize - 1).getId());
+		}
+
+		response.setProducts(products);
+		return response;
+	}
+
+	/**
+	 * Set the stock of a seller product in a machine, the product is added to
+	 * the machine on its first stock
+	 *
+	 * @param machineId
+	 * @param productId
+	 * @param request
+	 * @return the product with its stock in the machine
+	 */
+	@Retryable(label = "updateMachineSlot", value = OptimisticLockingFailureException.class, maxAttemptsExpression = Constants.RETRY_MAX_ATTEMPTS,
+			backoff = @Backoff(delayExpression = Constants.RETRY_DELAY_MS, maxDelayExpression = Constants.RETRY_MAX_DELAY_MS,
+			multiplierExpression = Constants.RETRY_MULTIPLIER, random = true))
+	@Timed("vending.machine.update-slot")
+	public ProductResponse updateSlot(Long machineId, Long productId, MachineSlotRequest request) {
+
+		UserResponse seller = ProductService.getSellerInformation();
+
+		ProductMetadata product = productService.findProductMetadata(productId);
+
+		if (!seller.getUsername().equals(product.getSellerUsername())) {
+			throw new ForbiddenException("Couldn't update another seller product");
+		}
+
+		ProductService.validateAmount(request.getAmountAvailable());
+
+		if (machineId == Constants.DEFAULT_MACHINE_ID) {
+			return productService.updateProductAmount(productId, request.getAmountAvailable());
+		}
+
+		requireMachine(machineId);
+
+		MachineSlot slot = machineSlotRepository.findById(new MachineSlotId(machineId, productId))
+				.orElseGet(() -> new MachineSlot(machineId, productId, null, null));
+
+		slot.setAmountAvailable(request.getAmountAvailable());
+		machineSlotRepository.save(slot);
+
+		return product.toResponse(request.getAmountAvailable());
+	}
+
+	/**
+	 * Deposit a coin in the buyer session of a machine
+	 *
+	 * @param machineId
+	 * @param userId
+	 * @param coin
+	 * @return
+	 */
+	@Timed("vending.machine.deposit")
+	public GenericResponse deposit(Long machineId, Long userId, Integer coin) {
+		if (machineId == Constants.DEFAULT_MACHINE_ID) {
+			return userService.deposit(userId, coin);
+		}
+
+		UserService.validateRequester(userId, true);
+
+		if (!CoinFloat.isAccepted(coin)) {
+			throw new BadRequestException("The coins must be in: " + Arrays.toString(CoinFloat.COINS), null);
+		}
+
+		requireMachine(machineId);
+
+		try {
+			machinePurchaseService.deposit(machineId, userId, coin);
+		} catch (DataIntegrityViolationException ex) {
+			// Another first coin created the session, unless the user is gone
+			try {
+				machinePurchaseService.deposit(machineId, userId, coin);
+			} catch (DataIntegrityViolationException again) {
+				if (!userRepository.existsById(userId)) {
+					throw new ResourceNotFoundException("No user exists with id: " + userId);
+				}
+				throw again;
+			}
+		}
+
+		return new GenericResponse(true, coin + " cent coin deposited successfully");
+	}
+
+	/**
+	 * Buy a product stocked in a machine with the buyer session deposit
+	 *
+	 * @param machineId
+	 * @param userId
+	 * @param request
+	 * @return
+	 */
+	@Timed("vending.machine.buy")
+	public BuyResponse buy(Long machineId, Long userId, BuyRequest request) {
+		if (machineId == Constants.DEFAULT_MACHINE_ID) {
+			return userService.buy(userId, request);
+		}
+
+		UserService.validateRequester(userId, true);
+
+		if (request.getAmount() == null || request.getAmount() <= 0) {
+			throw new BadRequestException("The amount of product requested should be larger than 0", null);
+		}
+
+		requireMachine(machineId);
+
+		// Get the product name and cost, the stock comes back from the purchase
+		ProductMetadata product = productService.findProductMetadata(request.getProductId());
+
+		long productCost = (long) product.getCost() * request.getAmount();
+
+		if (productCost > Integer.MAX_VALUE) {
+			throw new BadRequestException("You don't have enough balance in order to buy the product(s)", null);
+		}
+
+		// Update the slot and the session atomically
+		PurchaseBalance balance = machinePurchaseService.purchase(machineId, userId, product.getId(), request.getAmount(), (int) productCost);
+
+		BuyResponse result = new BuyResponse();
+
+		result.setMoneySpent((int) productCost);
+		result.setProductBought(product.toResponse(balance.getAmountAvailable()));
+		result.setChange(machineCoinFloats.get(machineId).previewChange(balance.getDeposit()));
+
+		return result;
+	}
+
+	/**
+	 * Give back the buyer session deposit of a machine from its coin float, the
+	 * coins and the session are updated in one transaction
+	 *
+	 * @param machineId
+	 * @param userId
+	 * @return
+	 */
+	@Retryable(label = "resetMachineDeposit", value = OptimisticLockingFailureException.class, maxAttemptsExpression = Constants.RETRY_MAX_ATTEMPTS,
+			backoff = @Backoff(delayExpression = Constants.RETRY_DELAY_MS, maxDelayExpression = Constants.RETRY_MAX_DELAY_MS,
+			multiplierExpression = Constants.RETRY_MULTIPLIER, random = true))
+	@Transactional
+	@Timed("vending.machine.reset-deposit")
+	public GenericResponse resetDeposit(Long machineId, Long userId) {
+		if (machineId == Constants.DEFAULT_MACHINE_ID) {
+			return userService.resetDeposit(userId);
+		}
+
+		UserService.validateRequester(userId, true);
+		requireMachine(machineId);
+
+		MachineSession session = machineSessionRepository.findById(new MachineSessionId(machineId, userId)).orElse(null);
+		int kept = 0;
+
+		if (session != null && session.getDeposit() > 0) {
+			CoinFloat coinFloat = machineCoinFloats.get(machineId);
+
+			List<Integer> coins = coinFloat.payout(session.getDeposit());
+			kept = session.getDeposit() - UserService.sum(coins);
+
+			session.setDeposit(kept);
+
+			// The coins go back to the float if this fails
+			machineSessionRepository.save(session);
+		}
+
+		if (kept > 0) {
+			return new GenericResponse(true, "The machine is short of coins, " + kept + " cents stay in the deposit.");
+		}
+		return new GenericResponse(true, "The deposit is now reset to 0.");
+	}
+
+	/**
+	 * Check that the machine exists, from memory once it was found
+	 *
+	 * @param machineId
+	 */
+	private void requireMachine(Long machineId) {
+		if (knownMachines.contains(machineId)) {
+			return;
+		}
+
+		if (!vendingMachineRepository.existsById(machineId)) {
+			throw new ResourceNotFoundException("Could not find machine with id: " + machineId);
+		}
+		knownMachines.add(machineId);
+	}
+}
@@ -0,0 +1,111 @@
+package com.fadihasrouni.vendingmachine.service.cache;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.fadihasrouni.vendingmachine.model.projection.ProductMetadata;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * Size bounded, expiring cache of product metadata keyed by product id. Stock
+ * is never cached so purchases don't touch it, only product writes do.
+ */
+@Component
+public class ProductMetadataCache implements MeterBinder {
+
+	private final Cache<Long, ProductMetadata> cache;
+
+	// Bumped by every invalidation, a read that overlaps one is not cached
+	private final AtomicLong invalidations = new AtomicLong();
+
+	public ProductMetadataCache(@Value("${vending.cache.product.maximum-size:10000}") long maximumSize,
+			@Value("${vending.cache.product.ttl-seconds:60}") long ttlSeconds) {
+		this.cache = Caffeine.newBuilder()
+				.maximumSize(maximumSize)
+				.expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+				.recordStats()
+				.build();
+	}
+
+	/**
+	 * Get the cached metadata of a product, null when it is not cached
+	 * 
+	 * @param id
+	 * @return
+	 */
+	public ProductMetadata getIfPresent(Long id) {
+		return cache.getIfPresent(id);
+	}
+
+	/**
+	 * Stamp to take before reading a product from the database
+	 * 
+	 * @return
+	 */
+	public long stamp() {
+		return invalidations.get();
+	}
+
+	/**
+	 * Cache metadata read from the database, unless an invalidation happened
+	 * since the stamp was taken as the read may predate that write
+	 * 
+	 * @param metadata
+	 * @param stamp
+	 */
+	public void put(ProductMetadata metadata, long stamp) {
+		cache.asMap().compute(metadata.getId(), (id, current) -> stamp == invalidations.get() ? metadata : current);
+	}
+
+	/**
+	 * Drop the cached metadata of a given product, again once the current
+	 * transaction commits so reads of the old row are not cached meanwhile
+	 * 
+	 * @param id
+	 */
+	public void invalidate(Long id) {
+		evict(id);
+
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCompletion(int status) {
+					evict(id);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Publish the hit, miss and eviction counters as cache metrics
+	 */
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		CaffeineCacheMetrics.monitor(registry, cache, "product");
+	}
+
+	/**
+	 * Hit, miss and eviction counters since startup
+	 * 
+	 * @return
+	 */
+	public CacheStats stats() {
+		return cache.stats();
+	}
+
+	private void evict(Long id) {
+		invalidations.incrementAndGet();
+		cache.invalidate(id);
+	}
+}
@@ -0,0 +1,72 @@
+package com.fadihasrouni.vendingmachine.service.cache;
+
+import java.time.Duration;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.fadihasrouni.vendingmachine.controller.response.UserResponse;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * Size bounded, expiring cache of authenticated principals keyed by user id.
+ * Entries must be invalidated whenever the underlying user record changes.
+ */
+@Component
+public class UserPrincipalCache implements MeterBinder {
+
+	private final Cache<Long, UserResponse> cache;
+
+	public UserPrincipalCache(@Value("${vending.cache.principal.maximum-size:10000}") long maximumSize,
+			@Value("${vending.cache.principal.ttl-seconds:300}") long ttlSeconds) {
+		this.cache = Caffeine.newBuilder()
+				.maximumSize(maximumSize)
+				.expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+				.recordStats()
+				.build();
+	}
+
+	/**
+	 * Get the cached principal or load it, failed loads are not cached
+	 * 
+	 * @param id
+	 * @param loader
+	 * @return
+	 */
+	public UserResponse get(Long id, Function<Long, UserResponse> loader) {
+		return cache.get(id, loader);
+	}
+
+	/**
+	 * Drop the cached principal of a given user
+	 * 
+	 * @param id
+	 */
+	public void invalidate(Long id) {
+		cache.invalidate(id);
+	}
+
+	/**
+	 * Publish the hit, miss and eviction counters as cache metrics
+	 */
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		CaffeineCacheMetrics.monitor(registry, cache, "principal");
+	}
+
+	/**
+	 * Hit, miss and eviction counters since startup
+	 * 
+	 * @return
+	 */
+	public CacheStats stats() {
+		return cache.stats();
+	}
+}
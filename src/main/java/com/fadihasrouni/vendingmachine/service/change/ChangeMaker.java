@@ -0,0 +1,240 @@
+package com.fadihasrouni.vendingmachine.service.change;
+
+import java.util.Arrays;
+
+/**
+ * Picks the coins to give back out of a limited number of coins per
+ * denomination: the largest amount up to the one requested, with the fewest
+ * coins.
+ *
+ * The fewest coins for every amount up to the maximum are computed once with
+ * unlimited coins. When the coins left cover that answer it is the answer,
+ * otherwise a bounded knapsack over the coins left finds it, in linear time
+ * per denomination. Amounts above the maximum first take the largest coins.
+ *
+ * The tables are reused between calls so nothing is allocated, which makes an
+ * instance unsafe to share between threads. Copies share the unlimited coins
+ * table and only get their own search tables.
+ */
+public final class ChangeMaker {
+
+	private static final int UNREACHABLE = Integer.MAX_VALUE;
+
+	// Denominations in cents, largest first, and in units of their gcd
+	private final int[] coins;
+	private final int[] units;
+	private final int unit;
+
+	private final int maxUnits;
+
+	// Coins per denomination of the best change with unlimited coins, amount * coins.length + denomination
+	private final int[] unlimited;
+
+	// Whether unlimited coins make the amount exactly
+	private final boolean[] exact;
+
+	private final int[] previous;
+	private final int[] current;
+	private final int[] window;
+	private final int[][] taken;
+
+	/**
+	 * @param coins     the denominations in cents, largest first
+	 * @param maxAmount the largest amount computed exactly, in cents
+	 */
+	public ChangeMaker(int[] coins, int maxAmount) {
+		this.coins = coins.clone();
+
+		int gcd = 0;
+		for (int coin : coins) {
+			gcd = gcd(gcd, coin);
+		}
+		this.unit = gcd;
+		this.units = new int[coins.length];
+		for (int i = 0; i < coins.length; i++) {
+			if (i > 0 && coins[i] >= coins[i - 1]) {
+				throw new IllegalArgumentException("Coins must be sorted largest first: " + Arrays.toString(coins));
+			}
+			units[i] = coins[i] / unit;
+		}
+		this.maxUnits = maxAmount / unit;
+		if (maxUnits < units[0]) {
+			throw new IllegalArgumentException("The maximum amount should be at least the largest coin");
+		}
+
+		this.exact = new boolean[maxUnits + 1];
+		this.unlimited = unlimitedTable();
+		this.previous = new int[maxUnits + 1];
+		this.current = new int[maxUnits + 1];
+		this.window = new int[maxUnits + 1];
+		this.taken = new int[coins.length][maxUnits + 1];
+	}
+
+	/**
+	 * A change maker for the same coins and maximum amount, to be used by
+	 * another thread
+	 *
+	 * @param other the change maker whose unlimited coins table is shared
+	 */
+	public ChangeMaker(ChangeMaker other) {
+		this.coins = other.coins;
+		this.units = other.units;
+		this.unit = other.unit;
+		this.maxUnits = other.maxUnits;
+		this.exact = other.exact;
+		this.unlimited = other.unlimited;
+		this.previous = new int[maxUnits + 1];
+		this.current = new int[maxUnits + 1];
+		this.window = new int[maxUnits + 1];
+		this.taken = new int[coins.length][maxUnits + 1];
+	}
+
+	/**
+	 * Fill the coins to give back per denomination
+	 *
+	 * @param amount    the amount to give back, in cents
+	 * @param available the coins available per denomination
+	 * @param change    the coins to give per denomination, overwritten
+	 * @return the amount the coins add up to, less than the one requested when
+	 *         the coins available can't make it
+	 */
+	public int makeChange(int amount, int[] available, int[] change) {
+		Arrays.fill(change, 0);
+
+		int target = Math.max(amount, 0) / unit;
+
+		long total = 0;
+		for (int i = 0; i < coins.length; i++) {
+			total += (long) available[i] * units[i];
+		}
+		if (total <= target) {
+			System.arraycopy(available, 0, change, 0, coins.length);
+			return (int) total * unit;
+		}
+
+		// Beyond the tables, the largest coins bring the amount back in range
+		for (int i = 0; i < coins.length && target > maxUnits; i++) {
+			int count = Math.min(available[i], (target - maxUnits + units[i] - 1) / units[i]);
+			change[i] = count;
+			target -= count * units[i];
+		}
+
+		int base = target * coins.length;
+		boolean covered = exact[target];
+		for (int i = 0; i < coins.length && covered; i++) {
+			covered = unlimited[base + i] <= available[i] - change[i];
+		}
+		if (covered) {
+			for (int i = 0; i < coins.length; i++) {
+				change[i] += unlimited[base + i];
+			}
+			return sum(change);
+		}
+
+		int reached = bounded(target, available, change);
+		for (int i = coins.length - 1; i >= 0; i--) {
+			int count = taken[i][reached];
+			change[i] += count;
+			reached -= count * units[i];
+		}
+		return sum(change);
+	}
+
+	/**
+	 * Fewest coins for every amount up to the target with the coins left, the
+	 * coins of each denomination used are kept in taken
+	 *
+	 * @return the largest amount reached, in units
+	 */
+	private int bounded(int target, int[] available, int[] used) {
+		int[] best = previous;
+		int[] next = current;
+
+		Arrays.fill(best, 0, target + 1, UNREACHABLE);
+		best[0] = 0;
+
+		for (int i = 0; i < coins.length; i++) {
+			int step = units[i];
+			int limit = available[i] - used[i];
+			int[] counts = taken[i];
+
+			// Per residue, a sliding window minimum over the last limit + 1 amounts
+			for (int residue = 0; residue < step && residue <= target; residue++) {
+				int head = 0;
+				int tail = 0;
+
+				for (int j = 0, t = residue; t <= target; j++, t += step) {
+					if (best[t] != UNREACHABLE) {
+						int value = best[t] - j;
+						while (tail > head && best[residue + window[tail - 1] * step] - window[tail - 1] >= value) {
+							tail--;
+						}
+						window[tail++] = j;
+					}
+					while (tail > head && window[head] < j - limit) {
+						head++;
+					}
+
+					if (tail > head) {
+						int m = window[head];
+						next[t] = best[residue + m * step] - m + j;
+						counts[t] = j - m;
+					} else {
+						next[t] = UNREACHABLE;
+						counts[t] = 0;
+					}
+				}
+			}
+
+			int[] swap = best;
+			best = next;
+			next = swap;
+		}
+
+		int reached = target;
+		while (best[reached] == UNREACHABLE) {
+			reached--;
+		}
+		return reached;
+	}
+
+	private int[] unlimitedTable() {
+		int n = coins.length;
+		int[] fewest = new int[maxUnits + 1];
+		int[] last = new int[maxUnits + 1];
+		int[] table = new int[(maxUnits + 1) * n];
+		exact[0] = true;
+
+		for (int t = 1; t <= maxUnits; t++) {
+			fewest[t] = UNREACHABLE;
+			last[t] = -1;
+			for (int i = 0; i < n; i++) {
+				if (units[i] <= t && fewest[t - units[i]] != UNREACHABLE && fewest[t - units[i]] + 1 < fewest[t]) {
+					fewest[t] = fewest[t - units[i]] + 1;
+					last[t] = i;
+				}
+			}
+
+			// Unreachable amounts keep no coins, the bounded search handles them
+			if (last[t] >= 0) {
+				exact[t] = true;
+				int from = (t - units[last[t]]) * n;
+				System.arraycopy(table, from, table, t * n, n);
+				table[t * n + last[t]]++;
+			}
+		}
+		return table;
+	}
+
+	private int sum(int[] change) {
+		int amount = 0;
+		for (int i = 0; i < coins.length; i++) {
+			amount += change[i] * coins[i];
+		}
+		return amount;
+	}
+
+	private static int gcd(int a, int b) {
+		return b == 0 ? a : gcd(b, a % b);
+	}
+}
@@ -0,0 +1,341 @@
+package com.fadihasrouni.vendingmachine.service.change;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
+
+import com.fadihasrouni.vendingmachine.model.MachineCoin;
+import com.fadihasrouni.vendingmachine.repository.MachineCoinRepository;
+import com.fadihasrouni.vendingmachine.utils.Constants;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * The coins held by the machine per denomination. Deposited coins are added,
+ * change is picked from what is held and removed once it is paid out.
+ *
+ * Every operation holds the float monitor, so a payout sees and takes coins
+ * no other payout took. The change maker tables are reused under it.
+ *
+ * The coins are stored per machine and loaded when the float is created, the
+ * initial float is only used when the machine has none stored yet. Loading
+ * stores a row for every denomination, so deposits and payouts only update
+ * the stored coins, in the caller transaction. The float in memory follows
+ * once it commits and gets the coins of a rolled back payout back.
+ *
+ * Payouts are picked from the coins in memory, which only follow the deposits
+ * and payouts of this process, so a single instance must serve the database.
+ *
+ * The bean is the float of the default machine, the other machines get their
+ * own float from {@link #forMachine(long)} and never share its monitor.
+ */
+@Component
+public class CoinFloat implements MeterBinder {
+
+	/**
+	 * Accepted coins in cents, largest first
+	 */
+	public static final int[] COINS = { 100, 50, 20, 10, 5 };
+
+	private final int[] counts = new int[COINS.length];
+
+	private final int[] change = new int[COINS.length];
+
+	private final ChangeMaker changeMaker;
+
+	private final long machineId;
+
+	@Autowired
+	private MachineCoinRepository machineCoinRepository;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	/**
+	 * @param maxAmount    the largest change computed exactly, in cents
+	 * @param initialFloat coins held on startup, e.g. 100:10,50:20,5:100
+	 */
+	@Autowired
+	public CoinFloat(@Value("${vending.change.max-amount:10000}") int maxAmount,
+			@Value("${vending.change.initial-float:}") String initialFloat) {
+		this.changeMaker = new ChangeMaker(COINS, maxAmount);
+		this.machineId = Constants.DEFAULT_MACHINE_ID;
+
+		for (String entry : StringUtils.commaDelimitedListToStringArray(initialFloat)) {
+			String[] coinAndCount = entry.trim().split(":");
+			if (coinAndCount.length != 2) {
+				throw new IllegalArgumentException("Invalid coin float entry: " + entry);
+			}
+			try {
+				int index = index(Integer.parseInt(coinAndCount[0].trim()));
+				int count = Integer.parseInt(coinAndCount[1].trim());
+				if (index < 0 || count < 0) {
+					throw new IllegalArgumentException("Invalid coin float entry: " + entry);
+				}
+				counts[index] += count;
+			} catch (NumberFormatException ex) {
+				throw new IllegalArgumentException("Invalid coin float entry: " + entry, ex);
+			}
+		}
+	}
+
+	private CoinFloat(ChangeMaker changeMaker, long machineId, MachineCoinRepository machineCoinRepository,
+			PlatformTransactionManager transactionManager) {
+		this.changeMaker = changeMaker;
+		this.machineId = machineId;
+		this.machineCoinRepository = machineCoinRepository;
+		this.transactionManager = transactionManager;
+	}
+
+	/**
+	 * The float of another machine with its stored coins, sharing the change
+	 * tables computed for this one
+	 *
+	 * @param machineId
+	 * @return
+	 */
+	public CoinFloat forMachine(long machineId) {
+		CoinFloat coinFloat = new CoinFloat(new ChangeMaker(changeMaker), machineId, machineCoinRepository, transactionManager);
+		coinFloat.load();
+		return coinFloat;
+	}
+
+	/**
+	 * Replace the coins in memory with the stored ones. The denominations
+	 * without a row are stored first, with the initial float for a machine
+	 * without stored coins and none otherwise.
+	 */
+	@PostConstruct
+	void load() {
+		List<MachineCoin> stored = machineCoinRepository.findByMachineId(machineId);
+
+		if (stored.size() < COINS.length) {
+			List<MachineCoin> missing = missing(stored);
+
+			// In its own transaction, a conflict must not roll back the caller one
+			TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+			transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+			try {
+				transactionTemplate.executeWithoutResult(status -> machineCoinRepository.saveAllAndFlush(missing));
+			} catch (DataIntegrityViolationException ex) {
+				// Another instance stored the rows first
+			}
+			stored = machineCoinRepository.findByMachineId(machineId);
+		}
+
+		synchronized (this) {
+			Arrays.fill(counts, 0);
+			for (MachineCoin coin : stored) {
+				int index = index(coin.getCoin());
+				if (index >= 0) {
+					counts[index] = coin.getQuantity();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Check if a coin is accepted
+	 *
+	 * @param coin
+	 * @return
+	 */
+	public static boolean isAccepted(int coin) {
+		return index(coin) >= 0;
+	}
+
+	/**
+	 * Add a deposited coin, stored in the deposit transaction
+	 *
+	 * @param coin
+	 */
+	public void deposit(int coin) {
+		store(coin, 1);
+
+		afterCommit(() -> add(coin, 1));
+	}
+
+	/**
+	 * Coins that would be given back for an amount, the float is left as is
+	 *
+	 * @param amount
+	 * @return the coins, largest first
+	 */
+	public synchronized List<Integer> previewChange(int amount) {
+		changeMaker.makeChange(amount, counts, change);
+		return coins(change);
+	}
+
+	/**
+	 * Take the coins given back for an amount out of the float, stored in the
+	 * reset transaction. The coins are put back if it rolls back.
+	 *
+	 * @param amount
+	 * @return the coins, largest first, adding up to less than the amount when
+	 *         the float can't make it
+	 */
+	public List<Integer> payout(int amount) {
+		int[] taken;
+		synchronized (this) {
+			changeMaker.makeChange(amount, counts, change);
+			for (int i = 0; i < COINS.length; i++) {
+				counts[i] -= change[i];
+			}
+			taken = change.clone();
+		}
+
+		List<Integer> coins = coins(taken);
+		afterRollback(() -> refund(coins));
+
+		for (int i = 0; i < COINS.length; i++) {
+			if (taken[i] > 0) {
+				store(COINS[i], -taken[i]);
+			}
+		}
+
+		return coins;
+	}
+
+	/**
+	 * Put coins back in memory only, the stored coins are left as is
+	 *
+	 * @param coins
+	 */
+	public synchronized void refund(List<Integer> coins) {
+		for (Integer coin : coins) {
+			add(coin, 1);
+		}
+	}
+
+	/**
+	 * Coins held per denomination, in the order of {@link #COINS}
+	 *
+	 * @return
+	 */
+	public synchronized int[] counts() {
+		return counts.clone();
+	}
+
+	/**
+	 * Publish the coins held per denomination
+	 */
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		for (int i = 0; i < COINS.length; i++) {
+			int index = i;
+			Gauge.builder("vending.change.float", this, coinFloat -> coinFloat.count(index))
+					.description("Coins held by the machine")
+					.tag("coin", String.valueOf(COINS[i]))
+					.tag("machine", String.valueOf(machineId))
+					.register(registry);
+		}
+	}
+
+	private synchronized int count(int index) {
+		return counts[index];
+	}
+
+	private synchronized void add(int coin, int quantity) {
+		counts[index(coin)] += quantity;
+	}
+
+	/**
+	 * Rows for the denominations not stored yet
+	 */
+	private synchronized List<MachineCoin> missing(List<MachineCoin> stored) {
+		boolean initial = stored.isEmpty();
+		boolean[] present = new boolean[COINS.length];
+		for (MachineCoin coin : stored) {
+			int index = index(coin.getCoin());
+			if (index >= 0) {
+				present[index] = true;
+			}
+		}
+
+		List<MachineCoin> missing = new ArrayList<>();
+		for (int i = 0; i < COINS.length; i++) {
+			if (!present[i]) {
+				missing.add(new MachineCoin(machineId, COINS[i], initial ? counts[i] : 0, null));
+			}
+		}
+		return missing;
+	}
+
+	/**
+	 * Add to the stored coins of a denomination, its row was stored on load
+	 */
+	private void store(int coin, int quantity) {
+		if (machineCoinRepository.addQuantity(machineId, coin, quantity) == 0) {
+			throw new IllegalStateException("No stored " + coin + " cent coins for machine " + machineId);
+		}
+	}
+
+	/**
+	 * Run once the caller transaction commits, at once without a transaction
+	 */
+	private static void afterCommit(Runnable change) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			change.run();
+			return;
+		}
+
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+			@Override
+			public void afterCommit() {
+				change.run();
+			}
+		});
+	}
+
+	/**
+	 * Run if the caller transaction does not commit
+	 */
+	private static void afterRollback(Runnable undo) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			return;
+		}
+
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+			@Override
+			public void afterCompletion(int status) {
+				if (status != STATUS_COMMITTED) {
+					undo.run();
+				}
+			}
+		});
+	}
+
+	private static List<Integer> coins(int[] change) {
+		List<Integer> coins = new ArrayList<>();
+		for (int i = 0; i < COINS.length; i++) {
+			for (int k = 0; k < change[i]; k++) {
+				coins.add(COINS[i]);
+			}
+		}
+		return coins;
+	}
+
+	private static int index(int coin) {
+		for (int i = 0; i < COINS.length; i++) {
+			if (COINS[i] == coin) {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
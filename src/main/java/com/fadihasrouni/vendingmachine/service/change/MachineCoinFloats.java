@@ -0,0 +1,52 @@
+package com.fadihasrouni.vendingmachine.service.change;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.fadihasrouni.vendingmachine.utils.Constants;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * The coin float of every machine, loaded from its stored coins on first use
+ * and filled by the coins deposited in it. Each float has its own monitor, so payouts in
+ * one machine never wait on another machine.
+ */
+@Component
+public class MachineCoinFloats {
+
+	private final ConcurrentMap<Long, CoinFloat> floats = new ConcurrentHashMap<>();
+
+	private final CoinFloat defaultFloat;
+
+	private final ObjectProvider<MeterRegistry> meterRegistry;
+
+	@Autowired
+	public MachineCoinFloats(CoinFloat defaultFloat, ObjectProvider<MeterRegistry> meterRegistry) {
+		this.defaultFloat = defaultFloat;
+		this.meterRegistry = meterRegistry;
+	}
+
+	/**
+	 * Get the float of a machine
+	 *
+	 * @param machineId
+	 * @return
+	 */
+	public CoinFloat get(long machineId) {
+		if (machineId == Constants.DEFAULT_MACHINE_ID) {
+			return defaultFloat;
+		}
+		return floats.computeIfAbsent(machineId, this::create);
+	}
+
+	private CoinFloat create(long machineId) {
+		CoinFloat coinFloat = defaultFloat.forMachine(machineId);
+		meterRegistry.ifAvailable(coinFloat::bindTo);
+		return coinFloat;
+	}
+}
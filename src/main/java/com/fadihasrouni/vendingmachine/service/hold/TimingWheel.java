@@ -0,0 +1,142 @@
+package com.fadihasrouni.vendingmachine.service.hold;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel: four wheels of 64 slots, each slot of a wheel
+ * spanning a whole turn of the wheel below. A timeout is added to the lowest
+ * wheel whose turn covers it and moved down a wheel each time the time
+ * reaches its slot, so adding is O(1) and every timeout is moved at most once
+ * per wheel whatever the number of timeouts.
+ *
+ * Timeouts cannot be removed, the caller skips the values it no longer cares
+ * about when they expire. Not thread safe, callers synchronize.
+ */
+public final class TimingWheel<T> {
+
+	private static final int BITS = 6;
+	private static final int SLOTS = 1 << BITS;
+	private static final int MASK = SLOTS - 1;
+	private static final int LEVELS = 4;
+
+	private final long tickMs;
+
+	private final long originMs;
+
+	private final List<List<Timeout<T>>> slots;
+
+	// Ticks since the origin, every slot up to this one was expired
+	private long currentTick;
+
+	private int size;
+
+	/**
+	 * @param tickMs   the time spanned by a slot of the lowest wheel
+	 * @param originMs the current time
+	 */
+	public TimingWheel(long tickMs, long originMs) {
+		if (tickMs <= 0) {
+			throw new IllegalArgumentException("The tick should be larger than 0");
+		}
+		this.tickMs = tickMs;
+		this.originMs = originMs;
+		this.slots = new ArrayList<>(LEVELS * SLOTS);
+		for (int i = 0; i < LEVELS * SLOTS; i++) {
+			slots.add(new ArrayList<>());
+		}
+	}
+
+	/**
+	 * Add a value expiring at the given time, a time already passed expires on
+	 * the next tick
+	 *
+	 * @param value
+	 * @param deadlineMs
+	 */
+	public void add(T value, long deadlineMs) {
+		// Rounded up, a timeout never expires early
+		long deadlineTick = Math.max(Math.floorDiv(deadlineMs - originMs + tickMs - 1, tickMs), currentTick + 1);
+		place(new Timeout<>(value, deadlineTick));
+		size++;
+	}
+
+	/**
+	 * Move the time forward and hand out the values expired on the way, in
+	 * expiry order by tick
+	 *
+	 * @param nowMs
+	 * @param expired
+	 */
+	public void advance(long nowMs, Consumer<T> expired) {
+		long targetTick = Math.floorDiv(nowMs - originMs, tickMs);
+
+		while (currentTick < targetTick) {
+			currentTick++;
+
+			// Higher wheels first, they may move timeouts into a slot of a lower wheel reached now
+			for (int level = LEVELS - 1; level > 0; level--) {
+				if ((currentTick & ((1L << (BITS * level)) - 1)) == 0) {
+					for (Timeout<T> timeout : take(level, currentTick >>> (BITS * level))) {
+						place(timeout);
+					}
+				}
+			}
+
+			for (Timeout<T> timeout : take(0, currentTick)) {
+				size--;
+				expired.accept(timeout.value);
+			}
+		}
+	}
+
+	/**
+	 * Number of values not expired yet
+	 *
+	 * @return
+	 */
+	public int size() {
+		return size;
+	}
+
+	private void place(Timeout<T> timeout) {
+		long delta = timeout.deadlineTick - currentTick;
+
+		for (int level = 0; level < LEVELS; level++) {
+			if (delta < 1L << (BITS * (level + 1))) {
+				slot(level, timeout.deadlineTick >>> (BITS * level)).add(timeout);
+				return;
+			}
+		}
+
+		// Beyond the highest wheel, placed again when its current slot comes back in a turn
+		slot(LEVELS - 1, currentTick >>> (BITS * (LEVELS - 1))).add(timeout);
+	}
+
+	private List<Timeout<T>> slot(int level, long index) {
+		return slots.get(level * SLOTS + (int) (index & MASK));
+	}
+
+	private List<Timeout<T>> take(int level, long index) {
+		int position = level * SLOTS + (int) (index & MASK);
+		List<Timeout<T>> timeouts = slots.get(position);
+		if (timeouts.isEmpty()) {
+			return timeouts;
+		}
+		slots.set(position, new ArrayList<>());
+		return timeouts;
+	}
+
+	private static final class Timeout<T> {
+
+		private final T value;
+
+		private final long deadlineTick;
+
+		private Timeout(T value, long deadlineTick) {
+			this.value = value;
+			this.deadlineTick = deadlineTick;
+		}
+	}
+}
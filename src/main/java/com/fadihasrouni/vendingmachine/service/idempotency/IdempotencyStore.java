@@ -0,0 +1,324 @@
+package com.fadihasrouni.vendingmachine.service.idempotency;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.DigestUtils;
+
+import com.fadihasrouni.vendingmachine.controller.response.UserResponse;
+import com.fadihasrouni.vendingmachine.exception.BadRequestException;
+import com.fadihasrouni.vendingmachine.exception.UniqueConstraintException;
+import com.fadihasrouni.vendingmachine.model.IdempotencyRecord;
+import com.fadihasrouni.vendingmachine.repository.IdempotencyRecordRepository;
+import com.fadihasrouni.vendingmachine.utils.Constants;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * Responses of the requests sent with an idempotency key, so a retried
+ * request gets the first response back instead of running again.
+ *
+ * Keys are looked up in memory, bounded in size and expiring after the ttl.
+ * Responses are written to the database in batches right after they are given
+ * and loaded back on startup, the database is only read on a miss while
+ * entries evicted for size may still be valid.
+ *
+ * A key in flight holds a future, duplicates arriving meanwhile wait on it and
+ * get the same response or the same error. Failed requests are not kept, so
+ * they can be retried with the same key.
+ */
+@Component
+public class IdempotencyStore implements MeterBinder {
+
+	private Logger log = LogManager.getLogger(IdempotencyStore.class);
+
+	private final IdempotencyRecordRepository idempotencyRecordRepository;
+
+	private final ObjectMapper objectMapper;
+
+	private final TransactionTemplate transactionTemplate;
+
+	private final long ttlMillis;
+
+	private final long waitMillis;
+
+	private final int maximumSize;
+
+	private final Cache<String, Entry> cache;
+
+	private final Queue<IdempotencyRecord> pendingRecords = new ConcurrentLinkedQueue<>();
+
+	// Last time a valid entry was evicted for size, 0 if never
+	private volatile long lastSizeEviction;
+
+	@Autowired
+	public IdempotencyStore(IdempotencyRecordRepository idempotencyRecordRepository, ObjectMapper objectMapper,
+			PlatformTransactionManager transactionManager,
+			@Value("${vending.idempotency.maximum-size:100000}") int maximumSize,
+			@Value("${vending.idempotency.ttl-seconds:86400}") long ttlSeconds,
+			@Value("${vending.idempotency.wait-ms:10000}") long waitMillis) {
+		this.idempotencyRecordRepository = idempotencyRecordRepository;
+		this.objectMapper = objectMapper;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.maximumSize = maximumSize;
+		this.ttlMillis = Duration.ofSeconds(ttlSeconds).toMillis();
+		this.waitMillis = waitMillis;
+		this.cache = Caffeine.newBuilder()
+				.maximumSize(maximumSize)
+				.expireAfter(new EntryExpiry())
+				// Maintenance runs on the calling thread, a size eviction is seen by the next lookup
+				.executor(Runnable::run)
+				.removalListener((String key, Entry entry, RemovalCause cause) -> {
+					if (cause == RemovalCause.SIZE) {
+						lastSizeEviction = System.currentTimeMillis();
+					}
+				})
+				.recordStats()
+				.build();
+	}
+
+	/**
+	 * Load the records still valid, latest first up to the maximum size. When
+	 * that fills the cache older valid records may be left in the database,
+	 * they are counted as evicted for size so a miss reads them.
+	 */
+	@PostConstruct
+	void load() {
+		long now = System.currentTimeMillis();
+		List<IdempotencyRecord> records = idempotencyRecordRepository.findUnexpired(now, PageRequest.of(0, maximumSize));
+		for (IdempotencyRecord record : records) {
+			Entry entry = new Entry(record.getFingerprint(), record.getExpiresAt());
+			entry.response.complete(record.getResponse());
+			cache.asMap().putIfAbsent(record.getIdempotencyKey(), entry);
+		}
+
+		if (records.size() >= maximumSize) {
+			lastSizeEviction = now;
+		}
+	}
+
+	@PreDestroy
+	void stop() {
+		flush();
+	}
+
+	/**
+	 * Run the operation once per key of the authenticated user, the same key
+	 * gets the stored response back
+	 *
+	 * @param key       the key sent by the client, the operation just runs when null
+	 * @param request   describes the request, a key cannot be reused for another one
+	 * @param type      the response type
+	 * @param operation
+	 * @return
+	 */
+	public <T> T execute(String key, String request, Class<T> type, Supplier<T> operation) {
+		if (key == null) {
+			return operation.get();
+		}
+
+		if (key.isBlank() || key.length() > Constants.IDEMPOTENCY_KEY_MAX_LENGTH) {
+			throw new BadRequestException("The idempotency key should have 1 to " + Constants.IDEMPOTENCY_KEY_MAX_LENGTH + " characters", null);
+		}
+
+		String scopedKey = scope() + ":" + key;
+		String fingerprint = DigestUtils.md5DigestAsHex(request.getBytes(StandardCharsets.UTF_8));
+		long now = System.currentTimeMillis();
+
+		Entry entry = new Entry(fingerprint, now + ttlMillis);
+		Entry existing = cache.asMap().putIfAbsent(scopedKey, entry);
+
+		if (existing != null) {
+			return replay(existing, fingerprint, type);
+		}
+
+		// Only once entries were evicted for size can a valid key be missing from memory
+		if (lastSizeEviction > 0 && now - lastSizeEviction < ttlMillis) {
+			IdempotencyRecord record = idempotencyRecordRepository.findById(scopedKey)
+					.filter(stored -> stored.getExpiresAt() > now)
+					.orElse(null);
+			if (record != null) {
+				entry.fingerprint = record.getFingerprint();
+				entry.response.complete(record.getResponse());
+				return replay(entry, fingerprint, type);
+			}
+		}
+
+		T response;
+		String json;
+		try {
+			response = operation.get();
+			json = toJson(response);
+		} catch (RuntimeException | Error ex) {
+			cache.asMap().remove(scopedKey, entry);
+			entry.response.completeExceptionally(ex);
+			throw ex;
+		}
+
+		entry.response.complete(json);
+		pendingRecords.add(new IdempotencyRecord(scopedKey, fingerprint, json, entry.expiresAt));
+
+		return response;
+	}
+
+	/**
+	 * Write the responses given since the last flush in one batch
+	 */
+	@Scheduled(fixedDelayString = "${vending.idempotency.flush-interval-ms:50}")
+	public void flush() {
+		List<IdempotencyRecord> records = new ArrayList<>();
+		IdempotencyRecord record;
+		while ((record = pendingRecords.poll()) != null) {
+			records.add(record);
+		}
+
+		if (records.isEmpty()) {
+			return;
+		}
+
+		try {
+			transactionTemplate.executeWithoutResult(status -> idempotencyRecordRepository.saveAll(records));
+		} catch (RuntimeException ex) {
+			// The responses are still replayed from memory
+			log.warn("Could not store {} idempotency records", records.size(), ex);
+		}
+	}
+
+	/**
+	 * Delete the expired records
+	 */
+	@Scheduled(fixedDelayString = "${vending.idempotency.purge-interval-ms:60000}")
+	public void purge() {
+		Integer deleted = transactionTemplate.execute(status -> idempotencyRecordRepository.deleteExpired(System.currentTimeMillis()));
+		log.debug("Purged {} expired idempotency records", deleted);
+	}
+
+	/**
+	 * Publish the hit, miss and eviction counters as cache metrics, hits are
+	 * replayed requests
+	 */
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		CaffeineCacheMetrics.monitor(registry, cache, "idempotency");
+	}
+
+	private <T> T replay(Entry entry, String fingerprint, Class<T> type) {
+		if (!entry.fingerprint.equals(fingerprint)) {
+			throw new BadRequestException("The idempotency key was already used for another request", null);
+		}
+
+		String json;
+		try {
+			json = entry.response.get(waitMillis, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException ex) {
+			throw new UniqueConstraintException("A request with the same idempotency key is still in progress");
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new UniqueConstraintException("A request with the same idempotency key is still in progress");
+		} catch (ExecutionException ex) {
+			// The duplicate fails the way the first request did
+			if (ex.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) ex.getCause();
+			}
+			if (ex.getCause() instanceof Error) {
+				throw (Error) ex.getCause();
+			}
+			throw new IllegalStateException(ex.getCause());
+		}
+
+		if (!entry.fingerprint.equals(fingerprint)) {
+			throw new BadRequestException("The idempotency key was already used for another request", null);
+		}
+
+		try {
+			return objectMapper.readValue(json, type);
+		} catch (JsonProcessingException ex) {
+			throw new IllegalStateException("Could not read the stored response", ex);
+		}
+	}
+
+	private String toJson(Object response) {
+		try {
+			return objectMapper.writeValueAsString(response);
+		} catch (JsonProcessingException ex) {
+			throw new IllegalStateException("Could not store the response", ex);
+		}
+	}
+
+	/**
+	 * Keys are per authenticated user, so users never see each other responses
+	 */
+	private static String scope() {
+		Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+		if (authentication != null && authentication.getPrincipal() instanceof UserResponse) {
+			return String.valueOf(((UserResponse) authentication.getPrincipal()).getId());
+		}
+		return "anonymous";
+	}
+
+	private static final class Entry {
+
+		private volatile String fingerprint;
+
+		private final long expiresAt;
+
+		private final CompletableFuture<String> response = new CompletableFuture<>();
+
+		private Entry(String fingerprint, long expiresAt) {
+			this.fingerprint = fingerprint;
+			this.expiresAt = expiresAt;
+		}
+	}
+
+	/**
+	 * Entries expire when their record does, also once loaded back on startup
+	 */
+	private static final class EntryExpiry implements Expiry<String, Entry> {
+
+		@Override
+		public long expireAfterCreate(String key, Entry entry, long currentTime) {
+			return TimeUnit.MILLISECONDS.toNanos(Math.max(entry.expiresAt - System.currentTimeMillis(), 0));
+		}
+
+		@Override
+		public long expireAfterUpdate(String key, Entry entry, long currentTime, long currentDuration) {
+			return expireAfterCreate(key, entry, currentTime);
+		}
+
+		@Override
+		public long expireAfterRead(String key, Entry entry, long currentTime, long currentDuration) {
+			return currentDuration;
+		}
+	}
+}
@@ -0,0 +1,327 @@
+package com.fadihasrouni.vendingmachine.service.inventory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.PostConstruct;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fadihasrouni.vendingmachine.exception.ResourceNotFoundException;
+import com.fadihasrouni.vendingmachine.model.StockMovement;
+import com.fadihasrouni.vendingmachine.repository.ProductRespository;
+import com.fadihasrouni.vendingmachine.repository.StockMovementRepository;
+
+/**
+ * In-memory stock counters for hot products.
+ * 
+ * Purchases reserve stock in memory and journal the decrement as a
+ * {@link StockMovement} in the caller transaction, so the hot product row is
+ * not locked by buyers. The journal is applied to the product rows in batches
+ * on a schedule, and once on startup to reconcile anything left by a crash.
+ * Restocks go through the same stripe lock and update the product row
+ * directly.
+ * 
+ * The counters live in this process, the ledger must only be enabled when a
+ * single instance serves the database.
+ */
+@Component
+public class InventoryLedger {
+
+	private Logger log = LogManager.getLogger(InventoryLedger.class);
+
+	@Autowired
+	private ProductRespository productRepository;
+
+	@Autowired
+	private StockMovementRepository stockMovementRepository;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@Value("${vending.inventory.ledger.enabled:false}")
+	private boolean enabled;
+
+	@Value("${vending.inventory.ledger.product-ids:}")
+	private Set<Long> productIds;
+
+	@Value("${vending.inventory.ledger.stripes:64}")
+	private int stripeCount;
+
+	@Value("${vending.inventory.ledger.flush-batch-size:1000}")
+	private int flushBatchSize;
+
+	private final Map<Long, AtomicInteger> stocks = new ConcurrentHashMap<>();
+
+	private ReentrantLock[] stripes;
+
+	// Two flushes reading the same movements would apply them twice
+	private final ReentrantLock flushLock = new ReentrantLock();
+
+	private TransactionTemplate transactionTemplate;
+
+	@PostConstruct
+	void init() {
+		stripes = new ReentrantLock[stripeCount];
+		for (int i = 0; i < stripeCount; i++) {
+			stripes[i] = new ReentrantLock();
+		}
+
+		transactionTemplate = new TransactionTemplate(transactionManager);
+
+		if (enabled) {
+			// Apply whatever was journaled but not flushed before the last shutdown
+			flush();
+		}
+	}
+
+	/**
+	 * Check if the stock of the given product is held by the ledger
+	 * 
+	 * @param productId
+	 * @return
+	 */
+	public boolean isTracked(Long productId) {
+		return enabled && (productIds.isEmpty() || productIds.contains(productId));
+	}
+
+	/**
+	 * Current stock of a tracked product, null if the product is not loaded in the
+	 * ledger
+	 * 
+	 * @param productId
+	 * @return
+	 */
+	public Integer available(Long productId) {
+		AtomicInteger stock = stocks.get(productId);
+		return stock != null ? stock.get() : null;
+	}
+
+	/**
+	 * Reserve stock for a purchase. Must run inside the purchase transaction, the
+	 * reservation is released if that transaction rolls back.
+	 * 
+	 * @param productId
+	 * @param amount
+	 * @return the stock left, or -1 if there is not enough stock
+	 */
+	public int take(Long productId, int amount) {
+		requireTransaction();
+
+		int left;
+
+		ReentrantLock lock = stripe(productId);
+		lock.lock();
+		try {
+			AtomicInteger stock = load(productId);
+			if (stock.get() < amount) {
+				return -1;
+			}
+			left = stock.addAndGet(-amount);
+		} finally {
+			lock.unlock();
+		}
+
+		onRollback(() -> add(productId, amount));
+		stockMovementRepository.save(new StockMovement(null, productId, -amount));
+
+		return left;
+	}
+
+	/**
+	 * Set the stock of a product to the given amount. Must run inside the
+	 * transaction that updates the product.
+	 * 
+	 * @param productId
+	 * @param amount
+	 * @return the stock after the update
+	 */
+	public int restock(Long productId, int amount) {
+		requireTransaction();
+
+		int delta;
+
+		ReentrantLock lock = stripe(productId);
+		lock.lock();
+		try {
+			AtomicInteger stock = load(productId);
+			delta = amount - stock.get();
+			stock.addAndGet(delta);
+		} finally {
+			lock.unlock();
+		}
+
+		if (delta != 0) {
+			int applied = delta;
+			onRollback(() -> add(productId, -applied));
+			productRepository.addAmountAvailable(productId, delta);
+		}
+
+		return amount;
+	}
+
+	/**
+	 * Add the given quantity to the stock of a product, negative to take stock
+	 * out. Must run inside the transaction that updates the product.
+	 *
+	 * @param productId
+	 * @param quantity
+	 * @return the stock after the update, or -1 if it would drop below 0
+	 */
+	public int restockBy(Long productId, int quantity) {
+		requireTransaction();
+
+		int left;
+
+		ReentrantLock lock = stripe(productId);
+		lock.lock();
+		try {
+			AtomicInteger stock = load(productId);
+			if (stock.get() + (long) quantity < 0) {
+				return -1;
+			}
+			left = stock.addAndGet(quantity);
+		} finally {
+			lock.unlock();
+		}
+
+		if (quantity != 0) {
+			onRollback(() -> add(productId, -quantity));
+			productRepository.addAmountAvailable(productId, quantity);
+		}
+
+		return left;
+	}
+
+	/**
+	 * Drop a deleted product from the ledger and from the journal
+	 * 
+	 * @param productId
+	 */
+	public void forget(Long productId) {
+		ReentrantLock lock = stripe(productId);
+		lock.lock();
+		try {
+			stocks.remove(productId);
+			stockMovementRepository.deleteByProductId(productId);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Apply the journaled stock movements to the product rows
+	 */
+	@Scheduled(fixedDelayString = "${vending.inventory.ledger.flush-interval-ms:500}")
+	public void flush() {
+		if (!enabled) {
+			return;
+		}
+
+		flushLock.lock();
+		try {
+			Integer flushed;
+			do {
+				flushed = transactionTemplate.execute(status -> flushBatch());
+			} while (flushed != null && flushed == flushBatchSize);
+		} finally {
+			flushLock.unlock();
+		}
+	}
+
+	private int flushBatch() {
+		List<StockMovement> movements = stockMovementRepository.findByOrderByIdAsc(PageRequest.of(0, flushBatchSize));
+
+		if (movements.isEmpty()) {
+			return 0;
+		}
+
+		// Sorted by product id so concurrent writers always lock rows in the same order
+		Map<Long, Integer> deltas = new TreeMap<>();
+		List<Long> ids = new ArrayList<>(movements.size());
+
+		for (StockMovement movement : movements) {
+			deltas.merge(movement.getProductId(), movement.getQuantity(), Integer::sum);
+			ids.add(movement.getId());
+		}
+
+		deltas.forEach((productId, delta) -> {
+			if (delta != 0) {
+				productRepository.addAmountAvailable(productId, delta);
+			}
+		});
+		stockMovementRepository.deleteAllByIdInBatch(ids);
+
+		log.debug("Flushed {} stock movements for {} products", movements.size(), deltas.size());
+
+		return movements.size();
+	}
+
+	/**
+	 * Load the counter of a product, caller must hold the product stripe lock.
+	 * The stored stock is corrected with the movements that are not flushed yet.
+	 */
+	private AtomicInteger load(Long productId) {
+		AtomicInteger stock = stocks.get(productId);
+
+		if (stock == null) {
+			long stored = stockMovementRepository.findStockWithPendingByProductId(productId)
+					.orElseThrow(() -> new ResourceNotFoundException("Could not find product with id: " + productId));
+
+			stock = new AtomicInteger((int) stored);
+			stocks.put(productId, stock);
+		}
+
+		return stock;
+	}
+
+	private void add(Long productId, int quantity) {
+		ReentrantLock lock = stripe(productId);
+		lock.lock();
+		try {
+			AtomicInteger stock = stocks.get(productId);
+			if (stock != null) {
+				stock.addAndGet(quantity);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private ReentrantLock stripe(Long productId) {
+		return stripes[Math.floorMod(productId.hashCode(), stripes.length)];
+	}
+
+	private void requireTransaction() {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			throw new IllegalStateException("Inventory ledger updates must run inside a transaction");
+		}
+	}
+
+	private void onRollback(Runnable compensation) {
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+			@Override
+			public void afterCompletion(int status) {
+				if (status != STATUS_COMMITTED) {
+					compensation.run();
+				}
+			}
+		});
+	}
+}
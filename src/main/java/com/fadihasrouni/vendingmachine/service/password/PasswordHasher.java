@@ -0,0 +1,238 @@
+package com.fadihasrouni.vendingmachine.service.password;
+
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import com.fadihasrouni.vendingmachine.exception.ServiceUnavailableException;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * BCrypt hashing and verification on a small dedicated pool, so a burst of
+ * logins or registrations uses at most that many cores and request threads
+ * serving the catalog and purchases keep theirs. The queue is bounded, a
+ * request arriving while it is full is rejected at once with a 503 instead
+ * of waiting behind the burst.
+ *
+ * Unless a strength is configured, the cost is calibrated on startup to the
+ * largest one hashing within the target time on this host. Hashes stored with
+ * a lower cost are upgraded on the next successful login, never downgraded.
+ * Instances calibrating on different hosts may pick different costs, so the
+ * strength should be set when several instances serve the database.
+ */
+@Component
+public class PasswordHasher implements PasswordEncoder, MeterBinder {
+
+	private static final int CALIBRATION_SAMPLES = 5;
+
+	private static final Pattern BCRYPT_COST = Pattern.compile("\\A\\$2[aby]?\\$(\\d\\d)\\$");
+
+	private Logger log = LogManager.getLogger(PasswordHasher.class);
+
+	private final ThreadPoolExecutor executor;
+
+	private final long waitMillis;
+
+	private final int configuredStrength;
+
+	private final long targetMillis;
+
+	private final int minStrength;
+
+	private final int maxStrength;
+
+	private Timer encodeTimer;
+
+	private Timer matchesTimer;
+
+	private BCryptPasswordEncoder encoder;
+
+	private int strength;
+
+	/**
+	 * @param threads      hashing threads
+	 * @param queueSize    hashes waiting for a thread before new ones are rejected
+	 * @param waitMillis   longest time a request waits for its hash
+	 * @param strength     the BCrypt cost, calibrated when 0
+	 * @param targetMillis the time a hash should take when calibrated
+	 * @param minStrength  the lowest calibrated cost
+	 * @param maxStrength  the highest calibrated cost
+	 */
+	@Autowired
+	public PasswordHasher(@Value("${vending.password.threads:2}") int threads,
+			@Value("${vending.password.queue-size:100}") int queueSize,
+			@Value("${vending.password.wait-ms:5000}") long waitMillis,
+			@Value("${vending.password.strength:0}") int strength,
+			@Value("${vending.password.target-ms:100}") long targetMillis,
+			@Value("${vending.password.min-strength:10}") int minStrength,
+			@Value("${vending.password.max-strength:14}") int maxStrength) {
+		if (minStrength < 4 || maxStrength > 31 || minStrength > maxStrength) {
+			throw new IllegalArgumentException("The password strengths should be between 4 and 31");
+		}
+		this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(queueSize), new CustomizableThreadFactory("password-"),
+				new ThreadPoolExecutor.AbortPolicy());
+		this.waitMillis = waitMillis;
+		this.configuredStrength = strength;
+		this.targetMillis = targetMillis;
+		this.minStrength = minStrength;
+		this.maxStrength = maxStrength;
+
+		// Recorded locally until bound to the application registry
+		bindTimers(new SimpleMeterRegistry());
+	}
+
+	@PostConstruct
+	void start() {
+		strength = configuredStrength > 0 ? configuredStrength : calibrate();
+		encoder = new BCryptPasswordEncoder(strength);
+		log.info("Hashing passwords with BCrypt strength {}", strength);
+	}
+
+	@PreDestroy
+	void stop() {
+		executor.shutdownNow();
+	}
+
+	@Override
+	public String encode(CharSequence rawPassword) {
+		return run(encodeTimer, () -> encoder.encode(rawPassword));
+	}
+
+	@Override
+	public boolean matches(CharSequence rawPassword, String encodedPassword) {
+		// The cost comes from the stored hash, any strength verifies it
+		return run(matchesTimer, () -> encoder.matches(rawPassword, encodedPassword));
+	}
+
+	/**
+	 * Hashes stored with a lower cost than the current one are rehashed on the
+	 * next login
+	 */
+	@Override
+	public boolean upgradeEncoding(String encodedPassword) {
+		Integer cost = cost(encodedPassword);
+		return cost != null && cost < strength;
+	}
+
+	/**
+	 * The current BCrypt cost
+	 *
+	 * @return
+	 */
+	public int strength() {
+		return strength;
+	}
+
+	/**
+	 * Publish the pool usage, queue depth, hashing time and current cost
+	 */
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		new ExecutorServiceMetrics(executor, "password", Tags.empty()).bindTo(registry);
+		bindTimers(registry);
+		Gauge.builder("vending.password.strength", this, PasswordHasher::strength)
+				.description("BCrypt cost of new password hashes")
+				.register(registry);
+	}
+
+	/**
+	 * Each cost step doubles the hashing time, so the cost is derived from the
+	 * median time of a few hashes at the lowest cost
+	 */
+	int calibrate() {
+		// Warm up the JIT first, a cold hash takes several times longer
+		BCryptPasswordEncoder lowest = new BCryptPasswordEncoder(minStrength);
+		lowest.encode("calibration");
+
+		long[] samples = new long[CALIBRATION_SAMPLES];
+		for (int i = 0; i < samples.length; i++) {
+			long start = System.nanoTime();
+			lowest.encode("calibration");
+			samples[i] = System.nanoTime() - start;
+		}
+		Arrays.sort(samples);
+		long elapsedMillis = Math.max(TimeUnit.NANOSECONDS.toMillis(samples[samples.length / 2]), 1);
+
+		int cost = minStrength;
+		while (cost < maxStrength && elapsedMillis * 2 <= targetMillis) {
+			elapsedMillis *= 2;
+			cost++;
+		}
+		return cost;
+	}
+
+	// Package-private for tests filling the pool
+	<T> T run(Timer timer, Callable<T> task) {
+		Future<T> result;
+		try {
+			result = executor.submit(() -> timer.recordCallable(task));
+		} catch (RejectedExecutionException ex) {
+			throw new ServiceUnavailableException("Too many password requests! Please try again.");
+		}
+
+		try {
+			return result.get(waitMillis, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException ex) {
+			result.cancel(true);
+			throw new ServiceUnavailableException("Too many password requests! Please try again.");
+		} catch (InterruptedException ex) {
+			result.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new ServiceUnavailableException("Interrupted while waiting for the password hash");
+		} catch (ExecutionException ex) {
+			if (ex.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) ex.getCause();
+			}
+			if (ex.getCause() instanceof Error) {
+				throw (Error) ex.getCause();
+			}
+			throw new IllegalStateException(ex.getCause());
+		}
+	}
+
+	// Package-private for tests filling the pool
+	int queued() {
+		return executor.getQueue().size();
+	}
+
+	private void bindTimers(MeterRegistry registry) {
+		encodeTimer = Timer.builder("vending.password.hash").tag("operation", "encode").register(registry);
+		matchesTimer = Timer.builder("vending.password.hash").tag("operation", "matches").register(registry);
+	}
+
+	private static Integer cost(String encodedPassword) {
+		if (encodedPassword == null) {
+			return null;
+		}
+		Matcher matcher = BCRYPT_COST.matcher(encodedPassword);
+		return matcher.find() ? Integer.valueOf(matcher.group(1)) : null;
+	}
+}
@@ -0,0 +1,341 @@
+package com.fadihasrouni.vendingmachine.service.wallet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fadihasrouni.vendingmachine.exception.ForbiddenException;
+import com.fadihasrouni.vendingmachine.exception.ResourceNotFoundException;
+import com.fadihasrouni.vendingmachine.model.User;
+import com.fadihasrouni.vendingmachine.model.type.UserRole;
+import com.fadihasrouni.vendingmachine.repository.UserRepository;
+
+/**
+ * In-memory buyer balances with group committed persistence.
+ * 
+ * Balances are changed with atomic operations on a per user counter. Every
+ * change is then handed to a single committer thread, which writes the latest
+ * balance of all users changed within a commit window in one transaction. The
+ * caller waits until its change is committed, so an acknowledged deposit is
+ * durable while concurrent deposits share a commit.
+ * 
+ * The committer is the only writer of the deposit column while the wallet is
+ * enabled. A purchase commits its stock change first and its balance change
+ * with the next group commit, a crash in between loses that balance change.
+ * A failed group commit keeps the accounts, a deposit or reset waiting on it
+ * undoes its own change and fails, and the balances are written again by the
+ * next batch.
+ * The balances live in this process, the wallet must only be enabled when a
+ * single instance serves the database.
+ */
+@Component
+public class DepositWallet {
+
+	private Logger log = LogManager.getLogger(DepositWallet.class);
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@Value("${vending.wallet.enabled:false}")
+	private boolean enabled;
+
+	@Value("${vending.wallet.commit-window-ms:5}")
+	private long commitWindowMs;
+
+	@Value("${vending.wallet.commit-batch-size:500}")
+	private int commitBatchSize;
+
+	@Value("${vending.wallet.commit-timeout-ms:5000}")
+	private long commitTimeoutMs;
+
+	private final Map<Long, Account> accounts = new ConcurrentHashMap<>();
+
+	private final BlockingQueue<PendingCommit> pendingCommits = new LinkedBlockingQueue<>();
+
+	// Users whose balance a failed batch did not write, retried with the next one
+	private final Set<Long> unsavedUserIds = ConcurrentHashMap.newKeySet();
+
+	private TransactionTemplate transactionTemplate;
+
+	private Thread committer;
+
+	private volatile boolean running;
+
+	@PostConstruct
+	void start() {
+		transactionTemplate = new TransactionTemplate(transactionManager);
+
+		if (enabled) {
+			running = true;
+			committer = new Thread(this::runCommitter, "wallet-committer");
+			committer.setDaemon(true);
+			committer.start();
+		}
+	}
+
+	@PreDestroy
+	void stop() throws InterruptedException {
+		running = false;
+		if (committer != null) {
+			committer.interrupt();
+			committer.join(commitTimeoutMs);
+		}
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Add a coin to the buyer balance and wait until it is committed
+	 * 
+	 * @param userId
+	 * @param coin
+	 * @return the balance after the deposit
+	 */
+	public int deposit(Long userId, int coin) {
+		AtomicInteger balance = account(userId).balance;
+		int after = balance.addAndGet(coin);
+
+		try {
+			commit(userId);
+		} catch (IllegalStateException ex) {
+			// The coin is refused, unless a purchase already spent it
+			balance.updateAndGet(current -> Math.max(current - coin, 0));
+			unsavedUserIds.add(userId);
+			throw ex;
+		}
+
+		return after;
+	}
+
+	/**
+	 * Take the given amount out of the buyer balance. Must run inside the
+	 * purchase transaction, the amount is given back if it rolls back and
+	 * committed with the next group commit once it commits.
+	 * 
+	 * @param userId
+	 * @param amount
+	 * @return the balance left, or -1 if the balance is too low
+	 */
+	public int withdraw(Long userId, int amount) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			throw new IllegalStateException("Wallet withdrawals must run inside a transaction");
+		}
+
+		AtomicInteger balance = account(userId).balance;
+
+		int current;
+		do {
+			current = balance.get();
+			if (current < amount) {
+				return -1;
+			}
+		} while (!balance.compareAndSet(current, current - amount));
+
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+			@Override
+			public void afterCommit() {
+				// The purchase is done, a failed commit leaves the balance to the next batch
+				try {
+					commit(userId);
+				} catch (IllegalStateException ex) {
+					log.warn("Withdrawal of user {} is not saved yet", userId, ex);
+				}
+			}
+
+			@Override
+			public void afterCompletion(int status) {
+				if (status != STATUS_COMMITTED) {
+					balance.addAndGet(amount);
+				}
+			}
+		});
+
+		return current - amount;
+	}
+
+	/**
+	 * Set the buyer balance to 0 and wait until it is committed
+	 * 
+	 * @param userId
+	 * @return the balance before the reset
+	 */
+	public int reset(Long userId) {
+		AtomicInteger balance = account(userId).balance;
+		int previous = balance.getAndSet(0);
+
+		try {
+			commit(userId);
+		} catch (IllegalStateException ex) {
+			balance.addAndGet(previous);
+			unsavedUserIds.add(userId);
+			throw ex;
+		}
+
+		return previous;
+	}
+
+	/**
+	 * Drop the in-memory balance of a user, the next access reloads it
+	 * 
+	 * @param userId
+	 */
+	public void evict(Long userId) {
+		accounts.remove(userId);
+	}
+
+	/**
+	 * Get the account of a buyer, loading it from the stored user on first access
+	 */
+	private Account account(Long userId) {
+		Account account = accounts.computeIfAbsent(userId, id -> {
+			User user = userRepository.findById(id)
+					.orElseThrow(() -> new ResourceNotFoundException("No user exists with id: " + id));
+			return new Account(user.getDeposit() != null ? user.getDeposit() : 0, user.getUserRole());
+		});
+
+		if (!UserRole.BUYER.equals(account.userRole)) {
+			throw new ForbiddenException("Operation not permitted! Only buyers can perform operation");
+		}
+
+		return account;
+	}
+
+	/**
+	 * Queue the user balance for the next group commit and wait for it
+	 */
+	private void commit(Long userId) {
+		PendingCommit pending = new PendingCommit(userId);
+		pendingCommits.add(pending);
+
+		try {
+			pending.done.get(commitTimeoutMs, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for the deposit to be saved", ex);
+		} catch (ExecutionException | TimeoutException ex) {
+			throw new IllegalStateException("Could not save the deposit", ex);
+		}
+	}
+
+	private void runCommitter() {
+		List<PendingCommit> batch = new ArrayList<>(commitBatchSize);
+
+		while (running) {
+			try {
+				PendingCommit first = pendingCommits.poll(100, TimeUnit.MILLISECONDS);
+				if (first == null) {
+					if (!unsavedUserIds.isEmpty()) {
+						commitBatch(batch);
+					}
+					continue;
+				}
+
+				batch.add(first);
+				long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(commitWindowMs);
+
+				while (batch.size() < commitBatchSize) {
+					PendingCommit next = pendingCommits.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+					if (next == null) {
+						break;
+					}
+					batch.add(next);
+				}
+
+				commitBatch(batch);
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			} finally {
+				batch.clear();
+			}
+		}
+
+		// Last try for the balances of failed batches
+		if (!unsavedUserIds.isEmpty()) {
+			commitBatch(batch);
+		}
+
+		// Anything still queued was never written
+		PendingCommit pending;
+		while ((pending = pendingCommits.poll()) != null) {
+			pending.done.completeExceptionally(new IllegalStateException("Wallet is shutting down"));
+		}
+	}
+
+	private void commitBatch(List<PendingCommit> batch) {
+		// Sorted by user id so concurrent writers always lock rows in the same order
+		Set<Long> userIds = new TreeSet<>(unsavedUserIds);
+		for (PendingCommit pending : batch) {
+			userIds.add(pending.userId);
+		}
+		unsavedUserIds.removeAll(userIds);
+
+		try {
+			transactionTemplate.execute(status -> {
+				for (Long userId : userIds) {
+					Account account = accounts.get(userId);
+					if (account != null) {
+						// Always the latest balance, later changes are committed by a later batch
+						userRepository.updateDeposit(userId, account.balance.get());
+					}
+				}
+				return null;
+			});
+		} catch (RuntimeException ex) {
+			log.error("Could not commit {} wallet balances", userIds.size(), ex);
+
+			// The accounts stay, concurrent operations may still hold them
+			unsavedUserIds.addAll(userIds);
+			batch.forEach(pending -> pending.done.completeExceptionally(ex));
+			return;
+		}
+
+		batch.forEach(pending -> pending.done.complete(null));
+	}
+
+	private static class Account {
+		private final AtomicInteger balance;
+		private final UserRole userRole;
+
+		private Account(int balance, UserRole userRole) {
+			this.balance = new AtomicInteger(balance);
+			this.userRole = userRole;
+		}
+	}
+
+	private static class PendingCommit {
+		private final Long userId;
+		private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+		private PendingCommit(Long userId) {
+			this.userId = userId;
+		}
+	}
+}
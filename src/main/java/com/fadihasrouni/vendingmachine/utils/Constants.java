@@ -7,4 +7,22 @@ public class Constants {
 	public static final String TOKEN_PREFIX = "Bearer ";
 	public static final String HEADER_STRING = "Authorization";
 	public static final long EXPIRATION_TIME = 86400000; // 24 hours
+	public static final String CLAIM_ID = "id";
+	public static final String CLAIM_USERNAME = "username";
+	public static final String CLAIM_ROLE = "role";
+	public static final String RETRY_MAX_ATTEMPTS = "${vending.retry.max-attempts:5}";
+	public static final String RETRY_DELAY_MS = "${vending.retry.delay-ms:10}";
+	public static final String RETRY_MAX_DELAY_MS = "${vending.retry.max-delay-ms:200}";
+	public static final String RETRY_MULTIPLIER = "${vending.retry.multiplier:2}";
+	public static final int PRODUCT_PAGE_DEFAULT_LIMIT = 50;
+	public static final int PRODUCT_PAGE_MAX_LIMIT = 500;
+	public static final int PRODUCT_EXPORT_PAGE_SIZE = 1000;
+	public static final String NDJSON_MEDIA_TYPE = "application/x-ndjson";
+	public static final String CSV_MEDIA_TYPE = "text/csv";
+	public static final int BUY_BATCH_MAX_ITEMS = 100;
+	public static final String TRACE_ID_HEADER = "X-Trace-Id";
+	public static final String TRACE_ID_MDC_KEY = "traceId";
+	public static final long DEFAULT_MACHINE_ID = 1L;
+	public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+	public static final int IDEMPOTENCY_KEY_MAX_LENGTH = 64;
 }
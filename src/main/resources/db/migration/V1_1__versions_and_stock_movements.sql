@@ -0,0 +1,17 @@
+-- Optimistic lock versions, existing rows start at version 0
+alter table user add column version bigint not null default 0;
+alter table product add column version bigint not null default 0;
+
+-- Journal of the stock taken and restocked by the inventory ledger
+create table stock_movement (
+	id bigint not null,
+	product_id bigint,
+	quantity integer,
+	primary key (id)
+);
+
+create table stock_movement_seq (next_val bigint);
+insert into stock_movement_seq (next_val) values (1);
+
+-- Seller catalog pages walk the ids of one seller
+create index idx_product_seller_id on product (seller_id, id);
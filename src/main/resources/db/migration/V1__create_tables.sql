@@ -0,0 +1,24 @@
+-- Schema created by ddl-auto=update for the baseline entities, existing databases are baselined at this version
+
+create table user (
+	id bigint not null,
+	deposit integer,
+	password varchar(255),
+	user_role varchar(255),
+	username varchar(255),
+	primary key (id),
+	constraint uk_user_username unique (username)
+);
+
+create table product (
+	id bigint not null,
+	amount_available integer,
+	cost integer,
+	product_name varchar(255),
+	seller_id bigint,
+	primary key (id),
+	constraint fk_product_seller foreign key (seller_id) references user (id)
+);
+
+create table hibernate_sequence (next_val bigint);
+insert into hibernate_sequence (next_val) values (1);
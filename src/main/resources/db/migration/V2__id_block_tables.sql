@@ -0,0 +1,18 @@
+-- Id block tables of the pooled generators, moved past the ids already stored
+
+create table if not exists product_seq (next_val bigint);
+create table if not exists user_seq (next_val bigint);
+create table if not exists stock_movement_seq (next_val bigint);
+
+insert into product_seq (next_val) select 1 from dual where not exists (select 1 from product_seq);
+insert into user_seq (next_val) select 1 from dual where not exists (select 1 from user_seq);
+insert into stock_movement_seq (next_val) select 1 from dual where not exists (select 1 from stock_movement_seq);
+
+update product_seq set next_val = (select coalesce(max(id), 0) + 1 from product)
+	where next_val <= (select coalesce(max(id), 0) from product);
+update user_seq set next_val = (select coalesce(max(id), 0) + 1 from user)
+	where next_val <= (select coalesce(max(id), 0) from user);
+update stock_movement_seq set next_val = (select coalesce(max(id), 0) + 1 from stock_movement)
+	where next_val <= (select coalesce(max(id), 0) from stock_movement);
+
+drop table if exists hibernate_sequence;
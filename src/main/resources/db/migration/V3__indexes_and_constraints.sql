@@ -0,0 +1,10 @@
+-- Seller catalog pages filter on the stock while walking the ids of one seller,
+-- the index also backs the seller foreign key
+create index idx_product_seller_stock on product (seller_id, id, amount_available);
+drop index idx_product_seller_id on product;
+
+-- Ledger replays and deletes look up the movements of one product
+create index idx_stock_movement_product_id on stock_movement (product_id);
+
+alter table product add constraint chk_product_amount_available check (amount_available >= 0);
+alter table user add constraint chk_user_deposit check (deposit >= 0);
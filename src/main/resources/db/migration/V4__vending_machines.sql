@@ -0,0 +1,41 @@
+-- Machines with their own stock and buyer sessions, keyed by machine first so
+-- each machine reads and locks its own range of rows
+
+create table vending_machine (
+	id bigint not null,
+	name varchar(255),
+	version bigint not null,
+	primary key (id)
+);
+
+create table vending_machine_seq (next_val bigint);
+
+-- The default machine keeps the product stock and user deposit
+insert into vending_machine (id, name, version) values (1, 'default', 0);
+insert into vending_machine_seq (next_val) values (2);
+
+create table machine_slot (
+	machine_id bigint not null,
+	product_id bigint not null,
+	amount_available integer,
+	version bigint,
+	primary key (machine_id, product_id),
+	constraint fk_machine_slot_machine foreign key (machine_id) references vending_machine (id),
+	constraint fk_machine_slot_product foreign key (product_id) references product (id),
+	constraint chk_machine_slot_amount_available check (amount_available >= 0)
+);
+
+create index idx_machine_slot_product_id on machine_slot (product_id);
+
+create table machine_session (
+	machine_id bigint not null,
+	user_id bigint not null,
+	deposit integer,
+	version bigint,
+	primary key (machine_id, user_id),
+	constraint fk_machine_session_machine foreign key (machine_id) references vending_machine (id),
+	constraint fk_machine_session_user foreign key (user_id) references user (id),
+	constraint chk_machine_session_deposit check (deposit >= 0)
+);
+
+create index idx_machine_session_user_id on machine_session (user_id);
@@ -0,0 +1,11 @@
+-- Responses replayed to retried requests, purged by expiry
+
+create table idempotency_record (
+	idempotency_key varchar(100) not null,
+	fingerprint varchar(32),
+	response longtext,
+	expires_at bigint not null,
+	primary key (idempotency_key)
+);
+
+create index idx_idempotency_record_expires_at on idempotency_record (expires_at);
@@ -0,0 +1,13 @@
+-- Stock held for buyers, the held units are already taken out of the product
+
+create table stock_hold (
+	id bigint not null,
+	product_id bigint,
+	user_id bigint,
+	amount integer,
+	expires_at bigint not null,
+	primary key (id)
+);
+
+create table stock_hold_seq (next_val bigint);
+insert into stock_hold_seq (next_val) values (1);
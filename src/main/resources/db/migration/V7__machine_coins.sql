@@ -0,0 +1,12 @@
+-- Coins held by each machine per denomination, the coin float is loaded from
+-- them on startup and they are updated with every deposit and reset
+
+create table machine_coin (
+	machine_id bigint not null,
+	coin integer not null,
+	quantity integer,
+	version bigint,
+	primary key (machine_id, coin),
+	constraint fk_machine_coin_machine foreign key (machine_id) references vending_machine (id),
+	constraint chk_machine_coin_quantity check (quantity >= 0)
+);
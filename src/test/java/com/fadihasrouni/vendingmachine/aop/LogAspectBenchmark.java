@@ -0,0 +1,63 @@
+package com.fadihasrouni.vendingmachine.aop;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.fadihasrouni.vendingmachine.controller.response.ProductPageResponse;
+import com.fadihasrouni.vendingmachine.service.ProductCatalogBenchmark;
+import com.fadihasrouni.vendingmachine.service.ProductService;
+
+/**
+ * Cost of the tracing advice around a service call, the same call made on
+ * the plain service and on the advised proxy at several sample rates
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LogAspectBenchmark {
+
+	@Param({ "0", "0.01", "1" })
+	private double sampleRate;
+
+	private ProductService productService;
+
+	private ProductService loggedProductService;
+
+	@Setup
+	public void setup() {
+		productService = ProductCatalogBenchmark.newProductService(10);
+
+		AspectJProxyFactory proxyFactory = new AspectJProxyFactory(productService);
+		proxyFactory.setProxyTargetClass(true);
+		LogAspect logAspect = new LogAspect();
+		ReflectionTestUtils.setField(logAspect, "sampleRate", sampleRate);
+		proxyFactory.addAspect(logAspect);
+		loggedProductService = proxyFactory.getProxy();
+	}
+
+	@Benchmark
+	public ProductPageResponse direct() {
+		return productService.findProductsPage(null, 10, null, false);
+	}
+
+	@Benchmark
+	public ProductPageResponse logged() {
+		return loggedProductService.findProductsPage(null, 10, null, false);
+	}
+}
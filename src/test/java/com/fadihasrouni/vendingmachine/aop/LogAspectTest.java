@@ -0,0 +1,112 @@
+package com.fadihasrouni.vendingmachine.aop;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.slf4j.LoggerFactory;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.fadihasrouni.vendingmachine.controller.request.LoginRequest;
+import com.fadihasrouni.vendingmachine.controller.response.UserResponse;
+import com.fadihasrouni.vendingmachine.model.User;
+import com.fadihasrouni.vendingmachine.model.type.UserRole;
+import com.fadihasrouni.vendingmachine.repository.ProductRespository;
+import com.fadihasrouni.vendingmachine.service.ProductService;
+import com.fadihasrouni.vendingmachine.service.inventory.InventoryLedger;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+
+public class LogAspectTest {
+
+	private Logger traceLogger = (Logger) LoggerFactory.getLogger("trace");
+
+	private ListAppender<ILoggingEvent> appender = new ListAppender<>();
+
+	private LogAspect logAspect = new LogAspect();
+
+	private ProductService productService;
+
+	@BeforeEach
+	void setup() {
+		appender.start();
+		traceLogger.addAppender(appender);
+		traceLogger.setLevel(Level.DEBUG);
+
+		ProductRespository productRepository = Mockito.mock(ProductRespository.class);
+		Mockito.when(productRepository.findPage(Mockito.anyLong(), Mockito.anyInt(), Mockito.any(Pageable.class)))
+				.thenReturn(new ArrayList<>());
+
+		ProductService target = new ProductService();
+		ReflectionTestUtils.setField(target, "productRepository", productRepository);
+		ReflectionTestUtils.setField(target, "inventoryLedger", new InventoryLedger());
+
+		AspectJProxyFactory proxyFactory = new AspectJProxyFactory(target);
+		proxyFactory.setProxyTargetClass(true);
+		proxyFactory.addAspect(logAspect);
+		productService = proxyFactory.getProxy();
+	}
+
+	@AfterEach
+	void cleanup() {
+		traceLogger.detachAppender(appender);
+		traceLogger.setLevel(null);
+	}
+
+	@Test
+	void traceSampledCall() {
+		ReflectionTestUtils.setField(logAspect, "sampleRate", 1.0);
+
+		productService.findProductsPage(null, 10, null, false);
+
+		assertEquals(1, appender.list.size());
+		assertEquals("trace." + ProductService.class.getName(), appender.list.get(0).getLoggerName());
+		assertTrue(appender.list.get(0).getFormattedMessage().contains("ProductService.findProductsPage(..)"));
+	}
+
+	@Test
+	void skipUnsampledCall() {
+		ReflectionTestUtils.setField(logAspect, "sampleRate", 0.0);
+
+		productService.findProductsPage(null, 10, null, false);
+
+		assertEquals(0, appender.list.size());
+	}
+
+	@Test
+	void skipDisabledLevel() {
+		ReflectionTestUtils.setField(logAspect, "sampleRate", 1.0);
+		traceLogger.setLevel(Level.INFO);
+
+		productService.findProductsPage(null, 10, null, false);
+
+		assertEquals(0, appender.list.size());
+	}
+
+	@Test
+	void redactSensitiveFields() {
+		UserResponse userResponse = new UserResponse();
+		userResponse.setUsername("fadi.hasrouni");
+		userResponse.setPassword("hash");
+		userResponse.setUserRole(UserRole.BUYER);
+
+		LoginRequest loginRequest = new LoginRequest();
+		loginRequest.setUsername("fadi.hasrouni");
+		loginRequest.setPassword("secret");
+
+		assertFalse(userResponse.toString().contains("hash"));
+		assertFalse(loginRequest.toString().contains("secret"));
+		assertFalse(new User(1L, "fadi.hasrouni", "hash", 0, UserRole.BUYER, 0L).toString().contains("hash"));
+	}
+}
@@ -0,0 +1,104 @@
+package com.fadihasrouni.vendingmachine.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Prints the JMH results of the current run next to the stored baseline.
+ * 
+ * Usage: BenchmarkComparison <baseline.json> <result.json>
+ * 
+ * To refresh the baseline copy the result of a run on the reference machine
+ * over benchmarks/baseline.json and commit it.
+ */
+public class BenchmarkComparison {
+
+	private static final String ALLOCATION_METRIC = "gc.alloc.rate.norm";
+
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			System.err.println("Usage: BenchmarkComparison <baseline.json> <result.json>");
+			System.exit(1);
+		}
+
+		File baselineFile = new File(args[0]);
+		File resultFile = new File(args[1]);
+
+		if (!resultFile.exists()) {
+			System.out.println("No benchmark result at " + resultFile);
+			return;
+		}
+		if (!baselineFile.exists()) {
+			System.out.println("No baseline at " + baselineFile + ", copy " + resultFile + " there to create one");
+			return;
+		}
+
+		ObjectMapper objectMapper = new ObjectMapper();
+		Map<String, JsonNode> baseline = index(objectMapper.readTree(baselineFile));
+		Map<String, JsonNode> result = index(objectMapper.readTree(resultFile));
+
+		System.out.println(String.format("%-80s %14s %14s %8s %12s %12s", "Benchmark", "Baseline", "Current",
+				"Delta", "B/op base", "B/op now"));
+
+		for (Entry<String, JsonNode> entry : result.entrySet()) {
+			JsonNode current = entry.getValue();
+			JsonNode previous = baseline.get(entry.getKey());
+
+			double currentScore = current.path("primaryMetric").path("score").asDouble();
+			String unit = current.path("primaryMetric").path("scoreUnit").asText();
+
+			if (previous == null) {
+				System.out.println(String.format("%-80s %14s %14.2f %8s %12s %12.1f  %s", entry.getKey(), "-",
+						currentScore, "new", "-", allocation(current), unit));
+				continue;
+			}
+
+			double previousScore = previous.path("primaryMetric").path("score").asDouble();
+			double delta = previousScore == 0 ? 0 : (currentScore - previousScore) * 100 / previousScore;
+
+			System.out.println(String.format("%-80s %14.2f %14.2f %+7.1f%% %12.1f %12.1f  %s", entry.getKey(),
+					previousScore, currentScore, delta, allocation(previous), allocation(current), unit));
+		}
+	}
+
+	/**
+	 * Results keyed by benchmark name and parameters
+	 */
+	private static Map<String, JsonNode> index(JsonNode results) {
+		Map<String, JsonNode> indexed = new LinkedHashMap<>();
+
+		for (JsonNode result : results) {
+			StringBuilder key = new StringBuilder(result.path("benchmark").asText());
+			Iterator<Entry<String, JsonNode>> params = result.path("params").fields();
+			while (params.hasNext()) {
+				Entry<String, JsonNode> param = params.next();
+				key.append(' ').append(param.getKey()).append('=').append(param.getValue().asText());
+			}
+			indexed.put(key.toString(), result);
+		}
+
+		return indexed;
+	}
+
+	/**
+	 * Bytes allocated per operation, reported by the gc profiler
+	 */
+	private static double allocation(JsonNode result) {
+		Iterator<Entry<String, JsonNode>> metrics = result.path("secondaryMetrics").fields();
+		while (metrics.hasNext()) {
+			Entry<String, JsonNode> metric = metrics.next();
+			// Older JMH versions prefix the profiler metrics
+			if (metric.getKey().endsWith(ALLOCATION_METRIC)) {
+				return metric.getValue().path("score").asDouble();
+			}
+		}
+		return Double.NaN;
+	}
+}
@@ -0,0 +1,61 @@
+package com.fadihasrouni.vendingmachine.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.mock.env.MockEnvironment;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+public class DataSourcePoolConfigTest {
+
+	@Test
+	public void poolIsSizedFromCores() {
+		MockEnvironment environment = new MockEnvironment()
+				.withProperty(DataSourcePoolConfig.CONNECTIONS_PER_CORE, "2")
+				.withProperty(DataSourcePoolConfig.EXTRA_CONNECTIONS, "1");
+
+		HikariDataSource dataSource = size(environment);
+
+		assertEquals(Runtime.getRuntime().availableProcessors() * 2 + 1, dataSource.getMaximumPoolSize());
+		assertEquals(9, DataSourcePoolConfig.poolSize(4, 2, 1));
+	}
+
+	@Test
+	public void configuredPoolSizeIsKept() {
+		MockEnvironment environment = new MockEnvironment()
+				.withProperty(DataSourcePoolConfig.CONNECTIONS_PER_CORE, "2")
+				.withProperty(DataSourcePoolConfig.MAXIMUM_POOL_SIZE, "7");
+
+		assertEquals(new HikariDataSource().getMaximumPoolSize(), size(environment).getMaximumPoolSize());
+	}
+
+	@Test
+	public void poolIsNotSizedByDefault() {
+		assertEquals(new HikariDataSource().getMaximumPoolSize(), size(new MockEnvironment()).getMaximumPoolSize());
+	}
+
+	@Test
+	public void saturationIsTheShareOfConnectionsInUse() throws SQLException {
+		try (HikariDataSource dataSource = new HikariDataSource()) {
+			dataSource.setJdbcUrl("jdbc:h2:mem:pool_saturation");
+			dataSource.setMaximumPoolSize(4);
+
+			assertEquals(0, DataSourcePoolConfig.saturation(dataSource));
+
+			try (Connection connection = dataSource.getConnection()) {
+				assertEquals(0.25, DataSourcePoolConfig.saturation(dataSource));
+			}
+			assertEquals(0, DataSourcePoolConfig.saturation(dataSource));
+		}
+	}
+
+	private static HikariDataSource size(MockEnvironment environment) {
+		BeanPostProcessor sizer = DataSourcePoolConfig.dataSourcePoolSizer(environment);
+		return (HikariDataSource) sizer.postProcessAfterInitialization(new HikariDataSource(), "dataSource");
+	}
+}
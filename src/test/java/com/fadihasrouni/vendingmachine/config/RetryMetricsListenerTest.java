@@ -0,0 +1,89 @@
+package com.fadihasrouni.vendingmachine.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.retry.RetryContext;
+import org.springframework.retry.support.RetryTemplate;
+
+import com.fadihasrouni.vendingmachine.config.RetryMetricsListener.RetryCounters;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class RetryMetricsListenerTest {
+
+	private RetryMetricsListener listener;
+
+	private RetryTemplate retryTemplate;
+
+	@BeforeEach
+	public void setup() {
+		listener = new RetryMetricsListener();
+		retryTemplate = RetryTemplate.builder()
+				.maxAttempts(3)
+				.retryOn(OptimisticLockingFailureException.class)
+				.noBackoff()
+				.withListener(listener)
+				.build();
+	}
+
+	@Test
+	public void retriedConflictIsCounted() {
+		AtomicInteger attempts = new AtomicInteger();
+
+		retryTemplate.execute(context -> {
+			context.setAttribute(RetryContext.NAME, "buy");
+			if (attempts.incrementAndGet() < 3) {
+				throw new OptimisticLockingFailureException("conflict");
+			}
+			return null;
+		});
+
+		RetryCounters counters = listener.getCounters().get("buy");
+		assertEquals(2, counters.getConflicts());
+		assertEquals(2, counters.getRetries());
+		assertEquals(0, counters.getExhausted());
+	}
+
+	@Test
+	public void exhaustedRetriesAreCounted() {
+		assertThrows(OptimisticLockingFailureException.class, () -> retryTemplate.execute(context -> {
+			context.setAttribute(RetryContext.NAME, "deposit");
+			throw new OptimisticLockingFailureException("conflict");
+		}));
+
+		RetryCounters counters = listener.getCounters().get("deposit");
+		assertEquals(3, counters.getConflicts());
+		assertEquals(2, counters.getRetries());
+		assertEquals(1, counters.getExhausted());
+	}
+
+	@Test
+	public void countersArePublished() {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		listener.bindTo(registry);
+
+		assertThrows(OptimisticLockingFailureException.class, () -> retryTemplate.execute(context -> {
+			context.setAttribute(RetryContext.NAME, "buy");
+			throw new OptimisticLockingFailureException("conflict");
+		}));
+
+		assertEquals(3, registry.get("vending.retry.conflicts").tag("operation", "buy").functionCounter().count());
+		assertEquals(1, registry.get("vending.retry.exhausted").tag("operation", "buy").functionCounter().count());
+	}
+
+	@Test
+	public void successfulFirstAttemptIsNotCounted() {
+		retryTemplate.execute(context -> {
+			context.setAttribute(RetryContext.NAME, "resetDeposit");
+			return null;
+		});
+
+		assertEquals(0, listener.getCounters().size());
+	}
+}
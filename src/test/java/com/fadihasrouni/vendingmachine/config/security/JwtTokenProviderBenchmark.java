@@ -0,0 +1,68 @@
+package com.fadihasrouni.vendingmachine.config.security;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+
+import com.fadihasrouni.vendingmachine.controller.response.UserResponse;
+import com.fadihasrouni.vendingmachine.model.type.UserRole;
+
+/**
+ * Token issuing on login and token parsing on every authenticated request
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtTokenProviderBenchmark {
+
+	private JwtTokenProvider tokenProvider = new JwtTokenProvider();
+
+	private Authentication authentication;
+
+	private String token;
+
+	@Setup
+	public void setup() {
+		UserResponse user = new UserResponse();
+		user.setId(1L);
+		user.setUsername("fadi.hasrouni");
+		user.setUserRole(UserRole.BUYER);
+
+		authentication = new UsernamePasswordAuthenticationToken(user, null);
+		token = tokenProvider.generateToken(authentication);
+	}
+
+	@Benchmark
+	public String generateToken() {
+		return tokenProvider.generateToken(authentication);
+	}
+
+	@Benchmark
+	public boolean validateToken() {
+		return tokenProvider.validateToken(token);
+	}
+
+	@Benchmark
+	public Long getUserIdFromJWT() {
+		return tokenProvider.getUserIdFromJWT(token);
+	}
+
+	@Benchmark
+	public UserResponse getUserFromJWT() {
+		return tokenProvider.getUserFromJWT(token);
+	}
+}
@@ -0,0 +1,88 @@
+package com.fadihasrouni.vendingmachine.config.security;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Date;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+
+import com.fadihasrouni.vendingmachine.controller.response.UserResponse;
+import com.fadihasrouni.vendingmachine.model.type.UserRole;
+import com.fadihasrouni.vendingmachine.utils.Constants;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class JwtTokenProviderTest {
+
+	private JwtTokenProvider tokenProvider = new JwtTokenProvider();
+
+	private Long userId = 1L;
+	private String username = "fadi.hasrouni";
+
+	private String token;
+
+	@BeforeEach
+	void setup() {
+		UserResponse user = new UserResponse();
+		user.setId(userId);
+		user.setUsername(username);
+		user.setUserRole(UserRole.BUYER);
+
+		token = tokenProvider.generateToken(new UsernamePasswordAuthenticationToken(user, null));
+	}
+
+	@Test
+	void getUserFromJWTSuccess() {
+		UserResponse user = tokenProvider.getUserFromJWT(token);
+
+		assertEquals(userId, user.getId());
+		assertEquals(username, user.getUsername());
+		assertEquals(UserRole.BUYER, user.getUserRole());
+		assertTrue(tokenProvider.validateToken(token));
+		assertEquals(userId, tokenProvider.getUserIdFromJWT(token));
+	}
+
+	@Test
+	void getUserFromJWTWithoutRoleClaim() {
+		String legacyToken = Jwts.builder().claim(Constants.CLAIM_ID, userId.toString())
+				.claim(Constants.CLAIM_USERNAME, username)
+				.setExpiration(new Date(System.currentTimeMillis() + Constants.EXPIRATION_TIME))
+				.signWith(SignatureAlgorithm.HS512, Constants.SECRET).compact();
+
+		UserResponse user = tokenProvider.getUserFromJWT(legacyToken);
+
+		assertEquals(userId, user.getId());
+		assertNull(user.getUserRole());
+	}
+
+	@Test
+	void getUserFromJWTFailureTampered() {
+		String[] parts = token.split("\\.");
+		String forged = Jwts.builder().claim(Constants.CLAIM_ID, "2").claim(Constants.CLAIM_ROLE, "SELLER")
+				.signWith(SignatureAlgorithm.HS512, "AnotherSecret").compact();
+		String tampered = parts[0] + "." + forged.split("\\.")[1] + "." + parts[2];
+
+		assertNull(tokenProvider.getUserFromJWT(tampered));
+		assertFalse(tokenProvider.validateToken(tampered));
+	}
+
+	@Test
+	void tokensAreTimedOnTheBoundRegistry() {
+		MeterRegistry registry = new SimpleMeterRegistry();
+		tokenProvider.bindTo(registry);
+
+		UserResponse user = tokenProvider.getUserFromJWT(token);
+		tokenProvider.generateToken(new UsernamePasswordAuthenticationToken(user, null));
+
+		assertEquals(1, registry.get("vending.jwt.generate").timer().count());
+		assertEquals(1, registry.get("vending.jwt.parse").timer().count());
+	}
+}
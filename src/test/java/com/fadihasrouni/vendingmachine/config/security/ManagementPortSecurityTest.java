@@ -0,0 +1,50 @@
+package com.fadihasrouni.vendingmachine.config.security;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.autoconfigure.web.server.LocalManagementPort;
+import org.springframework.boot.test.autoconfigure.actuate.metrics.AutoConfigureMetrics;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.http.HttpStatus;
+
+/**
+ * The management server only runs on a real port, so both servers are started
+ */
+@AutoConfigureMetrics
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT, properties = { "management.server.port=0",
+		"management.endpoints.web.exposure.include=health,prometheus" })
+public class ManagementPortSecurityTest {
+
+	@Autowired
+	private TestRestTemplate restTemplate;
+
+	@LocalServerPort
+	private int serverPort;
+
+	@LocalManagementPort
+	private int managementPort;
+
+	@Test
+	void endpointsAreAnonymousOnTheManagementPort() {
+		assertEquals(HttpStatus.OK, status(managementPort, "/actuator/prometheus"));
+	}
+
+	@Test
+	void endpointsAreNotServedOnTheApiPort() {
+		assertEquals(HttpStatus.UNAUTHORIZED, status(serverPort, "/actuator/prometheus"));
+	}
+
+	@Test
+	void apiNeedsATokenOnTheManagementPort() {
+		assertEquals(HttpStatus.UNAUTHORIZED, status(managementPort, "/users/1"));
+	}
+
+	private HttpStatus status(int port, String path) {
+		return restTemplate.getForEntity("http://localhost:" + port + path, String.class).getStatusCode();
+	}
+}
@@ -0,0 +1,50 @@
+package com.fadihasrouni.vendingmachine.config.security;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.metrics.AutoConfigureMetrics;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+/**
+ * A management port equal to the API port is the same port, nothing there is
+ * anonymous beyond the public API and the health check
+ */
+@AutoConfigureMetrics
+@SpringBootTest(properties = { "server.port=8080", "management.server.port=8080",
+		"management.endpoints.web.exposure.include=health,prometheus" })
+@AutoConfigureMockMvc
+public class SecurityConfigTest {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Test
+	void endpointsNeedAToken() throws Exception {
+		mockMvc.perform(onPort("/actuator/prometheus")).andExpect(status().isUnauthorized());
+		mockMvc.perform(onPort("/actuator/health")).andExpect(status().isOk());
+	}
+
+	@Test
+	void apiNeedsAToken() throws Exception {
+		mockMvc.perform(onPort("/users/1")).andExpect(status().isUnauthorized());
+	}
+
+	@Test
+	void exportNeedsAToken() throws Exception {
+		mockMvc.perform(onPort("/products/export")).andExpect(status().isUnauthorized());
+		mockMvc.perform(onPort("/products")).andExpect(status().isOk());
+	}
+
+	private static MockHttpServletRequestBuilder onPort(String path) {
+		return get(path).with(request -> {
+			request.setLocalPort(8080);
+			return request;
+		});
+	}
+}
@@ -0,0 +1,137 @@
+package com.fadihasrouni.vendingmachine.config.trace;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.servlet.FilterChain;
+
+import org.apache.logging.log4j.ThreadContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.fadihasrouni.vendingmachine.utils.Constants;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+
+public class RequestTraceFilterTest {
+
+	private Logger filterLogger = (Logger) LoggerFactory.getLogger(RequestTraceFilter.class);
+
+	private ListAppender<ILoggingEvent> appender = new ListAppender<>();
+
+	private RequestTraceFilter filter = new RequestTraceFilter();
+
+	private MockHttpServletRequest request = new MockHttpServletRequest("POST", "/users/1/buy");
+
+	private MockHttpServletResponse response = new MockHttpServletResponse();
+
+	@BeforeEach
+	void setup() {
+		appender.start();
+		filterLogger.addAppender(appender);
+		ReflectionTestUtils.setField(filter, "slowRequestMs", 60_000L);
+	}
+
+	@AfterEach
+	void cleanup() {
+		filterLogger.detachAppender(appender);
+	}
+
+	@Test
+	void assignTraceIdToRequest() throws Exception {
+		AtomicReference<String> loggedTraceId = new AtomicReference<>();
+
+		filter.doFilter(request, response, chain(() -> loggedTraceId.set(ThreadContext.get(Constants.TRACE_ID_MDC_KEY))));
+
+		String traceId = response.getHeader(Constants.TRACE_ID_HEADER);
+		assertTrue(traceId.matches("[0-9a-f]{32}"));
+		assertEquals(traceId, loggedTraceId.get());
+		assertNull(ThreadContext.get(Constants.TRACE_ID_MDC_KEY));
+		assertFalse(RequestTrace.isActive());
+		assertTrue(appender.list.isEmpty());
+	}
+
+	@Test
+	void keepIncomingTraceId() throws Exception {
+		request.addHeader(Constants.TRACE_ID_HEADER, "client-trace-1");
+
+		filter.doFilter(request, response, chain(() -> {
+		}));
+
+		assertEquals("client-trace-1", response.getHeader(Constants.TRACE_ID_HEADER));
+	}
+
+	@Test
+	void replaceMalformedTraceId() throws Exception {
+		request.addHeader(Constants.TRACE_ID_HEADER, "forged\nline");
+
+		filter.doFilter(request, response, chain(() -> {
+		}));
+
+		assertNotEquals("forged\nline", response.getHeader(Constants.TRACE_ID_HEADER));
+	}
+
+	@Test
+	void skipSpansWhenNotSampled() throws Exception {
+		ReflectionTestUtils.setField(filter, "spanSampleRate", 0.0);
+		AtomicReference<Integer> span = new AtomicReference<>();
+
+		filter.doFilter(request, response, chain(() -> span.set(RequestTrace.begin("auth"))));
+
+		assertEquals(-1, span.get());
+	}
+
+	@Test
+	void logSlowRequestBreakdown() throws Exception {
+		ReflectionTestUtils.setField(filter, "spanSampleRate", 1.0);
+		ReflectionTestUtils.setField(filter, "slowRequestMs", 0L);
+
+		filter.doFilter(request, response, chain(() -> {
+			RequestTrace.end(RequestTrace.begin("auth"));
+			int service = RequestTrace.begin("UserService.buy");
+			RequestTrace.end(RequestTrace.begin("UserRepository.findById"));
+			RequestTrace.end(service);
+			RequestTrace.serializationStarted();
+		}));
+
+		assertEquals(1, appender.list.size());
+		ILoggingEvent event = appender.list.get(0);
+		String message = event.getFormattedMessage();
+		assertEquals(Level.WARN, event.getLevel());
+		assertTrue(message.startsWith("Slow request POST /users/1/buy returned 200"));
+		assertTrue(message.contains("\n  auth +"));
+		assertTrue(message.contains("\n  UserService.buy +"));
+		assertTrue(message.contains("\n    UserRepository.findById +"));
+		assertTrue(message.contains("\n  serialization +"));
+		assertFalse(RequestTrace.isActive());
+	}
+
+	@Test
+	void logSlowRequestWithoutSpans() throws Exception {
+		ReflectionTestUtils.setField(filter, "spanSampleRate", 0.0);
+		ReflectionTestUtils.setField(filter, "slowRequestMs", 0L);
+
+		filter.doFilter(request, response, chain(() -> {
+		}));
+
+		assertEquals(1, appender.list.size());
+		assertTrue(appender.list.get(0).getFormattedMessage().endsWith("(not sampled)"));
+	}
+
+	private static FilterChain chain(Runnable body) {
+		return (request, response) -> body.run();
+	}
+}
@@ -0,0 +1,52 @@
+package com.fadihasrouni.vendingmachine.exception.handler;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.WebRequest;
+
+import com.fadihasrouni.vendingmachine.exception.BadRequestException;
+import com.fadihasrouni.vendingmachine.exception.ResourceNotFoundException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Error responses from the throw to the serialized body, the exception
+ * construction is part of the measured cost
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CustomizedExceptionHandlerBenchmark {
+
+	private CustomizedExceptionHandler exceptionHandler = new CustomizedExceptionHandler();
+
+	private ObjectMapper objectMapper = new ObjectMapper();
+
+	private WebRequest request = new ServletWebRequest(new MockHttpServletRequest("POST", "/users/1/buy"));
+
+	@Benchmark
+	public byte[] badRequest() throws JsonProcessingException {
+		BadRequestException ex = new BadRequestException("The amount of product requested in not available", null);
+		return objectMapper.writeValueAsBytes(exceptionHandler.handleBadRequestException(ex, request).getBody());
+	}
+
+	@Benchmark
+	public byte[] resourceNotFound() throws JsonProcessingException {
+		ResourceNotFoundException ex = new ResourceNotFoundException("Could not find product with id: 1");
+		return objectMapper.writeValueAsBytes(exceptionHandler.handleResourceNotFoundException(ex, request).getBody());
+	}
+}
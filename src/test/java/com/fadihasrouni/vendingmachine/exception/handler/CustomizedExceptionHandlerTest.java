@@ -0,0 +1,48 @@
+package com.fadihasrouni.vendingmachine.exception.handler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.WebRequest;
+
+import com.fadihasrouni.vendingmachine.exception.BadRequestException;
+import com.fadihasrouni.vendingmachine.exception.ResourceNotFoundException;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class CustomizedExceptionHandlerTest {
+
+	private CustomizedExceptionHandler exceptionHandler = new CustomizedExceptionHandler();
+
+	private WebRequest request = new ServletWebRequest(new MockHttpServletRequest("POST", "/users/1/buy"));
+
+	private SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+	@BeforeEach
+	void setup() {
+		Metrics.addRegistry(registry);
+	}
+
+	@AfterEach
+	void cleanup() {
+		Metrics.removeRegistry(registry);
+	}
+
+	@Test
+	void handledExceptionsAreCountedPerType() {
+		assertEquals(HttpStatus.BAD_REQUEST,
+				exceptionHandler.handleBadRequestException(new BadRequestException("bad", null), request).getStatusCode());
+		exceptionHandler.handleBadRequestException(new BadRequestException("bad", null), request);
+		assertEquals(HttpStatus.NOT_FOUND,
+				exceptionHandler.handleResourceNotFoundException(new ResourceNotFoundException("missing"), request).getStatusCode());
+
+		assertEquals(2, registry.get("vending.exceptions").tag("type", "BadRequestException").counter().count());
+		assertEquals(1, registry.get("vending.exceptions").tag("type", "ResourceNotFoundException").counter().count());
+	}
+}
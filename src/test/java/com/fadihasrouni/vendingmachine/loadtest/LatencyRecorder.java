@@ -0,0 +1,89 @@
+package com.fadihasrouni.vendingmachine.loadtest;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Latency samples of one operation, recorded by a single thread and merged
+ * once the run is over
+ */
+public class LatencyRecorder {
+
+	private long[] samples = new long[1024];
+
+	private int size;
+
+	private long errors;
+
+	private long rejections;
+
+	public void record(long nanos) {
+		if (size == samples.length) {
+			samples = Arrays.copyOf(samples, size * 2);
+		}
+		samples[size++] = nanos;
+	}
+
+	/**
+	 * The server failed the request or could not be reached
+	 */
+	public void error() {
+		errors++;
+	}
+
+	/**
+	 * The server refused the request (4xx), e.g. out of stock or not enough
+	 * deposit
+	 */
+	public void rejection() {
+		rejections++;
+	}
+
+	public int count() {
+		return size;
+	}
+
+	public long getErrors() {
+		return errors;
+	}
+
+	public long getRejections() {
+		return rejections;
+	}
+
+	/**
+	 * Merge the recordings of several threads, samples come back sorted
+	 * 
+	 * @param recorders
+	 * @return
+	 */
+	public static LatencyRecorder merge(List<LatencyRecorder> recorders) {
+		LatencyRecorder merged = new LatencyRecorder();
+		int total = recorders.stream().mapToInt(LatencyRecorder::count).sum();
+		merged.samples = new long[Math.max(total, 1)];
+
+		for (LatencyRecorder recorder : recorders) {
+			System.arraycopy(recorder.samples, 0, merged.samples, merged.size, recorder.size);
+			merged.size += recorder.size;
+			merged.errors += recorder.errors;
+			merged.rejections += recorder.rejections;
+		}
+
+		Arrays.sort(merged.samples, 0, merged.size);
+		return merged;
+	}
+
+	/**
+	 * Percentile of sorted samples, in milliseconds
+	 * 
+	 * @param percentile between 0 and 100
+	 * @return
+	 */
+	public double percentileMillis(double percentile) {
+		if (size == 0) {
+			return 0;
+		}
+		int index = (int) Math.ceil(percentile / 100 * size) - 1;
+		return samples[Math.min(Math.max(index, 0), size - 1)] / 1_000_000.0;
+	}
+}
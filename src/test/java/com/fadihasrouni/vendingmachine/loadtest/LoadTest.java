@@ -0,0 +1,461 @@
+package com.fadihasrouni.vendingmachine.loadtest;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.fadihasrouni.vendingmachine.VendingMachineApplication;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Starts the application on the embedded database, seeds sellers, products
+ * and buyers through the API, then drives a concurrent mix of register, login,
+ * deposit, buy, reset and catalog requests for a fixed duration.
+ * 
+ * Reports latency percentiles, throughput, rejections and errors per
+ * operation, then checks that no stock was oversold and no deposit was lost.
+ * Exits with 1 when an invariant is broken.
+ * 
+ * Options are system properties: load.users, load.products, load.stock,
+ * load.duration, load.mix (e.g. register=2,login=5,deposit=30,buy=40,reset=3,catalog=20)
+ * and load.seed. Arguments are passed to the application, e.g.
+ * --vending.wallet.enabled=true
+ * 
+ * load.variants runs the test once per variant, each with its own application
+ * arguments added, and compares the throughput of the runs. Variants are
+ * separated by |, e.g. "--spring.profiles.active=default|--spring.profiles.active=prod".
+ */
+public class LoadTest {
+
+	private static final int[] COINS = { 5, 10, 20, 50, 100 };
+
+	private static final String PASSWORD = "password";
+
+	enum Operation {
+		REGISTER, LOGIN, DEPOSIT, BUY, RESET, CATALOG
+	}
+
+	private static final Operation[] COMPARED = { Operation.DEPOSIT, Operation.BUY };
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	private final HttpClient httpClient = HttpClient.newBuilder()
+			.version(HttpClient.Version.HTTP_1_1)
+			.connectTimeout(Duration.ofSeconds(10))
+			.build();
+
+	private final int users = Integer.getInteger("load.users", 50);
+	private final int products = Integer.getInteger("load.products", 20);
+	private final int stock = Integer.getInteger("load.stock", 1000);
+	private final int durationSeconds = Integer.getInteger("load.duration", 30);
+	private final long seed = Long.getLong("load.seed", 42L);
+	private final Map<Operation, Integer> mix = parseMix(
+			System.getProperty("load.mix", "register=2,login=5,deposit=30,buy=40,reset=3,catalog=20"));
+
+	// Runs against a kept database need their own usernames
+	private final String prefix = "load-" + Long.toString(System.currentTimeMillis(), Character.MAX_RADIX) + "-";
+
+	private String baseUrl;
+
+	private final List<Long> productIds = new ArrayList<>();
+
+	// Units bought per product, as acknowledged by the server
+	private AtomicLongArray unitsBought;
+
+	// Requests whose outcome is unknown, the invariants can't be trusted then
+	private final AtomicLong indeterminate = new AtomicLong();
+
+	private final AtomicLong registrations = new AtomicLong();
+
+	public static void main(String[] args) throws Exception {
+		// Devtools would run main again on a restart thread for every variant
+		System.setProperty("spring.devtools.restart.enabled", "false");
+
+		String variants = System.getProperty("load.variants", "");
+		if (variants.isBlank()) {
+			System.exit(run(split(String.join(" ", args))).exitCode);
+		}
+
+		List<String> names = new ArrayList<>();
+		List<Result> results = new ArrayList<>();
+		for (String variant : variants.split("\\|")) {
+			String[] variantArgs = split(String.join(" ", args) + " " + variant);
+
+			System.out.println();
+			System.out.println("Variant " + variant.trim());
+			names.add(variant.trim());
+			results.add(run(variantArgs));
+		}
+
+		compare(names, results);
+		System.exit(results.stream().mapToInt(result -> result.exitCode).max().orElse(0));
+	}
+
+	/**
+	 * The build passes load.args as a single argument
+	 */
+	private static String[] split(String args) {
+		return args.isBlank() ? new String[0] : args.trim().split("\\s+");
+	}
+
+	private static Result run(String[] args) throws Exception {
+		ConfigurableApplicationContext context = new SpringApplicationBuilder(VendingMachineApplication.class)
+				.properties("server.port=0", "logging.config=classpath:logback-benchmark.xml")
+				.run(args);
+
+		try {
+			return new LoadTest().run(context.getEnvironment().getProperty("local.server.port"));
+		} finally {
+			context.close();
+		}
+	}
+
+	/**
+	 * Throughput of the compared operations per variant, relative to the first
+	 * variant
+	 */
+	private static void compare(List<String> names, List<Result> results) {
+		String nameFormat = "%-" + names.stream().mapToInt(String::length).max().orElse(0) + "s";
+
+		System.out.println();
+		StringBuilder header = new StringBuilder(String.format(nameFormat, "Variant"));
+		for (Operation operation : COMPARED) {
+			header.append(String.format(" %10s %8s", operation + " /s", "gain"));
+		}
+		System.out.println(header.append(String.format(" %10s %8s", "TOTAL /s", "gain")));
+
+		Result base = results.get(0);
+		for (int i = 0; i < results.size(); i++) {
+			Result result = results.get(i);
+			StringBuilder line = new StringBuilder(String.format(nameFormat, names.get(i)));
+			for (Operation operation : COMPARED) {
+				line.append(gain(result.throughput.get(operation), base.throughput.get(operation)));
+			}
+			System.out.println(line.append(gain(result.totalThroughput, base.totalThroughput)));
+		}
+	}
+
+	private static String gain(double throughput, double base) {
+		return String.format(" %10.1f %+7.1f%%", throughput, base > 0 ? (throughput / base - 1) * 100 : 0);
+	}
+
+	private Result run(String port) throws Exception {
+		baseUrl = "http://localhost:" + port;
+
+		seedProducts();
+		List<VirtualUser> virtualUsers = new ArrayList<>();
+		for (int i = 0; i < users; i++) {
+			virtualUsers.add(new VirtualUser(i, new Random(seed + i)));
+		}
+
+		System.out.println(String.format("Running %d users against %d products for %ds, mix %s", users, products,
+				durationSeconds, mix));
+
+		long deadline = System.nanoTime() + Duration.ofSeconds(durationSeconds).toNanos();
+		CountDownLatch done = new CountDownLatch(users);
+		long start = System.nanoTime();
+
+		for (VirtualUser virtualUser : virtualUsers) {
+			Thread thread = new Thread(() -> {
+				try {
+					virtualUser.run(deadline);
+				} finally {
+					done.countDown();
+				}
+			}, "load-user-" + virtualUser.index);
+			thread.start();
+		}
+		done.await();
+		double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+		Result result = report(virtualUsers, elapsedSeconds);
+		result.exitCode = checkInvariants(virtualUsers) ? 0 : 1;
+		return result;
+	}
+
+	private void seedProducts() throws IOException, InterruptedException {
+		register(prefix + "seller", "SELLER");
+		String token = login(prefix + "seller");
+		unitsBought = new AtomicLongArray(products);
+
+		for (int i = 0; i < products; i++) {
+			Map<String, Object> product = new LinkedHashMap<>();
+			product.put("productName", "load product " + i);
+			product.put("amountAvailable", stock);
+			product.put("cost", COINS[i % COINS.length] * (1 + i % 3));
+
+			HttpResponse<String> response = send(request("/products", token).POST(json(product)).build());
+			productIds.add(readBody(response, "seed product").get("id").asLong());
+		}
+	}
+
+	private Result report(List<VirtualUser> virtualUsers, double elapsedSeconds) {
+		Result result = new Result();
+		long totalRequests = 0;
+
+		System.out.println();
+		System.out.println(String.format("%-10s %9s %10s %9s %9s %9s %9s %9s %8s", "Operation", "Requests",
+				"Req/s", "p50 ms", "p99 ms", "p999 ms", "max ms", "Rejected", "Errors"));
+
+		for (Operation operation : Operation.values()) {
+			List<LatencyRecorder> recorders = new ArrayList<>();
+			for (VirtualUser virtualUser : virtualUsers) {
+				recorders.add(virtualUser.recorders.get(operation));
+			}
+			LatencyRecorder merged = LatencyRecorder.merge(recorders);
+			totalRequests += merged.count();
+			result.throughput.put(operation, merged.count() / elapsedSeconds);
+
+			System.out.println(String.format("%-10s %9d %10.1f %9.2f %9.2f %9.2f %9.2f %9d %8d", operation,
+					merged.count(), merged.count() / elapsedSeconds, merged.percentileMillis(50),
+					merged.percentileMillis(99), merged.percentileMillis(99.9), merged.percentileMillis(100),
+					merged.getRejections(), merged.getErrors()));
+		}
+
+		System.out.println(String.format("Total %d requests in %.1fs, %.1f req/s", totalRequests, elapsedSeconds,
+				totalRequests / elapsedSeconds));
+
+		result.totalThroughput = totalRequests / elapsedSeconds;
+		return result;
+	}
+
+	/**
+	 * Compare the final stock and deposits to what the server acknowledged
+	 * 
+	 * @return true when nothing was oversold or lost
+	 */
+	private boolean checkInvariants(List<VirtualUser> virtualUsers) throws IOException, InterruptedException {
+		long oversold = 0;
+		long missingStock = 0;
+		for (int i = 0; i < products; i++) {
+			JsonNode product = readBody(send(request("/products/" + productIds.get(i), null).GET().build()),
+					"read product");
+			long expected = stock - unitsBought.get(i);
+			long actual = product.get("amountAvailable").asLong();
+
+			// More sales acknowledged than stock taken, or stock below zero
+			oversold += Math.max(0, actual - expected) + Math.max(0, -actual);
+			missingStock += Math.max(0, expected - actual);
+		}
+
+		long lostDeposit = 0;
+		long excessDeposit = 0;
+		for (VirtualUser virtualUser : virtualUsers) {
+			JsonNode user = readBody(send(request("/users/" + virtualUser.id, virtualUser.token).GET().build()),
+					"read user");
+			long actual = user.get("deposit").asLong();
+
+			lostDeposit += Math.max(0, virtualUser.expectedDeposit - actual);
+			excessDeposit += Math.max(0, actual - virtualUser.expectedDeposit);
+		}
+
+		System.out.println();
+		System.out.println("Oversold units:         " + oversold);
+		System.out.println("Stock taken, not sold:  " + missingStock);
+		System.out.println("Lost deposit:           " + lostDeposit);
+		System.out.println("Unaccounted deposit:    " + excessDeposit);
+		System.out.println("Indeterminate requests: " + indeterminate.get());
+
+		if (indeterminate.get() > 0) {
+			System.out.println("Some outcomes are unknown, mismatches may be false positives");
+		}
+
+		return oversold == 0 && missingStock == 0 && lostDeposit == 0 && excessDeposit == 0;
+	}
+
+	/**
+	 * One buyer account driven by its own thread, so its expected balance is
+	 * exact
+	 */
+	private class VirtualUser {
+		private final int index;
+		private final Random random;
+		private final Map<Operation, LatencyRecorder> recorders = new EnumMap<>(Operation.class);
+		private final int totalWeight;
+
+		private long id;
+		private String token;
+		private long expectedDeposit;
+
+		VirtualUser(int index, Random random) throws IOException, InterruptedException {
+			this.index = index;
+			this.random = random;
+			this.totalWeight = mix.values().stream().mapToInt(Integer::intValue).sum();
+
+			for (Operation operation : Operation.values()) {
+				recorders.put(operation, new LatencyRecorder());
+			}
+
+			id = register(username(), "BUYER");
+			token = login(username());
+		}
+
+		private String username() {
+			return prefix + "buyer-" + index;
+		}
+
+		void run(long deadline) {
+			while (System.nanoTime() < deadline) {
+				Operation operation = pick();
+				long start = System.nanoTime();
+				try {
+					int status = execute(operation);
+					if (status >= 500) {
+						recorders.get(operation).error();
+					} else if (status >= 400) {
+						recorders.get(operation).rejection();
+					}
+				} catch (IOException e) {
+					recorders.get(operation).error();
+					indeterminate.incrementAndGet();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+				recorders.get(operation).record(System.nanoTime() - start);
+			}
+		}
+
+		private Operation pick() {
+			int value = random.nextInt(totalWeight);
+			for (Map.Entry<Operation, Integer> entry : mix.entrySet()) {
+				value -= entry.getValue();
+				if (value < 0) {
+					return entry.getKey();
+				}
+			}
+			return Operation.CATALOG;
+		}
+
+		private int execute(Operation operation) throws IOException, InterruptedException {
+			switch (operation) {
+			case REGISTER:
+				Map<String, Object> user = new LinkedHashMap<>();
+				user.put("username", prefix + "guest-" + registrations.incrementAndGet());
+				user.put("password", PASSWORD);
+				user.put("confirmPassword", PASSWORD);
+				user.put("userRole", "BUYER");
+				return send(request("/users/register", null).POST(json(user)).build()).statusCode();
+
+			case LOGIN:
+				Map<String, Object> login = new LinkedHashMap<>();
+				login.put("username", username());
+				login.put("password", PASSWORD);
+				return send(request("/users/login", null).POST(json(login)).build()).statusCode();
+
+			case DEPOSIT:
+				int coin = COINS[random.nextInt(COINS.length)];
+				HttpResponse<String> deposit = send(
+						request("/users/" + id + "/deposit/" + coin, token).POST(BodyPublishers.noBody()).build());
+				if (deposit.statusCode() == 200) {
+					expectedDeposit += coin;
+				}
+				return deposit.statusCode();
+
+			case BUY:
+				int product = random.nextInt(products);
+				int amount = 1 + random.nextInt(3);
+				Map<String, Object> buy = new LinkedHashMap<>();
+				buy.put("productId", productIds.get(product));
+				buy.put("amount", amount);
+				HttpResponse<String> bought = send(request("/users/" + id + "/buy", token).POST(json(buy)).build());
+				if (bought.statusCode() == 200) {
+					expectedDeposit -= objectMapper.readTree(bought.body()).get("moneySpent").asLong();
+					unitsBought.addAndGet(product, amount);
+				}
+				return bought.statusCode();
+
+			case RESET:
+				HttpResponse<String> reset = send(
+						request("/users/" + id + "/reset", token).POST(BodyPublishers.noBody()).build());
+				if (reset.statusCode() == 200) {
+					expectedDeposit = 0;
+				}
+				return reset.statusCode();
+
+			default:
+				String path = random.nextBoolean() ? "/products/" + productIds.get(random.nextInt(products))
+						: "/products/page?limit=50&after=" + (productIds.get(random.nextInt(products)) - 1);
+				return send(request(path, null).GET().build()).statusCode();
+			}
+		}
+	}
+
+	private static class Result {
+		private final Map<Operation, Double> throughput = new EnumMap<>(Operation.class);
+		private double totalThroughput;
+		private int exitCode;
+	}
+
+	private long register(String username, String role) throws IOException, InterruptedException {
+		Map<String, Object> user = new LinkedHashMap<>();
+		user.put("username", username);
+		user.put("password", PASSWORD);
+		user.put("confirmPassword", PASSWORD);
+		user.put("userRole", role);
+
+		return readBody(send(request("/users/register", null).POST(json(user)).build()), "register").get("id")
+				.asLong();
+	}
+
+	private String login(String username) throws IOException, InterruptedException {
+		Map<String, Object> login = new LinkedHashMap<>();
+		login.put("username", username);
+		login.put("password", PASSWORD);
+
+		return readBody(send(request("/users/login", null).POST(json(login)).build()), "login").get("token")
+				.asText();
+	}
+
+	private HttpRequest.Builder request(String path, String token) {
+		HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(baseUrl + path))
+				.timeout(Duration.ofSeconds(30))
+				.header("Content-Type", "application/json");
+		if (token != null) {
+			builder.header("Authorization", token);
+		}
+		return builder;
+	}
+
+	private HttpRequest.BodyPublisher json(Object body) throws IOException {
+		return BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(body));
+	}
+
+	private HttpResponse<String> send(HttpRequest request) throws IOException, InterruptedException {
+		return httpClient.send(request, BodyHandlers.ofString());
+	}
+
+	private JsonNode readBody(HttpResponse<String> response, String step) throws IOException {
+		if (response.statusCode() != 200) {
+			throw new IllegalStateException(step + " failed with " + response.statusCode() + ": " + response.body());
+		}
+		return objectMapper.readTree(response.body());
+	}
+
+	private static Map<Operation, Integer> parseMix(String value) {
+		Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+		for (String entry : value.split(",")) {
+			String[] parts = entry.trim().split("=");
+			weights.put(Operation.valueOf(parts[0].trim().toUpperCase()), Integer.parseInt(parts[1].trim()));
+		}
+		return weights;
+	}
+}
@@ -0,0 +1,87 @@
+package com.fadihasrouni.vendingmachine.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.flyway.FlywayMigrationStrategy;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ScriptUtils;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.fadihasrouni.vendingmachine.model.Product;
+import com.fadihasrouni.vendingmachine.model.User;
+import com.fadihasrouni.vendingmachine.model.type.UserRole;
+
+/**
+ * Migrates a database created by the baseline entities before Flyway, the
+ * context only starts once Hibernate validated the migrated schema.
+ */
+@DataJpaTest
+@Import(BaselineMigrationTest.BaselineDatabase.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class BaselineMigrationTest {
+
+	// Imported rather than annotated, applications started from the test classpath would scan it
+	static class BaselineDatabase {
+
+		@Bean
+		FlywayMigrationStrategy baselineThenMigrate(DataSource dataSource) {
+			return flyway -> {
+				try (Connection connection = dataSource.getConnection()) {
+					ScriptUtils.executeSqlScript(connection, new ClassPathResource("db/baseline.sql"));
+				} catch (Exception ex) {
+					throw new IllegalStateException(ex);
+				}
+				flyway.migrate();
+			};
+		}
+	}
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private ProductRespository productRepository;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Test
+	void baselineIsNotRecreated() {
+		assertEquals("<< Flyway Baseline >>",
+				jdbcTemplate.queryForObject("select \"description\" from \"flyway_schema_history\" where \"version\" = '1'", String.class));
+	}
+
+	@Test
+	void existingRowsAreKeptWithVersions() {
+		User buyer = userRepository.findByUsername("buyer").get();
+		Product product = productRepository.findById(3L).get();
+
+		assertEquals(35, buyer.getDeposit());
+		assertEquals(0, buyer.getVersion());
+		assertEquals(7, product.getAmountAvailable());
+		assertEquals(0, product.getVersion());
+	}
+
+	@Test
+	void newIdsFollowTheExistingOnes() {
+		User seller = userRepository.save(new User(null, "other", "", 0, UserRole.SELLER, 0L));
+
+		try {
+			assertTrue(seller.getId() > 2, "Id: " + seller.getId());
+		} finally {
+			userRepository.delete(seller);
+		}
+	}
+}
@@ -0,0 +1,91 @@
+package com.fadihasrouni.vendingmachine.repository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fadihasrouni.vendingmachine.VendingMachineApplication;
+import com.fadihasrouni.vendingmachine.model.Product;
+import com.fadihasrouni.vendingmachine.model.User;
+import com.fadihasrouni.vendingmachine.model.type.UserRole;
+
+/**
+ * Inserts of 100 products per transaction on the embedded database. A block
+ * size of 1 reads the id table for every insert, as the former
+ * hibernate_sequence did.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProductInsertBenchmark {
+
+	private static final int PRODUCTS_PER_TRANSACTION = 100;
+
+	@Param({ "1", "50" })
+	private int blockSize;
+
+	private ConfigurableApplicationContext context;
+
+	private ProductRespository productRepository;
+
+	private TransactionTemplate transactionTemplate;
+
+	private User seller;
+
+	@Setup
+	public void setup() {
+		// Devtools would run the fork main again on a restart thread, saving the seller twice
+		System.setProperty("spring.devtools.restart.enabled", "false");
+
+		context = new SpringApplicationBuilder(VendingMachineApplication.class)
+				.properties("server.port=0", "spring.datasource.url=jdbc:h2:mem:insert_benchmark;MODE=MySQL;DB_CLOSE_DELAY=-1",
+						"spring.jpa.properties.hibernate.jdbc.batch_size=50",
+						"spring.jpa.properties.vending.id.block-size=" + blockSize,
+						"logging.config=classpath:logback-benchmark.xml")
+				.run();
+
+		productRepository = context.getBean(ProductRespository.class);
+		transactionTemplate = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+		seller = context.getBean(UserRepository.class).save(new User(null, "seller", "", 0, UserRole.SELLER, 0L));
+	}
+
+	@TearDown
+	public void tearDown() {
+		context.close();
+	}
+
+	@Benchmark
+	public List<Product> insertProducts() {
+		List<Product> products = new ArrayList<>(PRODUCTS_PER_TRANSACTION);
+		for (int i = 0; i < PRODUCTS_PER_TRANSACTION; i++) {
+			Product product = new Product();
+			product.setProductName("product " + i);
+			product.setAmountAvailable(10);
+			product.setCost(25);
+			product.setSeller(seller);
+			products.add(product);
+		}
+
+		return transactionTemplate.execute(status -> productRepository.saveAll(products));
+	}
+}
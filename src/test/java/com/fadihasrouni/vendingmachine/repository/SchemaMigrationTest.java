@@ -0,0 +1,125 @@
+package com.fadihasrouni.vendingmachine.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ScriptUtils;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.fadihasrouni.vendingmachine.model.Product;
+import com.fadihasrouni.vendingmachine.model.User;
+import com.fadihasrouni.vendingmachine.model.type.UserRole;
+
+/**
+ * Runs against the schema built by the migrations, which Hibernate validates
+ * when the context starts.
+ */
+@DataJpaTest(properties = { "spring.jpa.properties.hibernate.generate_statistics=true",
+		"spring.jpa.properties.hibernate.jdbc.batch_size=50" })
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class SchemaMigrationTest {
+
+	@Autowired
+	private ProductRespository productRepository;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private DataSource dataSource;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	private Statistics statistics;
+
+	@BeforeEach
+	void setup() {
+		statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+	}
+
+	@AfterEach
+	void cleanup() {
+		productRepository.deleteAll();
+		userRepository.deleteAll();
+	}
+
+	@Test
+	void idBlockMigrationMovesPastExistingIds() throws SQLException {
+		jdbcTemplate.update("insert into product (id, product_name, amount_available, cost, version) values (1000, 'legacy', 1, 5, 0)");
+		jdbcTemplate.update("update product_seq set next_val = 1");
+
+		// The migration only creates what is missing, so it can run again
+		try (Connection connection = dataSource.getConnection()) {
+			ScriptUtils.executeSqlScript(connection, new ClassPathResource("db/migration/V2__id_block_tables.sql"));
+		}
+
+		assertEquals(1, jdbcTemplate.queryForObject("select count(*) from product_seq", Integer.class));
+		assertEquals(1001L, jdbcTemplate.queryForObject("select next_val from product_seq", Long.class));
+	}
+
+	@Test
+	void negativeStockIsRejected() {
+		Product product = productRepository.save(newProduct("kinder", null));
+
+		assertThrows(DataIntegrityViolationException.class,
+				() -> jdbcTemplate.update("update product set amount_available = -1 where id = ?", product.getId()));
+	}
+
+	@Test
+	void negativeDepositIsRejected() {
+		User buyer = userRepository.save(new User(null, "buyer", "", 0, UserRole.BUYER, 0L));
+
+		assertThrows(DataIntegrityViolationException.class,
+				() -> jdbcTemplate.update("update user set deposit = -5 where id = ?", buyer.getId()));
+	}
+
+	@Test
+	void insertsAreBatched() {
+		User seller = userRepository.save(new User(null, "seller", "", 0, UserRole.SELLER, 0L));
+
+		List<Product> products = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			products.add(newProduct("product " + i, seller));
+		}
+
+		statistics.clear();
+		productRepository.saveAll(products);
+
+		// Two blocks of ids and two insert batches instead of 100 id reads and inserts
+		assertEquals(100, statistics.getEntityInsertCount());
+		assertTrue(statistics.getPrepareStatementCount() <= 10, "Statements: " + statistics.getPrepareStatementCount());
+	}
+
+	private static Product newProduct(String name, User seller) {
+		Product product = new Product();
+		product.setProductName(name);
+		product.setAmountAvailable(1);
+		product.setCost(5);
+		product.setSeller(seller);
+		return product;
+	}
+}
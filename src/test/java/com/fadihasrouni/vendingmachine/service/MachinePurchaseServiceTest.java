@@ -0,0 +1,201 @@
+package com.fadihasrouni.vendingmachine.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.fadihasrouni.vendingmachine.controller.response.ProductResponse;
+import com.fadihasrouni.vendingmachine.exception.BadRequestException;
+import com.fadihasrouni.vendingmachine.exception.ResourceNotFoundException;
+import com.fadihasrouni.vendingmachine.model.MachineCoin;
+import com.fadihasrouni.vendingmachine.model.MachineSlot;
+import com.fadihasrouni.vendingmachine.model.Product;
+import com.fadihasrouni.vendingmachine.model.User;
+import com.fadihasrouni.vendingmachine.model.VendingMachine;
+import com.fadihasrouni.vendingmachine.model.id.MachineCoinId;
+import com.fadihasrouni.vendingmachine.model.id.MachineSlotId;
+import com.fadihasrouni.vendingmachine.model.projection.PurchaseBalance;
+import com.fadihasrouni.vendingmachine.model.type.UserRole;
+import com.fadihasrouni.vendingmachine.repository.MachineCoinRepository;
+import com.fadihasrouni.vendingmachine.repository.MachineSessionRepository;
+import com.fadihasrouni.vendingmachine.repository.MachineSlotRepository;
+import com.fadihasrouni.vendingmachine.repository.ProductRespository;
+import com.fadihasrouni.vendingmachine.repository.UserRepository;
+import com.fadihasrouni.vendingmachine.repository.VendingMachineRepository;
+import com.fadihasrouni.vendingmachine.service.change.CoinFloat;
+import com.fadihasrouni.vendingmachine.service.change.MachineCoinFloats;
+
+/**
+ * Runs the machine purchases against the embedded database, without a test
+ * transaction so that rollbacks can be observed.
+ */
+@DataJpaTest
+@Import({ MachinePurchaseService.class, MachineCoinFloats.class, CoinFloat.class })
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class MachinePurchaseServiceTest {
+
+	@Autowired
+	private MachinePurchaseService machinePurchaseService;
+
+	@Autowired
+	private VendingMachineRepository vendingMachineRepository;
+
+	@Autowired
+	private MachineSlotRepository machineSlotRepository;
+
+	@Autowired
+	private MachineSessionRepository machineSessionRepository;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private ProductRespository productRepository;
+
+	@Autowired
+	private MachineCoinRepository machineCoinRepository;
+
+	@Autowired
+	private MachineCoinFloats machineCoinFloats;
+
+	private Long machineId;
+	private Long otherMachineId;
+	private User buyer;
+	private Product product;
+
+	@BeforeEach
+	void setup() {
+		User seller = userRepository.save(new User(null, "seller", "", 0, UserRole.SELLER, 0L));
+		buyer = userRepository.save(new User(null, "buyer", "", 0, UserRole.BUYER, 0L));
+
+		product = new Product();
+		product.setProductName("kinder");
+		product.setAmountAvailable(100);
+		product.setCost(25);
+		product.setSeller(seller);
+		product = productRepository.save(product);
+
+		machineId = vendingMachineRepository.save(new VendingMachine(null, "station", 0L)).getId();
+		otherMachineId = vendingMachineRepository.save(new VendingMachine(null, "airport", 0L)).getId();
+
+		machineSlotRepository.save(new MachineSlot(machineId, product.getId(), 3, null));
+		machineSlotRepository.save(new MachineSlot(otherMachineId, product.getId(), 5, null));
+
+		machinePurchaseService.deposit(machineId, buyer.getId(), 50);
+	}
+
+	@AfterEach
+	void cleanup() {
+		machineSessionRepository.deleteAll();
+		machineSlotRepository.deleteAll();
+		// The default machine and its coins are kept
+		machineCoinRepository.deleteAll(machineCoinRepository.findByMachineId(machineId));
+		machineCoinRepository.deleteAll(machineCoinRepository.findByMachineId(otherMachineId));
+		vendingMachineRepository.deleteAllById(List.of(machineId, otherMachineId));
+		productRepository.deleteAll();
+		userRepository.deleteAll();
+	}
+
+	@Test
+	void purchaseOnlyTouchesTheMachine() {
+		PurchaseBalance balance = machinePurchaseService.purchase(machineId, buyer.getId(), product.getId(), 2, 50);
+
+		assertEquals(0, balance.getDeposit());
+		assertEquals(1, balance.getAmountAvailable());
+		assertEquals(5, machineSlotRepository.findAmountAvailable(otherMachineId, product.getId()).get());
+		assertEquals(100, productRepository.findAmountAvailableById(product.getId()).get());
+		assertEquals(0, userRepository.findDepositById(buyer.getId()));
+	}
+
+	@Test
+	void catalogPageIsTheMachineStock() {
+		machinePurchaseService.purchase(machineId, buyer.getId(), product.getId(), 2, 50);
+
+		List<ProductResponse> products = machineSlotRepository.findPage(machineId, 0L, 1, PageRequest.of(0, 10));
+
+		assertEquals(1, products.size());
+		assertEquals(1, products.get(0).getAmountAvailable());
+		assertEquals("seller", products.get(0).getSellerUsername());
+		assertEquals(0, machineSlotRepository.findPage(machineId, product.getId(), 0, PageRequest.of(0, 10)).size());
+	}
+
+	@Test
+	void depositsAreKeptPerMachine() {
+		machinePurchaseService.deposit(machineId, buyer.getId(), 20);
+		machinePurchaseService.deposit(otherMachineId, buyer.getId(), 10);
+
+		assertEquals(70, machineSessionRepository.findDeposit(machineId, buyer.getId()).get());
+		assertEquals(10, machineSessionRepository.findDeposit(otherMachineId, buyer.getId()).get());
+	}
+
+	@Test
+	void depositsAreAddedToTheMachineCoins() {
+		machinePurchaseService.deposit(machineId, buyer.getId(), 50);
+		machinePurchaseService.deposit(machineId, buyer.getId(), 20);
+
+		assertEquals(2, machineCoinRepository.findById(new MachineCoinId(machineId, 50)).get().getQuantity());
+		assertEquals(1, machineCoinRepository.findById(new MachineCoinId(machineId, 20)).get().getQuantity());
+		assertEquals(0, machineCoinRepository.findByMachineId(otherMachineId).size());
+		assertArrayEquals(new int[] { 0, 2, 1, 0, 0 }, machineCoinFloats.get(machineId).counts());
+	}
+
+	@Test
+	void everyDenominationIsStoredWhenTheFloatIsLoaded() {
+		List<MachineCoin> stored = machineCoinRepository.findByMachineId(machineId);
+
+		assertEquals(CoinFloat.COINS.length, stored.size());
+		assertEquals(1, machineCoinRepository.findById(new MachineCoinId(machineId, 50)).get().getQuantity());
+		assertEquals(0, machineCoinRepository.findById(new MachineCoinId(machineId, 100)).get().getQuantity());
+	}
+
+	@Test
+	void floatIsLoadedFromTheMachineCoins() {
+		machineCoinRepository.save(new MachineCoin(otherMachineId, 100, 3, null));
+		machineCoinRepository.save(new MachineCoin(otherMachineId, 5, 7, null));
+
+		CoinFloat coinFloat = machineCoinFloats.get(otherMachineId);
+
+		assertArrayEquals(new int[] { 3, 0, 0, 0, 7 }, coinFloat.counts());
+		assertEquals(CoinFloat.COINS.length, machineCoinRepository.findByMachineId(otherMachineId).size());
+		assertEquals(3, machineCoinRepository.findById(new MachineCoinId(otherMachineId, 100)).get().getQuantity());
+	}
+
+	@Test
+	void purchaseFailureNotEnoughBalanceRollsBackSlot() {
+		assertThrows(BadRequestException.class, () -> {
+			machinePurchaseService.purchase(otherMachineId, buyer.getId(), product.getId(), 1, 25);
+		});
+
+		assertEquals(5, machineSlotRepository.findAmountAvailable(otherMachineId, product.getId()).get());
+	}
+
+	@Test
+	void purchaseFailureNotEnoughProduct() {
+		assertThrows(BadRequestException.class, () -> {
+			machinePurchaseService.purchase(machineId, buyer.getId(), product.getId(), 4, 100);
+		});
+
+		assertEquals(50, machineSessionRepository.findDeposit(machineId, buyer.getId()).get());
+	}
+
+	@Test
+	void purchaseFailureProductNotInMachine() {
+		machineSlotRepository.deleteById(new MachineSlotId(machineId, product.getId()));
+
+		assertThrows(ResourceNotFoundException.class, () -> {
+			machinePurchaseService.purchase(machineId, buyer.getId(), product.getId(), 1, 25);
+		});
+	}
+}
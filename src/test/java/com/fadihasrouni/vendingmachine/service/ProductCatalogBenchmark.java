@@ -0,0 +1,90 @@
+package com.fadihasrouni.vendingmachine.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.fadihasrouni.vendingmachine.controller.response.ProductResponse;
+import com.fadihasrouni.vendingmachine.repository.ProductRespository;
+import com.fadihasrouni.vendingmachine.service.inventory.InventoryLedger;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Catalog page and full list building and serialization at various catalog
+ * sizes, the repository returns prebuilt rows so only the application side is
+ * measured
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProductCatalogBenchmark {
+
+	@Param({ "10", "100", "500" })
+	private int catalogSize;
+
+	private ProductService productService;
+
+	private ObjectMapper objectMapper = new ObjectMapper();
+
+	@Setup
+	public void setup() {
+		productService = newProductService(catalogSize);
+	}
+
+	@Benchmark
+	public byte[] findProductsPage() throws JsonProcessingException {
+		return objectMapper.writeValueAsBytes(productService.findProductsPage(null, catalogSize, null, false));
+	}
+
+	@Benchmark
+	public byte[] findAllProductsList() throws JsonProcessingException {
+		return objectMapper.writeValueAsBytes(productService.findAllProductsList());
+	}
+
+	/**
+	 * Product service reading its pages from a stubbed repository
+	 * 
+	 * @param catalogSize
+	 * @return
+	 */
+	public static ProductService newProductService(int catalogSize) {
+		List<ProductResponse> rows = new ArrayList<>();
+		// One extra row, as the repository is asked for it
+		for (long id = 1; id <= catalogSize + 1; id++) {
+			rows.add(new ProductResponse(id, "product " + id, 10, 25, "seller"));
+		}
+
+		// Stub only, a regular mock would record every benchmark invocation
+		ProductRespository productRepository = Mockito.mock(ProductRespository.class, Mockito.withSettings().stubOnly());
+		Mockito.when(productRepository.findPage(Mockito.anyLong(), Mockito.anyInt(), Mockito.any(Pageable.class)))
+				.thenReturn(rows);
+		// The full list is read unpaged, without the extra row
+		Mockito.when(productRepository.findPage(Mockito.anyLong(), Mockito.anyInt(), Mockito.eq(Pageable.unpaged())))
+				.thenReturn(rows.subList(0, catalogSize));
+
+		ProductService productService = new ProductService();
+		ReflectionTestUtils.setField(productService, "productRepository", productRepository);
+		ReflectionTestUtils.setField(productService, "inventoryLedger", new InventoryLedger());
+
+		return productService;
+	}
+}
@@ -0,0 +1,118 @@
+package com.fadihasrouni.vendingmachine.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.fadihasrouni.vendingmachine.controller.response.ProductResponse;
+import com.fadihasrouni.vendingmachine.model.Product;
+import com.fadihasrouni.vendingmachine.model.User;
+import com.fadihasrouni.vendingmachine.model.type.UserRole;
+import com.fadihasrouni.vendingmachine.repository.ProductRespository;
+import com.fadihasrouni.vendingmachine.repository.UserRepository;
+import com.fadihasrouni.vendingmachine.service.cache.ProductMetadataCache;
+import com.fadihasrouni.vendingmachine.service.inventory.InventoryLedger;
+import com.fadihasrouni.vendingmachine.utils.Constants;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Exports the catalog from the embedded database through the service proxy,
+ * without a test transaction so each page is read on its own.
+ */
+@DataJpaTest
+@Import({ ProductService.class, ProductMetadataCache.class, InventoryLedger.class, JacksonAutoConfiguration.class })
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class ProductExportTest {
+
+	@Autowired
+	private ProductService productService;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private ProductRespository productRepository;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@BeforeEach
+	void setup() {
+		User seller = userRepository.save(new User(null, "seller", "", 0, UserRole.SELLER, 0L));
+
+		for (int i = 1; i <= 3; i++) {
+			Product product = new Product();
+			product.setProductName("product " + i);
+			product.setAmountAvailable(i);
+			product.setCost(5 * i);
+			product.setSeller(seller);
+			productRepository.save(product);
+		}
+	}
+
+	@AfterEach
+	void cleanup() {
+		productRepository.deleteAll();
+		userRepository.deleteAll();
+	}
+
+	@Test
+	void exportProductsSuccess() throws Exception {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+		productService.exportProducts(outputStream);
+
+		String export = outputStream.toString(StandardCharsets.UTF_8);
+		String[] lines = export.split("\n");
+
+		assertEquals(3, lines.length);
+		assertEquals('\n', export.charAt(export.length() - 1));
+		for (int i = 0; i < lines.length; i++) {
+			ProductResponse product = objectMapper.readValue(lines[i], ProductResponse.class);
+			assertEquals("product " + (i + 1), product.getProductName());
+			assertEquals(i + 1, product.getAmountAvailable());
+			assertEquals("seller", product.getSellerUsername());
+		}
+	}
+
+	@Test
+	void exportProductsAcrossPages() throws Exception {
+		ReflectionTestUtils.setField(productService, "exportPageSize", 2);
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+		try {
+			productService.exportProducts(outputStream);
+		} finally {
+			ReflectionTestUtils.setField(productService, "exportPageSize", Constants.PRODUCT_EXPORT_PAGE_SIZE);
+		}
+
+		String[] lines = outputStream.toString(StandardCharsets.UTF_8).split("\n");
+
+		assertEquals(3, lines.length);
+		for (int i = 0; i < lines.length; i++) {
+			assertEquals("product " + (i + 1), objectMapper.readValue(lines[i], ProductResponse.class).getProductName());
+		}
+	}
+
+	@Test
+	void exportProductsEmptyCatalog() throws Exception {
+		productRepository.deleteAll();
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+		productService.exportProducts(outputStream);
+
+		assertEquals("", outputStream.toString(StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,163 @@
+package com.fadihasrouni.vendingmachine.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.fadihasrouni.vendingmachine.controller.response.ProductImportError;
+import com.fadihasrouni.vendingmachine.controller.response.ProductImportResponse;
+import com.fadihasrouni.vendingmachine.controller.response.UserResponse;
+import com.fadihasrouni.vendingmachine.model.Product;
+import com.fadihasrouni.vendingmachine.model.User;
+import com.fadihasrouni.vendingmachine.model.type.UserRole;
+import com.fadihasrouni.vendingmachine.repository.ProductRespository;
+import com.fadihasrouni.vendingmachine.repository.UserRepository;
+import com.fadihasrouni.vendingmachine.service.cache.ProductMetadataCache;
+import com.fadihasrouni.vendingmachine.service.inventory.InventoryLedger;
+
+/**
+ * Imports against the embedded database, with chunks of two rows so that
+ * several transactions are involved.
+ */
+@DataJpaTest(properties = { "vending.product.import.chunk-size=2",
+		"spring.jpa.properties.hibernate.jdbc.batch_size=50" })
+@Import({ ProductImportService.class, ProductMetadataCache.class, InventoryLedger.class, JacksonAutoConfiguration.class })
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class ProductImportServiceTest {
+
+	@Autowired
+	private ProductImportService productImportService;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private ProductRespository productRepository;
+
+	private User seller;
+
+	private Product product;
+
+	private Product otherSellerProduct;
+
+	@BeforeEach
+	void setup() {
+		seller = userRepository.save(new User(null, "seller", "", 0, UserRole.SELLER, 0L));
+		User otherSeller = userRepository.save(new User(null, "other", "", 0, UserRole.SELLER, 0L));
+
+		product = saveProduct("kinder", 3, 25, seller);
+		otherSellerProduct = saveProduct("mars", 3, 10, otherSeller);
+
+		UserResponse principal = new UserResponse();
+		principal.setId(seller.getId());
+		principal.setUsername(seller.getUsername());
+		principal.setUserRole(UserRole.SELLER);
+		SecurityContextHolder.setContext(new SecurityContextImpl(
+				new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities())));
+	}
+
+	@AfterEach
+	void cleanup() {
+		SecurityContextHolder.clearContext();
+		productRepository.deleteAll();
+		userRepository.deleteAll();
+	}
+
+	@Test
+	void importJsonReportsRowErrors() throws IOException {
+		String json = "["
+				+ "{\"productName\":\"twix\",\"cost\":15,\"amountAvailable\":10},"
+				+ "{\"id\":" + product.getId() + ",\"restock\":7},"
+				+ "{\"productName\":\"bounty\",\"cost\":12,\"amountAvailable\":10},"
+				+ "{\"id\":" + otherSellerProduct.getId() + ",\"amountAvailable\":1},"
+				+ "{\"id\":-1,\"cost\":5},"
+				+ "{\"id\":" + product.getId() + ",\"restock\":-20},"
+				+ "{\"productName\":\"lion\",\"cost\":\"cheap\",\"amountAvailable\":1},"
+				+ "{\"productName\":\"snickers\",\"cost\":20,\"amountAvailable\":4}"
+				+ "]";
+
+		ProductImportResponse response = productImportService.importJson(stream(json));
+
+		assertEquals(2, response.getCreated());
+		assertEquals(1, response.getUpdated());
+		assertEquals(List.of(3, 4, 5, 6, 7), rows(response));
+		assertEquals("Cost should be divisible by 5", response.getErrors().get(0).getMessage());
+		assertEquals("Couldn't update another seller product", response.getErrors().get(1).getMessage());
+
+		assertEquals(10, productRepository.findById(product.getId()).get().getAmountAvailable());
+		assertEquals(3, productRepository.findById(otherSellerProduct.getId()).get().getAmountAvailable());
+		assertEquals(4, productRepository.count());
+	}
+
+	@Test
+	void importCsv() throws IOException {
+		String csv = "cost,productName,id,amountAvailable\n"
+				+ "5,\"Snack, \"\"large\"\"\",,8\n"
+				+ "\n"
+				+ ",renamed," + product.getId() + ",1\n"
+				+ "five,gum,,2\n";
+
+		ProductImportResponse response = productImportService.importCsv(stream(csv));
+
+		assertEquals(1, response.getCreated());
+		assertEquals(1, response.getUpdated());
+		assertEquals(List.of(3), rows(response));
+		assertEquals("The cost should be a number", response.getErrors().get(0).getMessage());
+
+		Product updated = productRepository.findById(product.getId()).get();
+		assertEquals("renamed", updated.getProductName());
+		assertEquals(25, updated.getCost());
+		assertEquals(1, updated.getAmountAvailable());
+		assertEquals(1, productRepository.findAll().stream()
+				.filter(p -> p.getProductName().equals("Snack, \"large\"")).count());
+	}
+
+	@Test
+	void importRejectedChunkWritesRowsOneByOne() throws IOException {
+		String json = "["
+				+ "{\"productName\":\"" + "x".repeat(300) + "\",\"cost\":5,\"amountAvailable\":1},"
+				+ "{\"productName\":\"twix\",\"cost\":15,\"amountAvailable\":10}"
+				+ "]";
+
+		ProductImportResponse response = productImportService.importJson(stream(json));
+
+		assertEquals(1, response.getCreated());
+		assertEquals(List.of(1), rows(response));
+		assertEquals(3, productRepository.count());
+	}
+
+	private static List<Integer> rows(ProductImportResponse response) {
+		return response.getErrors().stream().map(ProductImportError::getRow).collect(Collectors.toList());
+	}
+
+	private static InputStream stream(String body) {
+		return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private Product saveProduct(String name, int amount, int cost, User owner) {
+		Product saved = new Product();
+		saved.setProductName(name);
+		saved.setAmountAvailable(amount);
+		saved.setCost(cost);
+		saved.setSeller(owner);
+		return productRepository.save(saved);
+	}
+}
@@ -0,0 +1,143 @@
+package com.fadihasrouni.vendingmachine.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.fadihasrouni.vendingmachine.controller.response.ProductPageResponse;
+import com.fadihasrouni.vendingmachine.controller.response.ProductResponse;
+import com.fadihasrouni.vendingmachine.model.Product;
+import com.fadihasrouni.vendingmachine.model.User;
+import com.fadihasrouni.vendingmachine.model.type.UserRole;
+import com.fadihasrouni.vendingmachine.repository.ProductRespository;
+import com.fadihasrouni.vendingmachine.repository.UserRepository;
+import com.fadihasrouni.vendingmachine.service.cache.ProductMetadataCache;
+import com.fadihasrouni.vendingmachine.service.inventory.InventoryLedger;
+
+/**
+ * Counts the SQL statements issued by each product read path, one statement
+ * per call whatever the number of products and sellers.
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Import({ ProductService.class, ProductMetadataCache.class, InventoryLedger.class, JacksonAutoConfiguration.class })
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class ProductQueryCountTest {
+
+	@Autowired
+	private ProductService productService;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private ProductRespository productRepository;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	private Statistics statistics;
+
+	private Long productId;
+
+	@BeforeEach
+	void setup() {
+		for (int i = 1; i <= 5; i++) {
+			User seller = userRepository.save(new User(null, "seller " + i, "", 0, UserRole.SELLER, 0L));
+
+			Product product = new Product();
+			product.setProductName("product " + i);
+			product.setAmountAvailable(i);
+			product.setCost(5 * i);
+			product.setSeller(seller);
+			productId = productRepository.save(product).getId();
+		}
+
+		statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		statistics.clear();
+	}
+
+	@AfterEach
+	void cleanup() {
+		productRepository.deleteAll();
+		userRepository.deleteAll();
+	}
+
+	@Test
+	void findProductByIdSingleStatement() {
+		ProductResponse product = productService.findProductById(productId);
+
+		assertEquals("seller 5", product.getSellerUsername());
+		assertEquals(1, statistics.getPrepareStatementCount());
+		assertEquals(0, statistics.getEntityLoadCount());
+	}
+
+	@Test
+	void findCachedProductByIdReadsOnlyStock() {
+		productService.findProductById(productId);
+		statistics.clear();
+
+		ProductResponse product = productService.findProductById(productId);
+
+		assertEquals(5, product.getAmountAvailable());
+		assertEquals(1, statistics.getPrepareStatementCount());
+	}
+
+	@Test
+	void findCachedProductMetadataNoStatement() {
+		productService.findProductById(productId);
+		statistics.clear();
+
+		productService.findProductMetadata(productId);
+
+		assertEquals(0, statistics.getPrepareStatementCount());
+	}
+
+	@Test
+	void findAllProductsListSingleStatement() {
+		List<ProductResponse> products = productService.findAllProductsList();
+
+		assertEquals(5, products.size());
+		assertEquals(1, statistics.getPrepareStatementCount());
+		assertEquals(0, statistics.getEntityLoadCount());
+	}
+
+	@Test
+	void findProductsPageSingleStatement() {
+		ProductPageResponse page = productService.findProductsPage(null, 10, null, false);
+
+		assertEquals(5, page.getProducts().size());
+		assertEquals(1, statistics.getPrepareStatementCount());
+		assertEquals(0, statistics.getEntityLoadCount());
+	}
+
+	@Test
+	void exportProductsSingleStatement() throws Exception {
+		productService.exportProducts(new ByteArrayOutputStream());
+
+		assertEquals(1, statistics.getPrepareStatementCount());
+		assertEquals(0, statistics.getEntityLoadCount());
+	}
+
+	@Test
+	void findProductEntityDoesNotLoadSeller() {
+		productRepository.findById(productId);
+
+		assertEquals(1, statistics.getPrepareStatementCount());
+		assertEquals(1, statistics.getEntityLoadCount());
+	}
+}
@@ -0,0 +1,121 @@
+package com.fadihasrouni.vendingmachine.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fadihasrouni.vendingmachine.config.RetryConfig;
+import com.fadihasrouni.vendingmachine.controller.request.ProductRequest;
+import com.fadihasrouni.vendingmachine.controller.response.ProductResponse;
+import com.fadihasrouni.vendingmachine.controller.response.UserResponse;
+import com.fadihasrouni.vendingmachine.model.Product;
+import com.fadihasrouni.vendingmachine.model.User;
+import com.fadihasrouni.vendingmachine.model.type.UserRole;
+import com.fadihasrouni.vendingmachine.repository.ProductRespository;
+import com.fadihasrouni.vendingmachine.repository.UserRepository;
+import com.fadihasrouni.vendingmachine.service.cache.ProductMetadataCache;
+import com.fadihasrouni.vendingmachine.service.inventory.InventoryLedger;
+
+/**
+ * A concurrent update commits between the read and the commit of the first
+ * attempt, the retry has to start a new transaction to see it.
+ */
+@DataJpaTest
+@Import({ ProductService.class, InventoryLedger.class, RetryConfig.class, JacksonAutoConfiguration.class })
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class ProductRetryTest {
+
+	@Autowired
+	private ProductService productService;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private ProductRespository productRepository;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@SpyBean
+	private ProductMetadataCache productMetadataCache;
+
+	private Long productId;
+
+	@BeforeEach
+	void setup() {
+		User seller = userRepository.save(new User(null, "seller", "", 0, UserRole.SELLER, 0L));
+
+		Product product = new Product();
+		product.setProductName("kinder");
+		product.setAmountAvailable(5);
+		product.setCost(25);
+		product.setSeller(seller);
+		productId = productRepository.save(product).getId();
+
+		UserResponse userResponse = new UserResponse();
+		userResponse.setId(seller.getId());
+		userResponse.setUserRole(UserRole.SELLER);
+		SecurityContextHolder.setContext(new SecurityContextImpl(new UsernamePasswordAuthenticationToken(userResponse, null)));
+	}
+
+	@AfterEach
+	void cleanup() {
+		SecurityContextHolder.clearContext();
+		productRepository.deleteAll();
+		userRepository.deleteAll();
+	}
+
+	@Test
+	void updateIsRetriedInANewTransaction() {
+		TransactionTemplate concurrent = new TransactionTemplate(transactionManager);
+		concurrent.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+		AtomicBoolean first = new AtomicBoolean(true);
+
+		// The first attempt has saved its changes but not committed them yet
+		Mockito.doAnswer(invocation -> {
+			if (first.getAndSet(false)) {
+				concurrent.executeWithoutResult(status -> {
+					Product product = productRepository.findById(productId).orElseThrow();
+					product.setAmountAvailable(7);
+					productRepository.save(product);
+				});
+			}
+			return invocation.callRealMethod();
+		}).when(productMetadataCache).invalidate(ArgumentMatchers.anyLong());
+
+		ProductRequest request = new ProductRequest();
+		request.setProductName("twix");
+		request.setCost(30);
+		request.setAmountAvailable(3);
+
+		ProductResponse response = productService.updateProduct(productId, request);
+
+		assertEquals("twix", response.getProductName());
+		Mockito.verify(productMetadataCache, Mockito.times(2)).invalidate(productId);
+
+		Product stored = productRepository.findById(productId).orElseThrow();
+		assertEquals("twix", stored.getProductName());
+		assertEquals(30, stored.getCost());
+		assertEquals(3, stored.getAmountAvailable());
+	}
+}
@@ -1,20 +1,24 @@
 package com.fadihasrouni.vendingmachine.service;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
-
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInfo;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -22,6 +26,7 @@ import org.springframework.test.context.junit.jupiter.SpringExtension;
 
 import com.fadihasrouni.vendingmachine.controller.request.ProductRequest;
 import com.fadihasrouni.vendingmachine.controller.response.GenericResponse;
+import com.fadihasrouni.vendingmachine.controller.response.ProductPageResponse;
 import com.fadihasrouni.vendingmachine.controller.response.ProductResponse;
 import com.fadihasrouni.vendingmachine.controller.response.UserResponse;
 import com.fadihasrouni.vendingmachine.exception.BadRequestException;
@@ -29,9 +34,15 @@ import com.fadihasrouni.vendingmachine.exception.ForbiddenException;
 import com.fadihasrouni.vendingmachine.exception.ResourceNotFoundException;
 import com.fadihasrouni.vendingmachine.model.Product;
 import com.fadihasrouni.vendingmachine.model.User;
+import com.fadihasrouni.vendingmachine.model.projection.ProductMetadata;
 import com.fadihasrouni.vendingmachine.model.type.UserRole;
+import com.fadihasrouni.vendingmachine.repository.MachineSlotRepository;
 import com.fadihasrouni.vendingmachine.repository.ProductRespository;
+import com.fadihasrouni.vendingmachine.repository.StockHoldRepository;
 import com.fadihasrouni.vendingmachine.repository.UserRepository;
+import com.fadihasrouni.vendingmachine.service.cache.ProductMetadataCache;
+import com.fadihasrouni.vendingmachine.service.inventory.InventoryLedger;
+import com.fadihasrouni.vendingmachine.utils.Constants;
 
 @ExtendWith(MockitoExtension.class)
 @ExtendWith(SpringExtension.class)
@@ -47,6 +58,18 @@ public class ProductServiceTest {
 	@Mock
 	private ProductRespository productRepository;
 	
+	@Mock
+	private InventoryLedger inventoryLedger;
+	
+	@Mock
+	private ProductMetadataCache productMetadataCache;
+	
+	@Mock
+	private MachineSlotRepository machineSlotRepository;
+	
+	@Mock
+	private StockHoldRepository stockHoldRepository;
+	
 	
 	private Long userId = 1L;
 	private Integer userDeposit = 50;
@@ -82,7 +105,10 @@ public class ProductServiceTest {
 		userResponse.setUserRole(UserRole.SELLER);
 
 		if (!info.getDisplayName().equals("getProductSuccess()")
-			&& !info.getDisplayName().equals("getProductFailureNotFound()")) {
+			&& !info.getDisplayName().equals("getProductFailureNotFound()")
+			&& !info.getDisplayName().equals("getProductSuccessCached()")
+			&& !info.getDisplayName().startsWith("findProductsPage")
+			&& !info.getDisplayName().startsWith("findAllProductsList")) {
 			SecurityContext securityContext = Mockito.mock(SecurityContext.class);
 			Mockito.when(securityContext.getAuthentication()).thenReturn(authentication);
 			
@@ -95,7 +121,7 @@ public class ProductServiceTest {
 		product.setAmountAvailable(amountAvailable);
 		product.setCost(productCost);
 		product.setProductName(productName);
-		product.setSeller(new User(userId, username, "", 0, UserRole.SELLER));
+		product.setSeller(new User(userId, username, "", 0, UserRole.SELLER, 0L));
 	}
 	
 		
@@ -174,6 +200,17 @@ public class ProductServiceTest {
 		assertEquals(username, productResponse.getSellerUsername());
 	}
 	
+	@Test
+	void updateProductInvalidatesCache() {
+		mockUser();
+		Mockito.when(productRepository.save(Mockito.any(Product.class))).thenReturn(product);
+		Mockito.when(productRepository.findById(productId)).thenReturn(Optional.of(product));
+
+		productService.updateProduct(productId, getProductUpdateRequest());
+		
+		Mockito.verify(productMetadataCache).invalidate(productId);
+	}
+	
 	@Test
 	void updateProductFailureProductNotFound() {
 		ProductRequest productRequest = getProductUpdateRequest();
@@ -252,7 +289,7 @@ public class ProductServiceTest {
 	
 	@Test
 	void getProductSuccess() {
-		Mockito.when(productRepository.findById(productId)).thenReturn(Optional.of(product));
+		Mockito.when(productRepository.findResponseById(productId)).thenReturn(Optional.of(pageRow(productId)));
 
 		ProductResponse productResponse = productService.findProductById(productId);
 		
@@ -263,6 +300,18 @@ public class ProductServiceTest {
 		assertEquals(username, productResponse.getSellerUsername());
 	}
 	
+	@Test
+	void getProductSuccessCached() {
+		Mockito.when(productMetadataCache.getIfPresent(productId)).thenReturn(new ProductMetadata(productId, productName, productCost, username));
+		Mockito.when(productRepository.findAmountAvailableById(productId)).thenReturn(Optional.of(amountAvailable));
+
+		ProductResponse productResponse = productService.findProductById(productId);
+		
+		assertEquals(amountAvailable, productResponse.getAmountAvailable());
+		assertEquals(productCost, productResponse.getCost());
+		Mockito.verify(productRepository, Mockito.never()).findResponseById(productId);
+	}
+	
 	@Test
 	void getProductFailureNotFound () {
 		assertThrows(ResourceNotFoundException.class, () -> {
@@ -278,6 +327,8 @@ public class ProductServiceTest {
 		
 		assertEquals("Product was deleted successfully", response.getMessage());
 		assertTrue(response.isSuccess());
+		Mockito.verify(machineSlotRepository).deleteByProductId(productId);
+		Mockito.verify(stockHoldRepository).deleteByProductId(productId);
 
 	}
 	
@@ -306,11 +357,65 @@ public class ProductServiceTest {
 		});
 	}
 	
+	@Test
+	void findAllProductsListSuccess() {
+		Mockito.when(productRepository.findPage(Mockito.eq(0L), Mockito.eq(0), Mockito.eq(Pageable.unpaged())))
+				.thenReturn(new ArrayList<>(List.of(pageRow(1L), pageRow(2L), pageRow(3L))));
+		
+		List<ProductResponse> products = productService.findAllProductsList();
+		
+		assertEquals(3, products.size());
+		assertEquals(3L, products.get(2).getId());
+	}
+	
+	@Test
+	void findProductsPageSuccessWithNextCursor() {
+		Mockito.when(productRepository.findPage(Mockito.eq(0L), Mockito.eq(0), Mockito.any(Pageable.class)))
+				.thenReturn(new ArrayList<>(List.of(pageRow(1L), pageRow(2L), pageRow(3L))));
+		
+		ProductPageResponse page = productService.findProductsPage(null, 2, null, false);
+		
+		assertEquals(2, page.getProducts().size());
+		assertEquals(2L, page.getNextCursor());
+	}
+	
+	@Test
+	void findProductsPageSuccessLastPage() {
+		Mockito.when(productRepository.findPageBySeller(Mockito.eq(userId), Mockito.eq(2L), Mockito.eq(1), Mockito.any(Pageable.class)))
+				.thenReturn(new ArrayList<>(List.of(pageRow(3L))));
+		
+		ProductPageResponse page = productService.findProductsPage(2L, 2, userId, true);
+		
+		assertEquals(1, page.getProducts().size());
+		assertNull(page.getNextCursor());
+	}
+	
+	@Test
+	void findProductsPageSuccessLimitCapped() {
+		ArgumentCaptor<Pageable> pageable = ArgumentCaptor.forClass(Pageable.class);
+		Mockito.when(productRepository.findPage(Mockito.eq(0L), Mockito.eq(0), pageable.capture())).thenReturn(new ArrayList<>());
+		
+		productService.findProductsPage(null, Integer.MAX_VALUE, null, false);
+		
+		assertEquals(Constants.PRODUCT_PAGE_MAX_LIMIT + 1, pageable.getValue().getPageSize());
+	}
+	
+	@Test
+	void findProductsPageFailureLimitNotPositive() {
+		assertThrows(BadRequestException.class, () -> {
+			productService.findProductsPage(null, 0, null, false);
+		});
+	}
+	
+	private ProductResponse pageRow(Long id) {
+		return new ProductResponse(id, productName, amountAvailable, productCost, username);
+	}
+	
 	private void updateProducatForSave() {
 		product.setAmountAvailable(amountAvailableUpdate);
 		product.setCost(productUpdateCost);
 		product.setProductName(productNameUpdate);
-		product.setSeller(new User(userId, username, "", 0, UserRole.SELLER));
+		product.setSeller(new User(userId, username, "", 0, UserRole.SELLER, 0L));
 	}
 	
 	private ProductRequest getProductRequest() {
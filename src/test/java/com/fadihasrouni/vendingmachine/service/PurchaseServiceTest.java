@@ -0,0 +1,278 @@
+package com.fadihasrouni.vendingmachine.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.fadihasrouni.vendingmachine.exception.BadRequestException;
+import com.fadihasrouni.vendingmachine.exception.ResourceNotFoundException;
+import com.fadihasrouni.vendingmachine.exception.ForbiddenException;
+import com.fadihasrouni.vendingmachine.model.Product;
+import com.fadihasrouni.vendingmachine.model.StockHold;
+import com.fadihasrouni.vendingmachine.model.User;
+import com.fadihasrouni.vendingmachine.model.projection.BatchPurchaseBalance;
+import com.fadihasrouni.vendingmachine.model.projection.PurchaseBalance;
+import com.fadihasrouni.vendingmachine.model.type.UserRole;
+import com.fadihasrouni.vendingmachine.repository.ProductRespository;
+import com.fadihasrouni.vendingmachine.repository.StockHoldRepository;
+import com.fadihasrouni.vendingmachine.repository.UserRepository;
+import com.fadihasrouni.vendingmachine.service.inventory.InventoryLedger;
+import com.fadihasrouni.vendingmachine.service.wallet.DepositWallet;
+
+/**
+ * Runs the guarded updates against the embedded database, without a test
+ * transaction so that rollbacks can be observed.
+ */
+@DataJpaTest
+@Import({ PurchaseService.class, InventoryLedger.class, DepositWallet.class })
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class PurchaseServiceTest {
+
+	@Autowired
+	private PurchaseService purchaseService;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private ProductRespository productRepository;
+
+	@Autowired
+	private StockHoldRepository stockHoldRepository;
+
+	@Autowired
+	private InventoryLedger inventoryLedger;
+
+	private User buyer;
+	private User seller;
+	private Product product;
+
+	@BeforeEach
+	void setup() {
+		seller = userRepository.save(new User(null, "seller", "", 0, UserRole.SELLER, 0L));
+		buyer = userRepository.save(new User(null, "buyer", "", 50, UserRole.BUYER, 0L));
+
+		product = new Product();
+		product.setProductName("kinder");
+		product.setAmountAvailable(3);
+		product.setCost(25);
+		product.setSeller(seller);
+		product = productRepository.save(product);
+	}
+
+	@AfterEach
+	void cleanup() {
+		stockHoldRepository.deleteAll();
+		productRepository.deleteAll();
+		userRepository.deleteAll();
+	}
+
+	@Test
+	void purchaseSuccess() {
+		PurchaseBalance balance = purchaseService.purchase(buyer.getId(), product.getId(), 2, 50);
+
+		assertEquals(0, balance.getDeposit());
+		assertEquals(1, balance.getAmountAvailable());
+	}
+
+	@Test
+	void purchaseFailureNotEnoughProduct() {
+		assertThrows(BadRequestException.class, () -> {
+			purchaseService.purchase(buyer.getId(), product.getId(), 4, 100);
+		});
+
+		assertEquals(50, userRepository.findById(buyer.getId()).get().getDeposit());
+	}
+
+	@Test
+	void purchaseFailureNotEnoughBalanceRollsBackStock() {
+		assertThrows(BadRequestException.class, () -> {
+			purchaseService.purchase(buyer.getId(), product.getId(), 3, 75);
+		});
+
+		assertEquals(3, productRepository.findById(product.getId()).get().getAmountAvailable());
+	}
+
+	@Test
+	void purchaseFailureNotABuyer() {
+		assertThrows(ForbiddenException.class, () -> {
+			purchaseService.purchase(seller.getId(), product.getId(), 1, 25);
+		});
+
+		assertEquals(3, productRepository.findById(product.getId()).get().getAmountAvailable());
+	}
+
+	@Test
+	void purchaseBatchSuccess() {
+		Product other = saveProduct("mars", 5, 10);
+
+		BatchPurchaseBalance balance = purchaseService.purchaseBatch(buyer.getId(),
+				amounts(product.getId(), 1, other.getId(), 2), 45);
+
+		assertEquals(5, balance.getDeposit());
+		assertEquals(2, balance.getAmountsAvailable().get(product.getId()));
+		assertEquals(3, balance.getAmountsAvailable().get(other.getId()));
+		assertEquals(3, productRepository.findById(other.getId()).get().getAmountAvailable());
+	}
+
+	@Test
+	void purchaseBatchFailureNotEnoughProductRollsBackAll() {
+		Product other = saveProduct("mars", 1, 10);
+
+		assertThrows(BadRequestException.class, () -> {
+			purchaseService.purchaseBatch(buyer.getId(), amounts(product.getId(), 1, other.getId(), 2), 45);
+		});
+
+		assertEquals(3, productRepository.findById(product.getId()).get().getAmountAvailable());
+		assertEquals(1, productRepository.findById(other.getId()).get().getAmountAvailable());
+		assertEquals(50, userRepository.findDepositById(buyer.getId()));
+	}
+
+	@Test
+	void purchaseBatchFailureNotEnoughBalanceRollsBackStock() {
+		Product other = saveProduct("mars", 5, 10);
+
+		assertThrows(BadRequestException.class, () -> {
+			purchaseService.purchaseBatch(buyer.getId(), amounts(product.getId(), 2, other.getId(), 1), 60);
+		});
+
+		assertEquals(3, productRepository.findById(product.getId()).get().getAmountAvailable());
+		assertEquals(5, productRepository.findById(other.getId()).get().getAmountAvailable());
+	}
+
+	@Test
+	void reserveTakesTheStock() {
+		StockHold hold = purchaseService.reserve(buyer.getId(), product.getId(), 2, 1000L);
+
+		assertEquals(1, productRepository.findById(product.getId()).get().getAmountAvailable());
+		assertTrue(stockHoldRepository.existsById(hold.getId()));
+	}
+
+	@Test
+	void reserveFailureNotEnoughProduct() {
+		assertThrows(BadRequestException.class, () -> {
+			purchaseService.reserve(buyer.getId(), product.getId(), 4, 1000L);
+		});
+
+		assertEquals(3, productRepository.findById(product.getId()).get().getAmountAvailable());
+		assertEquals(0, stockHoldRepository.count());
+	}
+
+	@Test
+	void confirmHoldChargesTheDeposit() {
+		StockHold hold = purchaseService.reserve(buyer.getId(), product.getId(), 2, 1000L);
+
+		PurchaseBalance balance = purchaseService.confirmHold(hold, 50);
+
+		assertEquals(0, balance.getDeposit());
+		assertEquals(1, balance.getAmountAvailable());
+		assertEquals(0, stockHoldRepository.count());
+	}
+
+	@Test
+	void confirmHoldFailureNotEnoughBalanceKeepsTheHold() {
+		StockHold hold = purchaseService.reserve(buyer.getId(), product.getId(), 3, 1000L);
+
+		assertThrows(BadRequestException.class, () -> {
+			purchaseService.confirmHold(hold, 75);
+		});
+
+		assertTrue(stockHoldRepository.existsById(hold.getId()));
+		assertEquals(0, productRepository.findById(product.getId()).get().getAmountAvailable());
+	}
+
+	@Test
+	void releaseHoldsPutsTheStockBack() {
+		Product other = saveProduct("mars", 5, 10);
+		StockHold first = purchaseService.reserve(buyer.getId(), other.getId(), 2, 1000L);
+		StockHold second = purchaseService.reserve(buyer.getId(), product.getId(), 1, 1000L);
+
+		purchaseService.releaseHolds(List.of(first, second));
+
+		assertEquals(3, productRepository.findById(product.getId()).get().getAmountAvailable());
+		assertEquals(5, productRepository.findById(other.getId()).get().getAmountAvailable());
+		assertEquals(0, stockHoldRepository.count());
+	}
+
+	@Test
+	void releaseHoldsDropsHoldsOnDeletedProducts() {
+		Product other = saveProduct("mars", 5, 10);
+		StockHold kept = purchaseService.reserve(buyer.getId(), product.getId(), 1, 1000L);
+		StockHold deleted = purchaseService.reserve(buyer.getId(), other.getId(), 2, 1000L);
+		productRepository.deleteById(other.getId());
+
+		// A ledger tracked product cannot be loaded once deleted
+		ReflectionTestUtils.setField(inventoryLedger, "enabled", true);
+		try {
+			purchaseService.releaseHolds(List.of(kept, deleted));
+		} finally {
+			ReflectionTestUtils.setField(inventoryLedger, "enabled", false);
+		}
+
+		assertEquals(3, productRepository.findById(product.getId()).get().getAmountAvailable());
+		assertEquals(0, stockHoldRepository.count());
+	}
+
+	@Test
+	void releaseHoldsTwicePutsTheStockBackOnce() {
+		StockHold hold = purchaseService.reserve(buyer.getId(), product.getId(), 2, 1000L);
+
+		purchaseService.releaseHolds(List.of(hold));
+		purchaseService.releaseHolds(List.of(hold));
+
+		assertEquals(3, productRepository.findById(product.getId()).get().getAmountAvailable());
+	}
+
+	@Test
+	void releaseConfirmedHoldKeepsTheStockSold() {
+		StockHold hold = purchaseService.reserve(buyer.getId(), product.getId(), 2, 1000L);
+		purchaseService.confirmHold(hold, 50);
+
+		purchaseService.releaseHolds(List.of(hold));
+
+		assertEquals(1, productRepository.findById(product.getId()).get().getAmountAvailable());
+	}
+
+	@Test
+	void confirmReleasedHoldFailure() {
+		StockHold hold = purchaseService.reserve(buyer.getId(), product.getId(), 2, 1000L);
+		purchaseService.releaseHolds(List.of(hold));
+
+		assertThrows(ResourceNotFoundException.class, () -> {
+			purchaseService.confirmHold(hold, 50);
+		});
+
+		assertEquals(50, userRepository.findDepositById(buyer.getId()));
+		assertEquals(3, productRepository.findById(product.getId()).get().getAmountAvailable());
+	}
+
+	private Product saveProduct(String name, int amount, int cost) {
+		Product other = new Product();
+		other.setProductName(name);
+		other.setAmountAvailable(amount);
+		other.setCost(cost);
+		other.setSeller(seller);
+		return productRepository.save(other);
+	}
+
+	private static SortedMap<Long, Integer> amounts(Long firstId, int first, Long secondId, int second) {
+		SortedMap<Long, Integer> amounts = new TreeMap<>();
+		amounts.put(firstId, first);
+		amounts.put(secondId, second);
+		return amounts;
+	}
+}
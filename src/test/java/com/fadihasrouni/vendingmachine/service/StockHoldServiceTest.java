@@ -0,0 +1,228 @@
+package com.fadihasrouni.vendingmachine.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentMatchers;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.fadihasrouni.vendingmachine.controller.request.HoldRequest;
+import com.fadihasrouni.vendingmachine.controller.response.BuyResponse;
+import com.fadihasrouni.vendingmachine.controller.response.HoldResponse;
+import com.fadihasrouni.vendingmachine.controller.response.UserResponse;
+import com.fadihasrouni.vendingmachine.exception.BadRequestException;
+import com.fadihasrouni.vendingmachine.exception.ResourceNotFoundException;
+import com.fadihasrouni.vendingmachine.model.StockHold;
+import com.fadihasrouni.vendingmachine.model.projection.ProductMetadata;
+import com.fadihasrouni.vendingmachine.model.projection.PurchaseBalance;
+import com.fadihasrouni.vendingmachine.model.type.UserRole;
+import com.fadihasrouni.vendingmachine.repository.StockHoldRepository;
+import com.fadihasrouni.vendingmachine.service.change.CoinFloat;
+
+/**
+ * Holds are reserved already expired, so the next tick of the wheel expires
+ * them and the races between confirm, cancel and expiry can be ordered.
+ */
+@ExtendWith(MockitoExtension.class)
+public class StockHoldServiceTest {
+
+	private static final long TICK_MS = 5;
+
+	@InjectMocks
+	private StockHoldService stockHoldService;
+
+	@Mock
+	private PurchaseService purchaseService;
+
+	@Mock
+	private ProductService productService;
+
+	@Mock
+	private StockHoldRepository stockHoldRepository;
+
+	@Mock
+	private CoinFloat coinFloat;
+
+	private Long userId = 1L;
+
+	private Long productId = 2L;
+
+	@BeforeEach
+	void setup() {
+		ReflectionTestUtils.setField(stockHoldService, "tickMs", TICK_MS);
+		ReflectionTestUtils.setField(stockHoldService, "defaultTtlSeconds", 60);
+		ReflectionTestUtils.setField(stockHoldService, "maxTtlSeconds", 600);
+		ReflectionTestUtils.setField(stockHoldService, "releaseBatchSize", 500);
+		stockHoldService.start();
+
+		authenticate(userId);
+
+		Mockito.lenient().when(productService.findProductMetadata(productId))
+				.thenReturn(new ProductMetadata(productId, "kinder", 25, "seller"));
+		Mockito.lenient().when(purchaseService.reserve(ArgumentMatchers.eq(userId), ArgumentMatchers.eq(productId),
+				ArgumentMatchers.anyInt(), ArgumentMatchers.anyLong()))
+				.thenAnswer(invocation -> new StockHold(10L, productId, userId, invocation.getArgument(2), System.currentTimeMillis()));
+	}
+
+	@AfterEach
+	void cleanup() {
+		SecurityContextHolder.clearContext();
+	}
+
+	@Test
+	void reserveFailureTtlTooLong() {
+		assertThrows(BadRequestException.class, () -> {
+			stockHoldService.reserve(userId, request(1, 601));
+		});
+
+		Mockito.verifyNoInteractions(purchaseService);
+	}
+
+	@Test
+	void expiredHoldsAreReleased() throws InterruptedException {
+		HoldResponse hold = stockHoldService.reserve(userId, request(2, null));
+
+		expireNextTick();
+
+		Mockito.verify(purchaseService).releaseHolds(ArgumentMatchers.argThat(holds -> holds.size() == 1 && holds.get(0).getId().equals(hold.getId())));
+		assertThrows(ResourceNotFoundException.class, () -> {
+			stockHoldService.confirm(userId, hold.getId());
+		});
+	}
+
+	@Test
+	void confirmInProgressIsNotExpired() throws Exception {
+		HoldResponse hold = stockHoldService.reserve(userId, request(2, null));
+
+		CountDownLatch confirming = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		Mockito.when(purchaseService.confirmHold(ArgumentMatchers.any(), ArgumentMatchers.eq(50))).thenAnswer(invocation -> {
+			confirming.countDown();
+			release.await(5, TimeUnit.SECONDS);
+			return new PurchaseBalance(0, 3);
+		});
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<BuyResponse> confirmed = executor.submit(() -> {
+				authenticate(userId);
+				return stockHoldService.confirm(userId, hold.getId());
+			});
+			assertTrue(confirming.await(5, TimeUnit.SECONDS));
+
+			// Expires while the deposit is charged, the confirm wins
+			expireNextTick();
+			release.countDown();
+
+			assertEquals(50, confirmed.get(5, TimeUnit.SECONDS).getMoneySpent());
+		} finally {
+			release.countDown();
+			executor.shutdown();
+		}
+
+		expireNextTick();
+		Mockito.verify(purchaseService, Mockito.never()).releaseHolds(ArgumentMatchers.any());
+	}
+
+	@Test
+	void failedConfirmLeavesTheHoldToExpire() throws InterruptedException {
+		HoldResponse hold = stockHoldService.reserve(userId, request(2, null));
+		Mockito.when(purchaseService.confirmHold(ArgumentMatchers.any(), ArgumentMatchers.eq(50)))
+				.thenThrow(new BadRequestException("You don't have enough balance in order to buy the product(s)", null));
+
+		assertThrows(BadRequestException.class, () -> {
+			stockHoldService.confirm(userId, hold.getId());
+		});
+
+		expireNextTick();
+		Mockito.verify(purchaseService).releaseHolds(ArgumentMatchers.anyList());
+	}
+
+	@Test
+	void failureAfterConfirmDoesNotReleaseTheHold() throws InterruptedException {
+		HoldResponse hold = stockHoldService.reserve(userId, request(2, null));
+		Mockito.when(purchaseService.confirmHold(ArgumentMatchers.any(), ArgumentMatchers.eq(50))).thenReturn(new PurchaseBalance(0, 3));
+		Mockito.when(coinFloat.previewChange(0)).thenThrow(new IllegalStateException("preview"));
+
+		assertThrows(IllegalStateException.class, () -> {
+			stockHoldService.confirm(userId, hold.getId());
+		});
+
+		expireNextTick();
+		Mockito.verify(purchaseService, Mockito.never()).releaseHolds(ArgumentMatchers.any());
+	}
+
+	@Test
+	void confirmedHoldCannotBeCancelled() {
+		HoldResponse hold = stockHoldService.reserve(userId, request(2, null));
+		Mockito.when(purchaseService.confirmHold(ArgumentMatchers.any(), ArgumentMatchers.eq(50))).thenReturn(new PurchaseBalance(0, 3));
+
+		stockHoldService.confirm(userId, hold.getId());
+
+		assertThrows(ResourceNotFoundException.class, () -> {
+			stockHoldService.cancel(userId, hold.getId());
+		});
+		Mockito.verify(purchaseService, Mockito.never()).releaseHolds(ArgumentMatchers.any());
+	}
+
+	@Test
+	void holdsOfOtherUsersAreNotFound() {
+		HoldResponse hold = stockHoldService.reserve(userId, request(2, null));
+		authenticate(3L);
+
+		assertThrows(ResourceNotFoundException.class, () -> {
+			stockHoldService.cancel(3L, hold.getId());
+		});
+	}
+
+	@Test
+	void failedReleaseIsRetriedOnTheNextTick() throws InterruptedException {
+		stockHoldService.reserve(userId, request(2, null));
+		Mockito.doThrow(new QueryTimeoutException("timeout")).doNothing()
+				.when(purchaseService).releaseHolds(ArgumentMatchers.anyList());
+
+		expireNextTick();
+		expireNextTick();
+
+		Mockito.verify(purchaseService, Mockito.times(2)).releaseHolds(ArgumentMatchers.anyList());
+	}
+
+	private void expireNextTick() throws InterruptedException {
+		Thread.sleep(2 * TICK_MS);
+		stockHoldService.expire();
+	}
+
+	private HoldRequest request(int amount, Integer ttlSeconds) {
+		HoldRequest request = new HoldRequest();
+		request.setProductId(productId);
+		request.setAmount(amount);
+		request.setTtlSeconds(ttlSeconds);
+		return request;
+	}
+
+	private static void authenticate(Long userId) {
+		UserResponse user = new UserResponse();
+		user.setId(userId);
+		user.setUserRole(UserRole.BUYER);
+		SecurityContextHolder.setContext(new SecurityContextImpl(new UsernamePasswordAuthenticationToken(user, null)));
+	}
+}
@@ -4,7 +4,12 @@ import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
 import java.util.Optional;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -12,21 +17,38 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.stubbing.OngoingStubbing;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
 
+import com.fadihasrouni.vendingmachine.controller.request.BuyBatchRequest;
 import com.fadihasrouni.vendingmachine.controller.request.BuyRequest;
+import com.fadihasrouni.vendingmachine.controller.response.BuyBatchResponse;
 import com.fadihasrouni.vendingmachine.controller.response.BuyResponse;
 import com.fadihasrouni.vendingmachine.controller.response.GenericResponse;
-import com.fadihasrouni.vendingmachine.controller.response.ProductResponse;
 import com.fadihasrouni.vendingmachine.controller.response.UserResponse;
 import com.fadihasrouni.vendingmachine.exception.BadRequestException;
+import com.fadihasrouni.vendingmachine.exception.ForbiddenException;
 import com.fadihasrouni.vendingmachine.model.User;
+import com.fadihasrouni.vendingmachine.model.projection.BatchPurchaseBalance;
+import com.fadihasrouni.vendingmachine.model.projection.ProductMetadata;
+import com.fadihasrouni.vendingmachine.model.projection.PurchaseBalance;
 import com.fadihasrouni.vendingmachine.model.type.UserRole;
+import com.fadihasrouni.vendingmachine.repository.MachineCoinRepository;
+import com.fadihasrouni.vendingmachine.repository.MachineSessionRepository;
 import com.fadihasrouni.vendingmachine.repository.UserRepository;
+import com.fadihasrouni.vendingmachine.service.cache.UserPrincipalCache;
+import com.fadihasrouni.vendingmachine.service.change.CoinFloat;
+import com.fadihasrouni.vendingmachine.service.wallet.DepositWallet;
 
 @ExtendWith(MockitoExtension.class)
 @ExtendWith(SpringExtension.class)
@@ -41,6 +63,24 @@ public class UserServiceTest {
 	@Mock
 	private ProductService productService;
 
+	@Mock
+	private PurchaseService purchaseService;
+
+	@Mock
+	private UserPrincipalCache userPrincipalCache;
+
+	@Mock
+	private DepositWallet depositWallet;
+	
+	@Mock
+	private MachineSessionRepository machineSessionRepository;
+
+	@Mock
+	private MachineCoinRepository machineCoinRepository;
+
+	@Spy
+	private CoinFloat coinFloat = new CoinFloat(10000, "100:10,50:10,20:10,10:10,5:10");
+
 	private Long userId = 1L;
 	private int userDeposit = 50;
 	private Long productId = 1L;
@@ -76,7 +116,11 @@ public class UserServiceTest {
 		user.setDeposit(50);
 		user.setUserRole(UserRole.BUYER);
 
-		Mockito.when(userRepository.findById(userId)).thenReturn(Optional.of(user));
+		Mockito.lenient().when(userRepository.findById(userId)).thenReturn(Optional.of(user));
+
+		ReflectionTestUtils.setField(coinFloat, "machineCoinRepository", machineCoinRepository);
+		// Every denomination has its stored row
+		Mockito.lenient().when(machineCoinRepository.addQuantity(Mockito.anyLong(), Mockito.anyInt(), Mockito.anyInt())).thenReturn(1);
 	}
 
 	@Test
@@ -86,6 +130,8 @@ public class UserServiceTest {
 
 		assertEquals(true, response.isSuccess());
 		assertEquals(centsToDeposit + " cent coin deposited successfully", response.getMessage());
+		assertEquals(11, coinFloat.counts()[3]);
+		Mockito.verify(machineCoinRepository).addQuantity(1L, 10, 1);
 	}
 
 	@Test
@@ -96,10 +142,36 @@ public class UserServiceTest {
 		});
 	}
 
+	@Test
+	void depositFailureStaleRole() {
+		User seller = new User();
+		seller.setId(userId);
+		seller.setUsername("fadi.hasrouni");
+		seller.setDeposit(0);
+		seller.setUserRole(UserRole.SELLER);
+
+		Mockito.when(userRepository.findById(userId)).thenReturn(Optional.of(seller));
+
+		assertThrows(ForbiddenException.class, () -> {
+			userService.deposit(userId, 10);
+		});
+	}
+
+	@Test
+	void deleteUserInvalidatesPrincipal() {
+		GenericResponse response = userService.deleteUser(userId);
+
+		assertEquals(true, response.isSuccess());
+		Mockito.verify(machineSessionRepository).deleteByUserId(userId);
+		Mockito.verify(userRepository).deleteById(userId);
+		Mockito.verify(userPrincipalCache).invalidate(userId);
+	}
+
 	@Test
 	void buySuccess() {
 
-		ProductResponse product = mockProduct(10);
+		ProductMetadata product = mockProduct();
+		mockPurchase(1, productCost).thenReturn(new PurchaseBalance(userDeposit - productCost, 9));
 
 		BuyRequest buyRequest = new BuyRequest();
 
@@ -111,14 +183,77 @@ public class UserServiceTest {
 		Integer[] change = { 20, 5};
 
 		assertEquals(productCost, response.getMoneySpent());
-		assertEquals(product, response.getProductBought());
+		assertEquals(product.toResponse(9), response.getProductBought());
+		assertEquals(9, response.getProductBought().getAmountAvailable());
 		assertArrayEquals(change, response.getChange().toArray());
 	}
 
+	@Test
+	void buyChangeUsesCoinsMoreThanOnce() {
+
+		mockProduct();
+		mockPurchase(1, productCost).thenReturn(new PurchaseBalance(40, 9));
+
+		BuyRequest buyRequest = new BuyRequest();
+
+		buyRequest.setProductId(productId);
+		buyRequest.setAmount(1);
+
+		BuyResponse response = userService.buy(userId, buyRequest);
+
+		assertEquals(Arrays.asList(20, 20), response.getChange());
+		// Only shown, the coins are given back on reset
+		assertEquals(10, coinFloat.counts()[2]);
+	}
+
+	@Test
+	void resetDepositPaysOutChange() {
+		GenericResponse response = userService.resetDeposit(userId);
+
+		assertEquals("The deposit is now reset to 0.", response.getMessage());
+		assertArrayEquals(new int[] { 10, 9, 10, 10, 10 }, coinFloat.counts());
+		Mockito.verify(machineCoinRepository).addQuantity(1L, 50, -1);
+		Mockito.verify(userRepository).save(Mockito.argThat(user -> user.getDeposit() == 0));
+	}
+
+	@Test
+	void resetDepositKeepsWhatCannotBePaidOut() {
+		coinFloat.payout(10000);
+		coinFloat.refund(Arrays.asList(20, 5));
+
+		GenericResponse response = userService.resetDeposit(userId);
+
+		assertEquals("The machine is short of coins, 25 cents stay in the deposit.", response.getMessage());
+		assertArrayEquals(new int[] { 0, 0, 0, 0, 0 }, coinFloat.counts());
+		Mockito.verify(userRepository).save(Mockito.argThat(user -> user.getDeposit() == 25));
+	}
+
+	@Test
+	void resetDepositFailureRefundsCoins() {
+		Mockito.when(userRepository.save(Mockito.any())).thenThrow(new OptimisticLockingFailureException("conflict"));
+
+		TransactionSynchronizationManager.initSynchronization();
+		try {
+			assertThrows(OptimisticLockingFailureException.class, () -> {
+				userService.resetDeposit(userId);
+			});
+
+			// The reset transaction rolls back
+			TransactionSynchronizationUtils.invokeAfterCompletion(TransactionSynchronizationManager.getSynchronizations(),
+					TransactionSynchronization.STATUS_ROLLED_BACK);
+		} finally {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+
+		assertArrayEquals(new int[] { 10, 10, 10, 10, 10 }, coinFloat.counts());
+	}
+
 	@Test
 	void buyNotEnoughProduct() {
 
-		mockProduct(1);
+		mockProduct();
+		mockPurchase(2, productCost * 2)
+				.thenThrow(new BadRequestException("The amount of product requested in not available", null));
 
 		BuyRequest buyRequest = new BuyRequest();
 
@@ -137,7 +272,9 @@ public class UserServiceTest {
 		
 		productCost = 100;
 
-		mockProduct(10);
+		mockProduct();
+		mockPurchase(2, productCost * 2)
+				.thenThrow(new BadRequestException("You don't have enough balance in order to buy the product(s)", null));
 
 		BuyRequest buyRequest = new BuyRequest();
 
@@ -150,15 +287,93 @@ public class UserServiceTest {
 
 	}
 
-	private ProductResponse mockProduct(Integer amountAvailble) {
-		ProductResponse product = new ProductResponse();
+	@Test
+	void buyFailureAmountNotPositive() {
+
+		BuyRequest buyRequest = new BuyRequest();
+
+		buyRequest.setProductId(productId);
+		buyRequest.setAmount(-1);
+
+		assertThrows(BadRequestException.class, () -> {
+			userService.buy(userId, buyRequest);
+		});
+
+		Mockito.verifyNoInteractions(purchaseService);
+	}
+
+	@Test
+	void buyBatchSuccess() {
+
+		ProductMetadata product = mockProduct();
+		ProductMetadata other = new ProductMetadata(2L, "Mars", 10, "seller");
+		Mockito.when(productService.findProductMetadata(2L)).thenReturn(other);
+
+		SortedMap<Long, Integer> amounts = new TreeMap<>();
+		amounts.put(productId, 1);
+		amounts.put(2L, 2);
+
+		Map<Long, Integer> amountsAvailable = new TreeMap<>();
+		amountsAvailable.put(productId, 9);
+		amountsAvailable.put(2L, 3);
+		Mockito.when(purchaseService.purchaseBatch(userId, amounts, 45))
+				.thenReturn(new BatchPurchaseBalance(userDeposit - 45, amountsAvailable));
+
+		BuyBatchRequest request = new BuyBatchRequest();
+		request.setItems(Arrays.asList(buyRequest(2L, 1), buyRequest(productId, 1), buyRequest(2L, 1)));
+
+		BuyBatchResponse response = userService.buyBatch(userId, request);
+
+		Integer[] change = { 5 };
+
+		assertEquals(45, response.getMoneySpent());
+		assertEquals(Arrays.asList(product.toResponse(9), other.toResponse(3)), response.getProductsBought());
+		assertArrayEquals(change, response.getChange().toArray());
+	}
+
+	@Test
+	void buyBatchFailureEmpty() {
+
+		BuyBatchRequest request = new BuyBatchRequest();
+		request.setItems(Collections.emptyList());
+
+		assertThrows(BadRequestException.class, () -> {
+			userService.buyBatch(userId, request);
+		});
+
+		Mockito.verifyNoInteractions(purchaseService);
+	}
+
+	@Test
+	void buyBatchFailureAmountNotPositive() {
+
+		BuyBatchRequest request = new BuyBatchRequest();
+		request.setItems(Arrays.asList(buyRequest(productId, 1), buyRequest(2L, 0)));
+
+		assertThrows(BadRequestException.class, () -> {
+			userService.buyBatch(userId, request);
+		});
+
+		Mockito.verifyNoInteractions(purchaseService);
+	}
+
+	private BuyRequest buyRequest(Long productId, Integer amount) {
+		BuyRequest buyRequest = new BuyRequest();
+
+		buyRequest.setProductId(productId);
+		buyRequest.setAmount(amount);
+
+		return buyRequest;
+	}
+
+	private OngoingStubbing<PurchaseBalance> mockPurchase(Integer amount, Integer cost) {
+		return Mockito.when(purchaseService.purchase(userId, productId, amount, cost));
+	}
 
-		product.setId(productId);
-		product.setAmountAvailable(amountAvailble);
-		product.setCost(productCost);
-		product.setProductName("Kinder");
+	private ProductMetadata mockProduct() {
+		ProductMetadata product = new ProductMetadata(productId, "Kinder", productCost, "seller");
 
-		Mockito.when(productService.findProductById(productId)).thenReturn(product);
+		Mockito.when(productService.findProductMetadata(productId)).thenReturn(product);
 
 		return product;
 	}
@@ -0,0 +1,78 @@
+package com.fadihasrouni.vendingmachine.service;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.context.SecurityContextImpl;
+
+import com.fadihasrouni.vendingmachine.controller.response.UserResponse;
+import com.fadihasrouni.vendingmachine.exception.ResourceNotFoundException;
+import com.fadihasrouni.vendingmachine.model.type.UserRole;
+import com.fadihasrouni.vendingmachine.repository.UserRepository;
+import com.fadihasrouni.vendingmachine.repository.VendingMachineRepository;
+
+@ExtendWith(MockitoExtension.class)
+public class VendingMachineServiceTest {
+
+	@InjectMocks
+	private VendingMachineService vendingMachineService;
+
+	@Mock
+	private VendingMachineRepository vendingMachineRepository;
+
+	@Mock
+	private UserRepository userRepository;
+
+	@Mock
+	private MachinePurchaseService machinePurchaseService;
+
+	private Long machineId = 2L;
+
+	private Long userId = 1L;
+
+	@BeforeEach
+	void setup() {
+		UserResponse user = new UserResponse();
+		user.setId(userId);
+		user.setUserRole(UserRole.BUYER);
+		SecurityContextHolder.setContext(new SecurityContextImpl(new UsernamePasswordAuthenticationToken(user, null)));
+
+		Mockito.when(vendingMachineRepository.existsById(machineId)).thenReturn(true);
+		Mockito.doThrow(new DataIntegrityViolationException("violation"))
+				.when(machinePurchaseService).deposit(machineId, userId, 50);
+	}
+
+	@AfterEach
+	void cleanup() {
+		SecurityContextHolder.clearContext();
+	}
+
+	@Test
+	void depositFailureUserGone() {
+		Mockito.when(userRepository.existsById(userId)).thenReturn(false);
+
+		assertThrows(ResourceNotFoundException.class, () -> {
+			vendingMachineService.deposit(machineId, userId, 50);
+		});
+	}
+
+	@Test
+	void depositFailureOtherViolationIsKept() {
+		Mockito.when(userRepository.existsById(userId)).thenReturn(true);
+
+		assertThrows(DataIntegrityViolationException.class, () -> {
+			vendingMachineService.deposit(machineId, userId, 50);
+		});
+		Mockito.verify(machinePurchaseService, Mockito.times(2)).deposit(machineId, userId, 50);
+	}
+}
@@ -0,0 +1,48 @@
+package com.fadihasrouni.vendingmachine.service.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.junit.jupiter.api.Test;
+
+import com.fadihasrouni.vendingmachine.model.projection.ProductMetadata;
+
+public class ProductMetadataCacheTest {
+
+	private ProductMetadataCache productMetadataCache = new ProductMetadataCache(100, 60);
+
+	@Test
+	void putAndCountHits() {
+		ProductMetadata metadata = metadata();
+
+		assertNull(productMetadataCache.getIfPresent(1L));
+		productMetadataCache.put(metadata, productMetadataCache.stamp());
+
+		assertSame(metadata, productMetadataCache.getIfPresent(1L));
+		assertEquals(1, productMetadataCache.stats().hitCount());
+		assertEquals(1, productMetadataCache.stats().missCount());
+	}
+
+	@Test
+	void invalidateDropsEntry() {
+		productMetadataCache.put(metadata(), productMetadataCache.stamp());
+		productMetadataCache.invalidate(1L);
+
+		assertNull(productMetadataCache.getIfPresent(1L));
+	}
+
+	@Test
+	void readOverlappingInvalidationIsNotCached() {
+		long stamp = productMetadataCache.stamp();
+		// The product is updated while it is being read
+		productMetadataCache.invalidate(1L);
+		productMetadataCache.put(metadata(), stamp);
+
+		assertNull(productMetadataCache.getIfPresent(1L));
+	}
+
+	private ProductMetadata metadata() {
+		return new ProductMetadata(1L, "kinder", 25, "seller");
+	}
+}
@@ -0,0 +1,44 @@
+package com.fadihasrouni.vendingmachine.service.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import com.fadihasrouni.vendingmachine.controller.response.UserResponse;
+
+public class UserPrincipalCacheTest {
+
+	private UserPrincipalCache userPrincipalCache = new UserPrincipalCache(100, 300);
+
+	private AtomicInteger loads = new AtomicInteger();
+
+	@Test
+	void getLoadsOnceAndCountsHits() {
+		UserResponse first = userPrincipalCache.get(1L, this::load);
+		UserResponse second = userPrincipalCache.get(1L, this::load);
+
+		assertSame(first, second);
+		assertEquals(1, loads.get());
+		assertEquals(1, userPrincipalCache.stats().hitCount());
+		assertEquals(1, userPrincipalCache.stats().missCount());
+	}
+
+	@Test
+	void invalidateForcesReload() {
+		userPrincipalCache.get(1L, this::load);
+		userPrincipalCache.invalidate(1L);
+		userPrincipalCache.get(1L, this::load);
+
+		assertEquals(2, loads.get());
+	}
+
+	private UserResponse load(Long id) {
+		loads.incrementAndGet();
+		UserResponse user = new UserResponse();
+		user.setId(id);
+		return user;
+	}
+}
@@ -0,0 +1,52 @@
+package com.fadihasrouni.vendingmachine.service.change;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Change computed after a purchase, for a few remaining deposits. A stocked
+ * float is answered from the precomputed table, a float short of 10 and 50
+ * cent coins goes through the bounded search.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChangeBenchmark {
+
+	@Param({ "5", "185", "1000" })
+	private int deposit;
+
+	@Param({ "stocked", "short" })
+	private String coinFloat;
+
+	private ChangeMaker changeMaker;
+
+	private int[] available;
+
+	private final int[] change = new int[CoinFloat.COINS.length];
+
+	@Setup
+	public void setup() {
+		changeMaker = new ChangeMaker(CoinFloat.COINS, 10000);
+		available = "stocked".equals(coinFloat) ? new int[] { 50, 50, 50, 50, 50 } : new int[] { 50, 0, 50, 0, 50 };
+	}
+
+	@Benchmark
+	public int getChange() {
+		return changeMaker.makeChange(deposit, available, change);
+	}
+}
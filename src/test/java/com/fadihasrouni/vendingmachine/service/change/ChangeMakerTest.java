@@ -0,0 +1,114 @@
+package com.fadihasrouni.vendingmachine.service.change;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class ChangeMakerTest {
+
+	private static final int[] COINS = CoinFloat.COINS;
+
+	private final ChangeMaker changeMaker = new ChangeMaker(COINS, 1000);
+
+	private final int[] change = new int[COINS.length];
+
+	@Test
+	public void coinsAreUsedMoreThanOnce() {
+		assertEquals(40, changeMaker.makeChange(40, counts(10, 10, 10, 10, 10), change));
+		assertArrayEquals(counts(0, 0, 2, 0, 0), change);
+	}
+
+	@Test
+	public void missingCoinsAreMadeUpWithSmallerOnes() {
+		// Greedy would take the 50 and be left with 10 it can't give
+		assertEquals(60, changeMaker.makeChange(60, counts(0, 1, 3, 0, 0), change));
+		assertArrayEquals(counts(0, 0, 3, 0, 0), change);
+	}
+
+	@Test
+	public void largestAmountIsGivenWhenExactChangeIsImpossible() {
+		assertEquals(70, changeMaker.makeChange(85, counts(0, 1, 1, 0, 0), change));
+		assertArrayEquals(counts(0, 1, 1, 0, 0), change);
+
+		assertEquals(60, changeMaker.makeChange(65, counts(0, 0, 3, 0, 0), change));
+		assertArrayEquals(counts(0, 0, 3, 0, 0), change);
+	}
+
+	@Test
+	public void everythingIsGivenWhenTheFloatIsShort() {
+		assertEquals(135, changeMaker.makeChange(500, counts(1, 0, 1, 1, 1), change));
+		assertArrayEquals(counts(1, 0, 1, 1, 1), change);
+	}
+
+	@Test
+	public void amountsAboveTheTablesTakeLargeCoinsFirst() {
+		assertEquals(2345, changeMaker.makeChange(2345, counts(30, 10, 10, 10, 10), change));
+		assertArrayEquals(counts(23, 0, 2, 0, 1), change);
+	}
+
+	@Test
+	public void sameAsExhaustiveSearch() {
+		Random random = new Random(42);
+
+		for (int run = 0; run < 2000; run++) {
+			int[] available = new int[COINS.length];
+			for (int i = 0; i < COINS.length; i++) {
+				available[i] = random.nextInt(5);
+			}
+			int amount = 5 * random.nextInt(120);
+
+			int[] expected = exhaustive(amount, available);
+			int dispensed = changeMaker.makeChange(amount, available, change);
+
+			assertEquals(expected[0], dispensed, "Amount " + amount);
+			assertEquals(expected[1], count(change), "Coins for " + amount);
+		}
+	}
+
+	@Test
+	public void copiesGiveTheSameChange() {
+		ChangeMaker copy = new ChangeMaker(changeMaker);
+		int[] copyChange = new int[COINS.length];
+
+		assertEquals(60, copy.makeChange(60, counts(0, 1, 3, 0, 0), copyChange));
+		assertEquals(60, changeMaker.makeChange(60, counts(0, 1, 3, 0, 0), change));
+		assertArrayEquals(change, copyChange);
+	}
+
+	/**
+	 * Largest amount up to the one requested and the fewest coins for it
+	 */
+	private static int[] exhaustive(int amount, int[] available) {
+		int[] best = { -1, Integer.MAX_VALUE };
+		search(0, amount, available, 0, 0, best);
+		return best;
+	}
+
+	private static void search(int index, int amount, int[] available, int sum, int coins, int[] best) {
+		if (index == COINS.length) {
+			if (sum > best[0] || (sum == best[0] && coins < best[1])) {
+				best[0] = sum;
+				best[1] = coins;
+			}
+			return;
+		}
+		for (int k = 0; k <= available[index] && sum + k * COINS[index] <= amount; k++) {
+			search(index + 1, amount, available, sum + k * COINS[index], coins + k, best);
+		}
+	}
+
+	private static int count(int[] change) {
+		int coins = 0;
+		for (int count : change) {
+			coins += count;
+		}
+		return coins;
+	}
+
+	private static int[] counts(int... counts) {
+		return counts;
+	}
+}
@@ -0,0 +1,23 @@
+package com.fadihasrouni.vendingmachine.service.change;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+public class CoinFloatTest {
+
+	@Test
+	public void initialFloatIsParsed() {
+		CoinFloat coinFloat = new CoinFloat(1000, "100:1, 5:3 ,100:2");
+
+		assertArrayEquals(new int[] { 3, 0, 0, 0, 3 }, coinFloat.counts());
+	}
+
+	@Test
+	public void malformedInitialFloatIsRejected() {
+		for (String initialFloat : new String[] { "100", "x:1", "100:x", "100:1:2", "3:1", "100:-1" }) {
+			assertThrows(IllegalArgumentException.class, () -> new CoinFloat(1000, initialFloat), initialFloat);
+		}
+	}
+}
@@ -0,0 +1,83 @@
+package com.fadihasrouni.vendingmachine.service.hold;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class TimingWheelTest {
+
+	private final TimingWheel<Long> wheel = new TimingWheel<>(10, 0);
+
+	private final List<Long> expired = new ArrayList<>();
+
+	@Test
+	public void valuesExpireOnTheirTick() {
+		wheel.add(1L, 25);
+
+		wheel.advance(29, expired::add);
+		assertTrue(expired.isEmpty());
+
+		wheel.advance(30, expired::add);
+		assertEquals(List.of(1L), expired);
+		assertEquals(0, wheel.size());
+	}
+
+	@Test
+	public void passedDeadlinesExpireOnTheNextTick() {
+		wheel.advance(100, expired::add);
+		wheel.add(1L, 50);
+
+		wheel.advance(109, expired::add);
+		assertTrue(expired.isEmpty());
+
+		wheel.advance(110, expired::add);
+		assertEquals(List.of(1L), expired);
+	}
+
+	@Test
+	public void valuesOnEveryWheelExpireInOrder() {
+		Random random = new Random(42);
+		Map<Long, Long> deadlines = new HashMap<>();
+
+		for (long value = 0; value < 5000; value++) {
+			// Up to 2^21 ticks, spread over the four wheels
+			long deadline = 10L * (1 + (long) Math.pow(2, random.nextInt(21)) + random.nextInt(64));
+			deadlines.put(value, deadline);
+			wheel.add(value, deadline);
+		}
+
+		long now = 0;
+		long last = 0;
+		while (wheel.size() > 0) {
+			now += 10L * (1 + random.nextInt(5000));
+			wheel.advance(now, expired::add);
+
+			for (Long value : expired) {
+				long deadline = deadlines.get(value);
+				assertTrue(deadline <= now, "Value " + value + " expired early");
+				assertTrue(deadline > last, "Value " + value + " expired late");
+			}
+			expired.clear();
+			last = now;
+		}
+	}
+
+	@Test
+	public void valuesBeyondTheHighestWheelExpire() {
+		long deadline = 10L * ((1L << 24) + 1000);
+		wheel.add(1L, deadline);
+
+		wheel.advance(deadline - 10, expired::add);
+		assertTrue(expired.isEmpty());
+
+		wheel.advance(deadline, expired::add);
+		assertEquals(List.of(1L), expired);
+	}
+}
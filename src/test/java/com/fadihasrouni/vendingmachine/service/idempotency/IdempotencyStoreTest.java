@@ -0,0 +1,210 @@
+package com.fadihasrouni.vendingmachine.service.idempotency;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.fadihasrouni.vendingmachine.controller.response.GenericResponse;
+import com.fadihasrouni.vendingmachine.controller.response.UserResponse;
+import com.fadihasrouni.vendingmachine.exception.BadRequestException;
+import com.fadihasrouni.vendingmachine.model.type.UserRole;
+import com.fadihasrouni.vendingmachine.repository.IdempotencyRecordRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Runs the store against the embedded database, without a test transaction
+ * so that flushed records can be loaded by another store.
+ */
+@DataJpaTest
+@Import(JacksonAutoConfiguration.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class IdempotencyStoreTest {
+
+	@Autowired
+	private IdempotencyRecordRepository idempotencyRecordRepository;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	private IdempotencyStore idempotencyStore;
+
+	private final AtomicInteger runs = new AtomicInteger();
+
+	@BeforeEach
+	void setup() {
+		idempotencyStore = newStore(100);
+		authenticate(1L);
+	}
+
+	@AfterEach
+	void cleanup() {
+		SecurityContextHolder.clearContext();
+		// Records are always new, deleteAll would skip them
+		idempotencyRecordRepository.deleteAllInBatch();
+	}
+
+	@Test
+	void repeatedKeyReturnsTheStoredResponse() {
+		GenericResponse first = deposit(idempotencyStore, "key-1");
+		GenericResponse second = deposit(idempotencyStore, "key-1");
+
+		assertEquals(1, runs.get());
+		assertEquals(first, second);
+	}
+
+	@Test
+	void requestsWithoutKeyAlwaysRun() {
+		deposit(idempotencyStore, null);
+		deposit(idempotencyStore, null);
+
+		assertEquals(2, runs.get());
+	}
+
+	@Test
+	void concurrentDuplicatesWaitForTheFirstRequest() throws Exception {
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+
+		try {
+			Future<GenericResponse> first = executor.submit(() -> {
+				authenticate(1L);
+				return idempotencyStore.execute("key-1", "deposit 1 10", GenericResponse.class, () -> {
+					started.countDown();
+					await(release);
+					return new GenericResponse(true, "run " + runs.incrementAndGet());
+				});
+			});
+			started.await(5, TimeUnit.SECONDS);
+
+			Future<GenericResponse> duplicate = executor.submit(() -> {
+				authenticate(1L);
+				return deposit(idempotencyStore, "key-1");
+			});
+			release.countDown();
+
+			assertEquals(first.get(5, TimeUnit.SECONDS), duplicate.get(5, TimeUnit.SECONDS));
+			assertEquals(1, runs.get());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	void keyCannotBeReusedForAnotherRequest() {
+		deposit(idempotencyStore, "key-1");
+
+		assertThrows(BadRequestException.class, () -> {
+			idempotencyStore.execute("key-1", "deposit 1 20", GenericResponse.class, () -> new GenericResponse(true, "other"));
+		});
+	}
+
+	@Test
+	void failedRequestsCanBeRetried() {
+		assertThrows(BadRequestException.class, () -> {
+			idempotencyStore.execute("key-1", "deposit 1 10", GenericResponse.class, () -> {
+				throw new BadRequestException("The coins must be in: [5, 10]", null);
+			});
+		});
+
+		deposit(idempotencyStore, "key-1");
+
+		assertEquals(1, runs.get());
+	}
+
+	@Test
+	void keysArePerUser() {
+		deposit(idempotencyStore, "key-1");
+		authenticate(2L);
+		deposit(idempotencyStore, "key-1");
+
+		assertEquals(2, runs.get());
+	}
+
+	@Test
+	void responsesAreLoadedBackOnStartup() {
+		GenericResponse first = deposit(idempotencyStore, "key-1");
+		idempotencyStore.flush();
+
+		IdempotencyStore restarted = newStore(100);
+		restarted.load();
+
+		assertEquals(first, deposit(restarted, "key-1"));
+		assertEquals(1, runs.get());
+	}
+
+	@Test
+	void keysNotLoadedOnStartupAreReadFromTheDatabase() {
+		GenericResponse first = deposit(idempotencyStore, "key-1");
+		GenericResponse second = deposit(idempotencyStore, "key-2");
+		idempotencyStore.flush();
+
+		// Only one of the two records fits
+		IdempotencyStore restarted = newStore(1);
+		restarted.load();
+
+		assertEquals(first, deposit(restarted, "key-1"));
+		assertEquals(second, deposit(restarted, "key-2"));
+		assertEquals(2, runs.get());
+	}
+
+	@Test
+	void keysEvictedForSizeAreReadFromTheDatabase() {
+		IdempotencyStore small = newStore(1);
+
+		GenericResponse first = deposit(small, "key-1");
+		small.flush();
+		for (int i = 2; i <= 5; i++) {
+			deposit(small, "key-" + i);
+		}
+
+		assertEquals(first, deposit(small, "key-1"));
+		assertEquals(5, runs.get());
+	}
+
+	private GenericResponse deposit(IdempotencyStore store, String key) {
+		return store.execute(key, "deposit 1 10", GenericResponse.class, () -> new GenericResponse(true, "run " + runs.incrementAndGet()));
+	}
+
+	private IdempotencyStore newStore(int maximumSize) {
+		return new IdempotencyStore(idempotencyRecordRepository, objectMapper, transactionManager, maximumSize, 60, 5000);
+	}
+
+	private static void authenticate(Long userId) {
+		UserResponse user = new UserResponse();
+		user.setId(userId);
+		user.setUserRole(UserRole.BUYER);
+		SecurityContextHolder.setContext(new SecurityContextImpl(new UsernamePasswordAuthenticationToken(user, null)));
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
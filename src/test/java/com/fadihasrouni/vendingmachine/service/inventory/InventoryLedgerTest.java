@@ -0,0 +1,164 @@
+package com.fadihasrouni.vendingmachine.service.inventory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fadihasrouni.vendingmachine.model.Product;
+import com.fadihasrouni.vendingmachine.model.StockMovement;
+import com.fadihasrouni.vendingmachine.repository.ProductRespository;
+import com.fadihasrouni.vendingmachine.repository.StockMovementRepository;
+
+@DataJpaTest(properties = "vending.inventory.ledger.enabled=true")
+@Import(InventoryLedger.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class InventoryLedgerTest {
+
+	@Autowired
+	private InventoryLedger inventoryLedger;
+
+	@Autowired
+	private ProductRespository productRepository;
+
+	@Autowired
+	private StockMovementRepository stockMovementRepository;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	private TransactionTemplate transactionTemplate;
+
+	private Product product;
+
+	@BeforeEach
+	void setup() {
+		transactionTemplate = new TransactionTemplate(transactionManager);
+
+		product = new Product();
+		product.setProductName("kinder");
+		product.setAmountAvailable(20);
+		product.setCost(25);
+		product = productRepository.save(product);
+	}
+
+	@AfterEach
+	void cleanup() {
+		transactionTemplate.execute(status -> {
+			inventoryLedger.forget(product.getId());
+			return null;
+		});
+		productRepository.deleteAll();
+	}
+
+	@Test
+	void takeReservesInMemoryAndFlushes() {
+		int left = transactionTemplate.execute(status -> inventoryLedger.take(product.getId(), 2));
+
+		assertEquals(18, left);
+		assertEquals(18, inventoryLedger.available(product.getId()));
+		assertEquals(20, storedAmount());
+		assertEquals(1, stockMovementRepository.count());
+
+		inventoryLedger.flush();
+
+		assertEquals(18, storedAmount());
+		assertEquals(0, stockMovementRepository.count());
+	}
+
+	@Test
+	void takeFailureNotEnoughStock() {
+		int left = transactionTemplate.execute(status -> inventoryLedger.take(product.getId(), 21));
+
+		assertEquals(-1, left);
+		assertEquals(20, inventoryLedger.available(product.getId()));
+		assertEquals(0, stockMovementRepository.count());
+	}
+
+	@Test
+	void rollbackReleasesReservation() {
+		transactionTemplate.execute(status -> {
+			inventoryLedger.take(product.getId(), 5);
+			status.setRollbackOnly();
+			return null;
+		});
+
+		assertEquals(20, inventoryLedger.available(product.getId()));
+		assertEquals(0, stockMovementRepository.count());
+	}
+
+	@Test
+	void restockWithPendingMovements() {
+		transactionTemplate.execute(status -> inventoryLedger.take(product.getId(), 2));
+		transactionTemplate.execute(status -> inventoryLedger.restock(product.getId(), 10));
+
+		assertEquals(10, inventoryLedger.available(product.getId()));
+
+		inventoryLedger.flush();
+
+		assertEquals(10, storedAmount());
+	}
+
+	@Test
+	void counterIncludesMovementsNotFlushed() {
+		// Journaled before a restart, not applied to the product row yet
+		stockMovementRepository.save(new StockMovement(null, product.getId(), -3));
+
+		int left = transactionTemplate.execute(status -> inventoryLedger.take(product.getId(), 1));
+
+		assertEquals(16, left);
+
+		inventoryLedger.flush();
+
+		assertEquals(16, storedAmount());
+	}
+
+	@Test
+	void concurrentTakesNeverOversell() throws Exception {
+		AtomicInteger sold = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		List<Future<?>> futures = new ArrayList<>();
+
+		for (int i = 0; i < 8; i++) {
+			futures.add(executor.submit(() -> {
+				for (int j = 0; j < 10; j++) {
+					int left = transactionTemplate.execute(status -> inventoryLedger.take(product.getId(), 1));
+					if (left >= 0) {
+						sold.incrementAndGet();
+					}
+				}
+			}));
+		}
+		for (Future<?> future : futures) {
+			future.get();
+		}
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+		inventoryLedger.flush();
+
+		assertEquals(20, sold.get());
+		assertEquals(0, storedAmount());
+	}
+
+	private Integer storedAmount() {
+		return productRepository.findAmountAvailableById(product.getId()).get();
+	}
+}
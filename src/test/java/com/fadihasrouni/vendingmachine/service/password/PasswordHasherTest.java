@@ -0,0 +1,105 @@
+package com.fadihasrouni.vendingmachine.service.password;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import com.fadihasrouni.vendingmachine.exception.ServiceUnavailableException;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class PasswordHasherTest {
+
+	private PasswordHasher passwordHasher;
+
+	@AfterEach
+	void cleanup() {
+		if (passwordHasher != null) {
+			passwordHasher.stop();
+		}
+	}
+
+	@Test
+	void encodedPasswordsMatch() {
+		passwordHasher = newHasher(1, 5, 10);
+
+		String encoded = passwordHasher.encode("secret");
+
+		assertTrue(encoded.startsWith("$2a$05$"));
+		assertTrue(passwordHasher.matches("secret", encoded));
+		assertFalse(passwordHasher.matches("other", encoded));
+	}
+
+	@Test
+	void onlyHashesWithALowerCostAreUpgraded() {
+		passwordHasher = newHasher(1, 5, 10);
+
+		assertFalse(passwordHasher.upgradeEncoding(passwordHasher.encode("secret")));
+		assertTrue(passwordHasher.upgradeEncoding(new BCryptPasswordEncoder(4).encode("secret")));
+		assertFalse(passwordHasher.upgradeEncoding(new BCryptPasswordEncoder(6).encode("secret")));
+		assertFalse(passwordHasher.upgradeEncoding("not a bcrypt hash"));
+	}
+
+	@Test
+	void hashesAreTimedOnTheBoundRegistry() {
+		passwordHasher = newHasher(1, 4, 10);
+		MeterRegistry registry = new SimpleMeterRegistry();
+		passwordHasher.bindTo(registry);
+
+		passwordHasher.matches("secret", passwordHasher.encode("secret"));
+
+		assertEquals(1, registry.get("vending.password.hash").tag("operation", "encode").timer().count());
+		assertEquals(1, registry.get("vending.password.hash").tag("operation", "matches").timer().count());
+	}
+
+	@Test
+	void calibratedCostStaysWithinBounds() {
+		assertEquals(4, new PasswordHasher(1, 1, 1000, 0, 0, 4, 6).calibrate());
+		assertEquals(6, new PasswordHasher(1, 1, 1000, 0, 60000, 4, 6).calibrate());
+	}
+
+	@Test
+	void requestsAreRejectedWhenTheQueueIsFull() throws Exception {
+		passwordHasher = newHasher(1, 5, 1);
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		ExecutorService callers = Executors.newFixedThreadPool(2);
+
+		try {
+			// One hash running and one queued fill the pool
+			callers.submit(() -> passwordHasher.run(Timer.builder("test").register(new SimpleMeterRegistry()), () -> {
+				started.countDown();
+				return release.await(5, TimeUnit.SECONDS);
+			}));
+			started.await(5, TimeUnit.SECONDS);
+			callers.submit(() -> passwordHasher.encode("queued"));
+			while (passwordHasher.queued() == 0) {
+				Thread.sleep(1);
+			}
+
+			assertThrows(ServiceUnavailableException.class, () -> passwordHasher.encode("rejected"));
+		} finally {
+			release.countDown();
+			callers.shutdown();
+			callers.awaitTermination(5, TimeUnit.SECONDS);
+		}
+	}
+
+	private static PasswordHasher newHasher(int threads, int strength, int queueSize) {
+		PasswordHasher hasher = new PasswordHasher(threads, queueSize, 5000, strength, 100, 4, 14);
+		hasher.start();
+		return hasher;
+	}
+}
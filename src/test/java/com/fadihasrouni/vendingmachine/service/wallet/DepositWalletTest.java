@@ -0,0 +1,197 @@
+package com.fadihasrouni.vendingmachine.service.wallet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fadihasrouni.vendingmachine.exception.ForbiddenException;
+import com.fadihasrouni.vendingmachine.model.User;
+import com.fadihasrouni.vendingmachine.model.type.UserRole;
+import com.fadihasrouni.vendingmachine.repository.UserRepository;
+
+@DataJpaTest(properties = "vending.wallet.enabled=true")
+@Import(DepositWallet.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class DepositWalletTest {
+
+	@Autowired
+	private DepositWallet depositWallet;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	private TransactionTemplate transactionTemplate;
+
+	private User buyer;
+
+	@BeforeEach
+	void setup() {
+		transactionTemplate = new TransactionTemplate(transactionManager);
+		buyer = userRepository.save(new User(null, "buyer", "", 50, UserRole.BUYER, 0L));
+	}
+
+	@AfterEach
+	void cleanup() {
+		depositWallet.evict(buyer.getId());
+		userRepository.deleteAll();
+	}
+
+	@Test
+	void depositIsCommittedBeforeReturning() {
+		int balance = depositWallet.deposit(buyer.getId(), 10);
+
+		assertEquals(60, balance);
+		assertEquals(60, storedDeposit());
+	}
+
+	@Test
+	void concurrentDepositsAreNotLost() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		List<Future<?>> futures = new ArrayList<>();
+
+		for (int i = 0; i < 8; i++) {
+			futures.add(executor.submit(() -> {
+				for (int j = 0; j < 25; j++) {
+					depositWallet.deposit(buyer.getId(), 5);
+				}
+			}));
+		}
+		for (Future<?> future : futures) {
+			future.get();
+		}
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+		assertEquals(1050, storedDeposit());
+	}
+
+	@Test
+	void withdrawIsCommittedWithTransaction() {
+		int left = transactionTemplate.execute(status -> depositWallet.withdraw(buyer.getId(), 20));
+
+		assertEquals(30, left);
+		assertEquals(30, storedDeposit());
+	}
+
+	@Test
+	void withdrawFailureNotEnoughBalance() {
+		int left = transactionTemplate.execute(status -> depositWallet.withdraw(buyer.getId(), 100));
+
+		assertEquals(-1, left);
+		assertEquals(50, storedDeposit());
+	}
+
+	@Test
+	void withdrawIsGivenBackOnRollback() {
+		transactionTemplate.execute(status -> {
+			depositWallet.withdraw(buyer.getId(), 20);
+			status.setRollbackOnly();
+			return null;
+		});
+
+		assertEquals(70, depositWallet.deposit(buyer.getId(), 20));
+	}
+
+	@Test
+	void depositFailureNotABuyer() {
+		User seller = userRepository.save(new User(null, "seller", "", 0, UserRole.SELLER, 0L));
+
+		assertThrows(ForbiddenException.class, () -> {
+			depositWallet.deposit(seller.getId(), 10);
+		});
+
+		depositWallet.evict(seller.getId());
+	}
+
+	@Test
+	void depositFailureIsUndone() throws Exception {
+		whileRowLocked(() -> {
+			assertThrows(IllegalStateException.class, () -> {
+				depositWallet.deposit(buyer.getId(), 10);
+			});
+		});
+
+		assertEquals(60, depositWallet.deposit(buyer.getId(), 10));
+		assertEquals(60, storedDeposit());
+	}
+
+	@Test
+	void withdrawIsKeptWhenItsCommitFails() throws Exception {
+		// The purchase committed, so the withdrawal neither fails nor is given back
+		whileRowLocked(() -> {
+			int left = transactionTemplate.execute(status -> depositWallet.withdraw(buyer.getId(), 20));
+			assertEquals(30, left);
+		});
+
+		// Written again by the committer without another change of the balance
+		long deadline = System.currentTimeMillis() + 5000;
+		while (storedDeposit() != 30 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(30, storedDeposit());
+		assertEquals(40, depositWallet.deposit(buyer.getId(), 10));
+	}
+
+	/**
+	 * Run the action while another transaction locks the buyer row, group
+	 * commits fail on the lock timeout meanwhile
+	 */
+	private void whileRowLocked(Runnable action) throws Exception {
+		CountDownLatch locked = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+
+		try {
+			Future<?> lock = executor.submit(() -> transactionTemplate.execute(status -> {
+				jdbcTemplate.update("update user set username = username where id = ?", buyer.getId());
+				locked.countDown();
+				try {
+					release.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+				}
+				status.setRollbackOnly();
+				return null;
+			}));
+			assertTrue(locked.await(5, TimeUnit.SECONDS));
+
+			action.run();
+
+			release.countDown();
+			lock.get(5, TimeUnit.SECONDS);
+		} finally {
+			release.countDown();
+			executor.shutdown();
+		}
+	}
+
+	private Integer storedDeposit() {
+		return userRepository.findDepositById(buyer.getId());
+	}
+}
@@ -0,0 +1,13 @@
+-- A database created by ddl-auto=update for the baseline entities, before Flyway
+
+create table hibernate_sequence (next_val bigint);
+insert into hibernate_sequence values (4);
+
+create table product (id bigint not null, amount_available integer, cost integer, product_name varchar(255), seller_id bigint, primary key (id));
+create table user (id bigint not null, deposit integer, password varchar(255), user_role varchar(255), username varchar(255), primary key (id));
+alter table user add constraint UK_user_username unique (username);
+alter table product add constraint FK_product_seller foreign key (seller_id) references user (id);
+
+insert into user (id, deposit, password, user_role, username) values (1, 0, 'hash', 'SELLER', 'seller');
+insert into user (id, deposit, password, user_role, username) values (2, 35, 'hash', 'BUYER', 'buyer');
+insert into product (id, amount_available, cost, product_name, seller_id) values (3, 7, 25, 'kinder', 1);